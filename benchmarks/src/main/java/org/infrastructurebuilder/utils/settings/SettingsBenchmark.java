@@ -0,0 +1,207 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.settings.Server;
+import org.apache.maven.settings.Settings;
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of the settings pipeline, one benchmark per stage, over synthetic settings files of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SettingsBenchmark {
+
+  @Param({ "10", "500", "5000" })
+  public int size;
+
+  private SyntheticSettings files;
+  private Map<String, String> env;
+  private SettingsBuilder builder;
+  private Settings settings;
+  private List<Server> servers;
+  private DefaultSettingsSupplier supplier;
+  private MyDefaultPlexusCipher cipher;
+  private MirrorRouter router;
+  private SettingsTemplate template;
+  private Properties variant;
+  private Path mapped;
+  private String[] repositoryIds;
+  private URL repositoryUrl;
+  private Path localRepository;
+  private LocalRepositoryIndex localIndex;
+  private CredentialsResolver credentials;
+  private URI[] requestUris;
+
+  @Setup
+  public void setUp() throws Exception {
+    files = new SyntheticSettings(size);
+    env = files.env();
+    builder = new MyDefaultSettingsBuilder(new DefaultSettingsReader(), new DefaultSettingsWriter(),
+        new DefaultSettingsValidator());
+    supplier = new DefaultSettingsSupplier(() -> env, () -> new Properties(), builder);
+    settings = DefaultSettingsSupplier.getEffectiveSettingsForRequest.apply(builder,
+        DefaultSettingsSupplier.requestFor(files.user, files.global, new Properties()));
+    servers = settings.getServers();
+    cipher = new MyDefaultPlexusCipher();
+    router = MirrorRouter.of(supplier.get().getMirrors());
+    template = SettingsTemplate.of(files.user, files.global);
+    variant = new Properties();
+    variant.setProperty("benchmark.variant", "1");
+    mapped = files.user.resolveSibling("settings" + MappedSettingsSnapshot.SUFFIX);
+    MappedSettingsSnapshot.write(mapped, "benchmark", supplier.get());
+    repositoryIds = new String[size];
+    for (int i = 0; i < size; ++i)
+      repositoryIds[i] = "repo-" + i;
+    repositoryUrl = new URL("https://repo.example.com/maven2");
+    localRepository = supplier.get().getLocalRepository();
+    for (int i = 0; i < size; ++i) {
+      Path v = Files.createDirectories(localRepository.resolve("org/example/a" + i + "/1.0"));
+      Files.write(v.resolve("a" + i + "-1.0.jar"), new byte[0]);
+    }
+    localIndex = LocalRepositoryIndex.build(localRepository);
+    credentials = SettingsSnapshot.of(supplier.get()).getCredentialsResolver();
+    requestUris = new URI[size];
+    for (int i = 0; i < size; ++i)
+      requestUris[i] = URI.create("https://repo" + (i % 2) + ".example.com/maven2/org/example/a" + i + "/1.0/a" + i
+          + "-1.0.jar");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    files.close();
+  }
+
+  /** Discovery, parse, validate, interpolate, merge and proxy conversion from scratch */
+  @Benchmark
+  public SettingsProxy coldBuild() {
+    return new DefaultSettingsSupplier(() -> env, () -> new Properties(), builder).get();
+  }
+
+  /** The same build through {@link StreamingSettingsReader} */
+  @Benchmark
+  public SettingsProxy streamingBuild() {
+    return new StreamingSettingsSupplier(() -> env, () -> new Properties()).get();
+  }
+
+  /** One property variant produced from a template parsed and merged once */
+  @Benchmark
+  public SettingsProxy templateApply() {
+    return template.apply(variant);
+  }
+
+  /** What a forked worker pays: map, verify and wrap a snapshot written by its parent, then touch every server */
+  @Benchmark
+  public void mappedOpen(Blackhole bh) {
+    SettingsProxy s = MappedSettingsSnapshot.open(mapped, "benchmark").get();
+    for (ServerProxy sp : s.getServers())
+      bh.consume(sp);
+  }
+
+  /** Conversion of an already built {@link Settings} into the proxy tree */
+  @Benchmark
+  public SettingsProxy proxyFromSettings() {
+    return DefaultSettingsSupplier.proxyFromSettings.apply(settings);
+  }
+
+  /** Server conversion alone, dominated by serializing each {@code <configuration>} */
+  @Benchmark
+  public void proxyFromServer(Blackhole bh) {
+    for (Server s : servers) {
+      ServerProxy sp = DefaultSettingsSupplier.proxyFromServer.apply(s);
+      bh.consume(sp);
+    }
+  }
+
+  /** One PBE decryption with a known master password */
+  @Benchmark
+  public String decrypt() throws Exception {
+    return cipher.decryptDecorated(files.encryptedSecret, SyntheticSettings.MASTER);
+  }
+
+  /** Mirror resolution for {@code size} distinct repositories through the memoized routing table */
+  @Benchmark
+  public void mirrorRoute(Blackhole bh) {
+    for (String id : repositoryIds)
+      bh.consume(router.route(id, repositoryUrl));
+  }
+
+  /** Presence of {@code size} artifacts through the mapped local repository index */
+  @Benchmark
+  public void localIndexLookup(Blackhole bh) {
+    for (int i = 0; i < size; ++i)
+      bh.consume(localIndex.contains("org.example", "a" + i, "1.0", null, "jar"));
+  }
+
+  /** The same question answered with one {@code Files.exists} per artifact */
+  @Benchmark
+  public void localFileProbe(Blackhole bh) {
+    for (int i = 0; i < size; ++i)
+      bh.consume(Files.exists(localRepository.resolve("org/example/a" + i + "/1.0/a" + i + "-1.0.jar")));
+  }
+
+  /** Incremental refresh of an unchanged local repository: one mtime read per directory */
+  @Benchmark
+  public LocalRepositoryIndex localIndexRefresh() {
+    return localIndex.refresh();
+  }
+
+  /** Location, credentials and proxy for {@code size} artifact requests */
+  @Benchmark
+  public void credentialsResolve(Blackhole bh) {
+    for (URI u : requestUris)
+      bh.consume(credentials.resolve(u));
+  }
+
+  /** The hot path every consumer hits after startup */
+  @Benchmark
+  public SettingsProxy repeatedGet() {
+    return supplier.get();
+  }
+}
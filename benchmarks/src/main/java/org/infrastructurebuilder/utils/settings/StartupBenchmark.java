@@ -0,0 +1,101 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.crypto.SettingsDecrypter;
+import org.codehaus.plexus.DefaultContainerConfiguration;
+import org.codehaus.plexus.DefaultPlexusContainer;
+import org.codehaus.plexus.PlexusConstants;
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.eclipse.sisu.space.SpaceModule;
+import org.eclipse.sisu.space.URLClassSpace;
+import org.eclipse.sisu.wire.WireModule;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+
+/**
+ * Time from nothing to one decrypted server in a fresh JVM, wiring the components through a sisu/Plexus container
+ * versus {@link SettingsComponents}. Every fork measures exactly one cold invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+  private final static String REALM = "startup";
+
+  private SyntheticSettings files;
+  private Map<String, String> env;
+
+  @Setup
+  public void setUp() throws Exception {
+    files = new SyntheticSettings(10);
+    env = files.env();
+    System.setProperty("settings.security", files.security.toString());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    files.close();
+  }
+
+  /** Container start with index scanning, component lookup, build and decryption */
+  @Benchmark
+  public Optional<ServerProxy> container() throws Exception {
+    ClassWorld world = new ClassWorld(REALM, getClass().getClassLoader());
+    DefaultPlexusContainer c = new DefaultPlexusContainer(
+        new DefaultContainerConfiguration().setClassWorld(world).setClassPathScanning(PlexusConstants.SCANNING_INDEX)
+            .setName(REALM),
+        new WireModule(new SpaceModule(new URLClassSpace(world.getClassRealm(REALM)))));
+    try {
+      // the components SettingsComponents assembles: the "my" builder and the "maven" dispatcher with the "my" cipher
+      SettingsBuilder builder = c.lookup(SettingsBuilder.class, "my");
+      SettingsDecrypter decrypter = new MyDefaultSettingsDecrypter(c.lookup(SecDispatcher.class, "maven"));
+      return new DecryptingSettingsSupplier(new DefaultSettingsSupplier(() -> env, () -> new Properties(), builder),
+          decrypter).getServer("user-server-0");
+    } finally {
+      c.dispose();
+    }
+  }
+
+  /** The same graph from plain constructors */
+  @Benchmark
+  public Optional<ServerProxy> factory() {
+    SettingsComponents components = SettingsComponents.create();
+    return components.newDecryptingSettingsSupplier(components.newSettingsSupplier(() -> env, () -> new Properties()))
+        .getServer("user-server-0");
+  }
+}
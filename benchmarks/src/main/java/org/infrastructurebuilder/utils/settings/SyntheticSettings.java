@@ -0,0 +1,120 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.sonatype.plexus.components.cipher.DefaultPlexusCipher;
+import org.sonatype.plexus.components.cipher.PlexusCipherException;
+
+/**
+ * Writes synthetic user and global settings files of a requested size into a scratch directory.
+ *
+ * A size of {@code n} produces {@code n} servers (every other one with an encrypted password and a
+ * {@code <configuration>} block), {@code n / 10} profiles with two repositories each, {@code n / 10} mirrors and
+ * proxies, plus a matching {@code settings-security.xml}. {@link #close()} deletes the directory and everything a
+ * benchmark wrote under it, such as the local repository.
+ */
+final class SyntheticSettings implements Closeable {
+  final static String MASTER = "benchmark-master";
+  final static String SECRET = "benchmark-secret";
+
+  final Path directory;
+  final Path user;
+  final Path global;
+  final Path security;
+  final String encryptedSecret;
+
+  SyntheticSettings(int size) throws IOException, PlexusCipherException {
+    DefaultPlexusCipher cipher = new DefaultPlexusCipher();
+    this.directory = Files.createTempDirectory("settings-bench-" + size);
+    this.user = directory.resolve("settings.xml");
+    this.global = directory.resolve("global-settings.xml");
+    this.security = directory.resolve("settings-security.xml");
+    this.encryptedSecret = cipher.encryptAndDecorate(SECRET, MASTER);
+    Files.write(security, ("<settingsSecurity><master>" + cipher.encryptAndDecorate(MASTER, "settings.security")
+        + "</master></settingsSecurity>").getBytes(UTF_8));
+    Files.write(user, settings(size, "user", directory.resolve("repository")).getBytes(UTF_8));
+    Files.write(global, settings(Math.max(1, size / 10), "global", null).getBytes(UTF_8));
+  }
+
+  Map<String, String> env() {
+    Map<String, String> env = new HashMap<>(System.getenv());
+    env.put(DefaultSettingsSupplier.USER_SETTINGS_FILE, user.toString());
+    env.put(DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE, global.toString());
+    return env;
+  }
+
+  @Override
+  public void close() throws IOException {
+    List<Path> paths;
+    try (Stream<Path> s = Files.walk(directory)) {
+      paths = s.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+    }
+    for (Path p : paths)
+      Files.deleteIfExists(p);
+  }
+
+  private String settings(int size, String prefix, Path localRepository) {
+    StringBuilder sb = new StringBuilder(size * 512).append("<settings>");
+    if (localRepository != null)
+      sb.append("<localRepository>").append(localRepository).append("</localRepository>");
+    sb.append("<pluginGroups><pluginGroup>org.example.").append(prefix).append("</pluginGroup></pluginGroups>");
+    sb.append("<proxies>");
+    for (int i = 0; i < Math.max(1, size / 10); ++i)
+      sb.append("<proxy><id>").append(prefix).append("-proxy-").append(i).append("</id><active>").append(i == 0)
+          .append("</active><protocol>http</protocol><host>proxy").append(i).append(".example.com</host>")
+          .append("<port>8080</port><nonProxyHosts>localhost|*.internal|10.*</nonProxyHosts></proxy>");
+    sb.append("</proxies><servers>");
+    for (int i = 0; i < size; ++i) {
+      sb.append("<server><id>").append(prefix).append("-server-").append(i).append("</id><username>user").append(i)
+          .append("</username><password>").append(i % 2 == 0 ? encryptedSecret : "plain" + i).append("</password>");
+      if (i % 2 == 0)
+        sb.append("<configuration><httpHeaders><property><name>X-Id</name><value>").append(i)
+            .append("</value></property></httpHeaders><timeout>").append(1000 + i).append("</timeout></configuration>");
+      sb.append("</server>");
+    }
+    sb.append("</servers><mirrors>");
+    for (int i = 0; i < Math.max(1, size / 10); ++i)
+      sb.append("<mirror><id>").append(prefix).append("-mirror-").append(i).append("</id><mirrorOf>")
+          .append(i == 0 ? "external:*,!snapshots" : "repo-" + i).append("</mirrorOf><url>https://mirror")
+          .append(i).append(".example.com/maven2</url></mirror>");
+    sb.append("</mirrors><profiles>");
+    for (int i = 0; i < Math.max(1, size / 10); ++i) {
+      sb.append("<profile><id>").append(prefix).append("-profile-").append(i)
+          .append("</id><activation><property><name>bench.").append(i).append("</name></property></activation>")
+          .append("<properties><bench.value>${user.home}/").append(i).append("</bench.value></properties>")
+          .append("<repositories>");
+      for (int r = 0; r < 2; ++r)
+        sb.append("<repository><id>repo-").append(i).append('-').append(r).append("</id><url>https://repo")
+            .append(r).append(".example.com/maven2</url><snapshots><enabled>false</enabled></snapshots>")
+            .append("</repository>");
+      sb.append("</repositories></profile>");
+    }
+    return sb.append("</profiles></settings>").toString();
+  }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Collections.unmodifiableMap;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Frozen view of everything profile activation looks at: the operating system, the Java version, the properties and
+ * which files exist.
+ *
+ * OS family, JDK range and file-existence answers are computed once per distinct input and remembered, so evaluating
+ * many profiles against one environment costs a map lookup per condition. Those answers live as long as the
+ * environment: each {@link SettingsSnapshot} captures its own, so a property or file that changes is seen by the
+ * next snapshot, for example after a reload.
+ */
+public final class ActivationEnvironment {
+  private final Map<String, String> properties;
+  private final String osName;
+  private final String osArch;
+  private final String osVersion;
+  private final String javaVersion;
+  private final String pathSeparator;
+  private final Map<String, Boolean> families = new ConcurrentHashMap<>();
+  private final Map<String, Boolean> jdks = new ConcurrentHashMap<>();
+  private final Map<Path, Boolean> files = new ConcurrentHashMap<>();
+
+  /**
+   * @return new environment capturing this JVM's system properties as they are now
+   */
+  public final static ActivationEnvironment current() {
+    return of(System.getProperties());
+  }
+
+  /**
+   * @param properties system and user properties; {@code os.*}, {@code java.version} and {@code path.separator} are
+   *                   read from here too
+   * @return environment
+   */
+  public final static ActivationEnvironment of(Properties properties) {
+    Map<String, String> m = new HashMap<>();
+    for (String k : Objects.requireNonNull(properties).stringPropertyNames())
+      m.put(k, properties.getProperty(k));
+    return new ActivationEnvironment(m);
+  }
+
+  private ActivationEnvironment(Map<String, String> properties) {
+    this.properties = unmodifiableMap(properties);
+    this.osName = properties.getOrDefault("os.name", "").toLowerCase(Locale.ENGLISH);
+    this.osArch = properties.getOrDefault("os.arch", "").toLowerCase(Locale.ENGLISH);
+    this.osVersion = properties.getOrDefault("os.version", "").toLowerCase(Locale.ENGLISH);
+    this.javaVersion = properties.getOrDefault("java.version", "");
+    this.pathSeparator = properties.getOrDefault("path.separator", File.pathSeparator);
+  }
+
+  public Map<String, String> getProperties() {
+    return properties;
+  }
+
+  public String getJavaVersion() {
+    return javaVersion;
+  }
+
+  boolean isOsName(String name) {
+    return osName.equals(name.toLowerCase(Locale.ENGLISH));
+  }
+
+  boolean isOsArch(String arch) {
+    return osArch.equals(arch.toLowerCase(Locale.ENGLISH));
+  }
+
+  boolean isOsVersion(String version) {
+    return osVersion.equals(version.toLowerCase(Locale.ENGLISH));
+  }
+
+  /**
+   * Family rules of {@code org.codehaus.plexus.util.Os}, applied to this environment's {@code os.name}.
+   */
+  boolean isOsFamily(String family) {
+    String f = family.toLowerCase(Locale.ENGLISH);
+    Boolean b = families.get(f);
+    if (b == null) // not computeIfAbsent: some families are defined in terms of others
+      families.put(f, b = family(f));
+    return b;
+  }
+
+  private boolean family(String f) {
+    switch (f) {
+    case "windows":
+      return osName.contains("windows");
+    case "win9x":
+      return osName.contains("windows") && (osName.contains("95") || osName.contains("98")
+          || osName.contains("me") || osName.contains("ce"));
+    case "dos":
+      return ";".equals(pathSeparator) && !isOsFamily("netware");
+    case "mac":
+      return osName.contains("mac");
+    case "unix":
+      return ":".equals(pathSeparator) && !isOsFamily("openvms") && (!isOsFamily("mac") || osName.endsWith("x"));
+    case "netware":
+      return osName.contains("netware");
+    case "os/2":
+      return osName.contains("os/2");
+    case "tandem":
+      return osName.contains("nonstop_kernel");
+    case "z/os":
+      return osName.contains("z/os") || osName.contains("os/390");
+    case "os/400":
+      return osName.contains("os/400");
+    case "openvms":
+      return osName.contains("openvms");
+    default:
+      return osName.contains(f);
+    }
+  }
+
+  /**
+   * @param jdk activation value: a version prefix or a range such as {@code [1.8,11)}, optionally negated with !
+   */
+  boolean isJdk(String jdk) {
+    return jdks.computeIfAbsent(jdk, this::jdk);
+  }
+
+  private boolean jdk(String jdk) {
+    boolean negate = jdk.startsWith("!");
+    String j = negate ? jdk.substring(1) : jdk;
+    boolean result;
+    if (j.startsWith("[") || j.startsWith("("))
+      result = inRanges(j);
+    else
+      result = javaVersion.startsWith(j);
+    return negate ? !result : result;
+  }
+
+  private boolean inRanges(String ranges) {
+    int start = 0;
+    while (start < ranges.length()) {
+      int end = indexOfAny(ranges, start + 1, ']', ')');
+      if (end < 0)
+        return false;
+      if (inRange(ranges.substring(start, end + 1)))
+        return true;
+      start = end + 1;
+      while (start < ranges.length() && (ranges.charAt(start) == ',' || Character.isWhitespace(ranges.charAt(start))))
+        ++start;
+    }
+    return false;
+  }
+
+  private boolean inRange(String range) {
+    boolean lowerInclusive = range.charAt(0) == '[';
+    boolean upperInclusive = range.charAt(range.length() - 1) == ']';
+    String body = range.substring(1, range.length() - 1);
+    int comma = body.indexOf(',');
+    if (comma < 0) // [1.8] means exactly that version
+      return javaVersion.startsWith(body.trim());
+    String lower = body.substring(0, comma).trim(), upper = body.substring(comma + 1).trim();
+    if (!lower.isEmpty()) {
+      int c = compareVersions(javaVersion, lower);
+      if (c < 0 || (c == 0 && !lowerInclusive))
+        return false;
+    }
+    if (!upper.isEmpty()) {
+      int c = compareVersions(javaVersion, upper);
+      if (c > 0 || (c == 0 && !upperInclusive))
+        return false;
+    }
+    return true;
+  }
+
+  private final static int indexOfAny(String s, int from, char a, char b) {
+    for (int i = from; i < s.length(); ++i)
+      if (s.charAt(i) == a || s.charAt(i) == b)
+        return i;
+    return -1;
+  }
+
+  /**
+   * Compare the numeric components of two versions; the shorter bound is compared only as far as it goes, so
+   * {@code 1.8.0_292} equals {@code 1.8}.
+   */
+  final static int compareVersions(String actual, String bound) {
+    String[] a = actual.split("[^0-9]+"), b = bound.split("[^0-9]+");
+    for (int i = 0; i < b.length; ++i) {
+      long x = i < a.length && !a[i].isEmpty() ? Long.parseLong(a[i]) : 0L;
+      long y = b[i].isEmpty() ? 0L : Long.parseLong(b[i]);
+      if (x != y)
+        return x < y ? -1 : 1;
+    }
+    return 0;
+  }
+
+  boolean exists(Path p) {
+    return files.computeIfAbsent(p, Files::exists);
+  }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking front for any {@link SettingsSnapshotSupplier}.
+ *
+ * The first {@link #getAsync()} runs the delegate's build on the executor; every caller until it completes shares that
+ * one future, and afterwards the current snapshot is returned as an already completed future. If the build fails the
+ * future completes exceptionally and the next call tries again.
+ *
+ * {@link #subscribe(Consumer)} pushes the current snapshot as soon as it exists and, when the delegate is a
+ * {@link ReloadingSettingsSupplier}, every later snapshot. Deliveries run on the executor, never on the caller's or the
+ * watcher's thread. Each subscriber sees its snapshots one at a time and in order; if several are published while it
+ * is busy, it only gets the newest.
+ *
+ * Without an explicit executor, a virtual-thread-per-task executor is used when the JVM has one, else a cached pool of
+ * daemon threads.
+ */
+public class AsyncSettingsSupplier implements SettingsSnapshotSupplier, Closeable {
+  public final static Logger log = LoggerFactory.getLogger(AsyncSettingsSupplier.class);
+
+  private final SettingsSnapshotSupplier delegate;
+  private final Executor executor;
+  private final ExecutorService owned;
+  private final AtomicReference<CompletableFuture<SettingsSnapshot>> initial = new AtomicReference<>();
+  private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+  private final SettingsChangeListener reloadListener = new SettingsChangeListener() {
+    @Override
+    public void settingsChanged(SettingsDiff diff) {
+      publish(delegate.getSnapshot());
+    }
+  };
+  private volatile SettingsSnapshot ready;
+
+  public AsyncSettingsSupplier(SettingsSnapshotSupplier delegate) {
+    this(delegate, null);
+  }
+
+  /**
+   * @param delegate supplier doing the actual work
+   * @param executor executor for builds and deliveries; null for the default, which {@link #close()} shuts down
+   */
+  public AsyncSettingsSupplier(SettingsSnapshotSupplier delegate, Executor executor) {
+    this.delegate = Objects.requireNonNull(delegate);
+    this.owned = executor == null ? defaultExecutor() : null;
+    this.executor = executor == null ? owned : executor;
+    if (delegate instanceof ReloadingSettingsSupplier)
+      ((ReloadingSettingsSupplier) delegate).addChangeListener(reloadListener);
+  }
+
+  /**
+   * @return {@code Executors.newVirtualThreadPerTaskExecutor()} if this JVM has it, else a cached daemon pool
+   */
+  public final static ExecutorService defaultExecutor() {
+    try {
+      Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) m.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      log.debug("Virtual threads unavailable; using platform threads");
+      return Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "settings-async");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+
+  /**
+   * @return future of the current snapshot; already complete once the first build has finished
+   */
+  public CompletableFuture<SettingsSnapshot> getSnapshotAsync() {
+    if (ready != null)
+      return CompletableFuture.completedFuture(delegate.getSnapshot());
+    CompletableFuture<SettingsSnapshot> f = initial.get();
+    if (f != null)
+      return f;
+    CompletableFuture<SettingsSnapshot> mine = new CompletableFuture<>();
+    if (!initial.compareAndSet(null, mine))
+      return initial.get();
+    executor.execute(() -> {
+      try {
+        SettingsSnapshot s = delegate.getSnapshot();
+        ready = s;
+        mine.complete(s);
+        publish(s);
+      } catch (Throwable e) {
+        log.warn("Asynchronous settings build failed", e);
+        initial.compareAndSet(mine, null);
+        mine.completeExceptionally(e);
+      }
+    });
+    return mine;
+  }
+
+  /**
+   * @return future of the current settings; already complete once the first build has finished
+   */
+  public CompletableFuture<SettingsProxy> getAsync() {
+    return getSnapshotAsync().thenApply(s -> {
+      SettingsMetrics.access();
+      return s.getSettings();
+    });
+  }
+
+  /**
+   * Blocking access, for callers that are allowed to wait.
+   */
+  @Override
+  public SettingsSnapshot getSnapshot() {
+    return ready != null ? delegate.getSnapshot() : getSnapshotAsync().join();
+  }
+
+  /**
+   * @param subscriber receives the current snapshot and every later one
+   * @return handle whose {@link Subscription#close()} stops further deliveries
+   */
+  public Subscription subscribe(Consumer<SettingsSnapshot> subscriber) {
+    Subscription s = new Subscription(Objects.requireNonNull(subscriber));
+    subscriptions.add(s);
+    if (ready != null)
+      s.offer(delegate.getSnapshot());
+    else
+      getSnapshotAsync(); // publishes to every subscriber on completion
+    return s;
+  }
+
+  private void publish(SettingsSnapshot snapshot) {
+    for (Subscription s : subscriptions)
+      s.offer(snapshot);
+  }
+
+  @Override
+  public void close() {
+    if (delegate instanceof ReloadingSettingsSupplier)
+      ((ReloadingSettingsSupplier) delegate).removeChangeListener(reloadListener);
+    subscriptions.clear();
+    if (owned != null)
+      owned.shutdown();
+  }
+
+  /**
+   * One subscriber's mailbox: holds at most the newest undelivered snapshot and has at most one delivery in flight.
+   */
+  public final class Subscription implements Closeable {
+    private final Consumer<SettingsSnapshot> subscriber;
+    private final AtomicReference<SettingsSnapshot> pending = new AtomicReference<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile SettingsSnapshot last;
+    private volatile boolean closed;
+
+    private Subscription(Consumer<SettingsSnapshot> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    private void offer(SettingsSnapshot s) {
+      if (closed)
+        return;
+      pending.set(s);
+      drain();
+    }
+
+    private void drain() {
+      if (pending.get() == null || !running.compareAndSet(false, true))
+        return;
+      executor.execute(() -> {
+        try {
+          SettingsSnapshot s;
+          while (!closed && (s = pending.getAndSet(null)) != null) {
+            if (s == last)
+              continue; // the same snapshot reached us twice, e.g. initial build and a racing reload
+            last = s;
+            try {
+              subscriber.accept(s);
+            } catch (RuntimeException e) {
+              log.warn("Settings subscriber " + subscriber + " failed", e);
+            }
+          }
+        } finally {
+          running.set(false);
+        }
+        drain(); // an offer may have arrived between the last poll and clearing the flag
+      });
+    }
+
+    /**
+     * @return the snapshot most recently delivered, or null if none yet
+     */
+    public SettingsSnapshot getLast() {
+      return last;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      subscriptions.remove(this);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_MAVEN_CONFIGURATION_HOME;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.infrastructurebuilder.util.EnvSupplier;
+import org.infrastructurebuilder.util.PropertiesSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link SettingsSnapshotSupplier} that consults a {@link SettingsSnapshotCache} before building.
+ *
+ * On a hit no XML is parsed at all. The cache directory is taken from the {@value #SETTINGS_CACHE_DIRECTORY}
+ * environment entry if present, otherwise {@link #DEFAULT_CACHE_DIRECTORY}.
+ */
+@Named("cached")
+public class CachingSettingsSupplier implements SettingsSnapshotSupplier {
+  public final static Logger log = LoggerFactory.getLogger(CachingSettingsSupplier.class);
+  public static final String SETTINGS_CACHE_DIRECTORY = "SETTINGS_CACHE_DIRECTORY";
+  public static final Path DEFAULT_CACHE_DIRECTORY = USER_MAVEN_CONFIGURATION_HOME.resolve(".settings-cache");
+  public static final String CACHE_NAME = "settings-snapshot";
+
+  private final SettingsSnapshot snapshot;
+  private final boolean cacheHit;
+
+  @Inject
+  public CachingSettingsSupplier(EnvSupplier envSupplier, @Named("default") PropertiesSupplier propSupplier,
+      SettingsBuilder settingsBuilder) {
+    this(envSupplier, propSupplier, settingsBuilder,
+        new SettingsSnapshotCache(SettingsCacheFiles.directory(envSupplier)));
+  }
+
+  public CachingSettingsSupplier(EnvSupplier envSupplier, PropertiesSupplier propSupplier,
+      SettingsBuilder settingsBuilder, SettingsSnapshotCache cache) {
+    Objects.requireNonNull(cache);
+    SettingsCacheFiles.Loaded l = SettingsCacheFiles.load(envSupplier, propSupplier, settingsBuilder, CACHE_NAME,
+        cache::read, cache::write);
+    this.snapshot = l.snapshot;
+    this.cacheHit = l.hit;
+  }
+
+  /**
+   * @return true if this instance was served from the on-disk cache
+   */
+  public boolean isCacheHit() {
+    return cacheHit;
+  }
+
+  @Override
+  public SettingsSnapshot getSnapshot() {
+    return snapshot;
+  }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.infrastructurebuilder.util.ProfileProxy;
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.infrastructurebuilder.util.RepositoryProxy;
+import org.infrastructurebuilder.util.ServerProxy;
+
+/**
+ * Answers "what do I need to send this request" for a target URI: the repository or mirror it belongs to, after
+ * mirror routing, that location's {@code <server>} credentials and the {@code <proxy>} to go through.
+ *
+ * Every mirror and every profile repository is registered under its scheme, host and port, then under its path. A
+ * lookup is one map probe for the host followed by a longest-prefix match over the few locations on that host, and
+ * each location's answer is computed once when the resolver is built, so the cost does not depend on the number of
+ * servers, mirrors or repositories. Mirror URLs are registered first, then repositories of active profiles, then the
+ * remaining ones; the first registration of a URL wins. A URI under a repository that is mirrored resolves to the
+ * mirror, and {@link Resolution#rewrite(URI)} moves it onto the mirror's URL.
+ *
+ * URIs that match no location still get the applicable proxy; that answer is cached per host.
+ */
+public final class CredentialsResolver {
+  public final static int MAX_CACHED_HOSTS = 4096;
+
+  private final Map<String, Resolution[]> byHost;
+  private final Map<String, Resolution> unmatched = new ConcurrentHashMap<>();
+  private final SettingsSnapshot snapshot;
+
+  /**
+   * @param snapshot settings
+   * @return resolver for the profiles active in the snapshot's {@link SettingsSnapshot#getEnvironment() environment}
+   */
+  public final static CredentialsResolver of(SettingsSnapshot snapshot) {
+    return of(snapshot, snapshot.getEnvironment());
+  }
+
+  /**
+   * @param snapshot settings
+   * @param env      environment deciding which profiles' repositories take precedence
+   * @return new resolver
+   */
+  public final static CredentialsResolver of(SettingsSnapshot snapshot, ActivationEnvironment env) {
+    return new CredentialsResolver(Objects.requireNonNull(snapshot), Objects.requireNonNull(env));
+  }
+
+  private CredentialsResolver(SettingsSnapshot snapshot, ActivationEnvironment env) {
+    this.snapshot = snapshot;
+    Map<String, Map<String, Resolution>> m = new LinkedHashMap<>();
+    for (MirrorProxy mirror : snapshot.getSettings().getMirrors()) {
+      RepositoryLocation l = RepositoryLocation.of(mirror);
+      register(m, l, new Resolution(Optional.of(l), l.getUri(), l.getUri(), false, server(l), proxy(l.getUri())));
+    }
+    EffectiveProfiles active = snapshot.getEffectiveProfiles(env);
+    List<RepositoryProxy> repos = new ArrayList<>(active.getRepositories());
+    repos.addAll(active.getPluginRepositories());
+    for (ProfileProxy p : snapshot.getSettings().getProfiles()) {
+      repos.addAll(p.getRepositories());
+      repos.addAll(p.getPluginRepositories());
+    }
+    MirrorRouter router = snapshot.getMirrorRouter();
+    for (RepositoryProxy r : repos) {
+      RepositoryLocation l = RepositoryLocation.of(r);
+      RepositoryLocation target = router.route(l).map(RepositoryLocation::of).orElse(l);
+      register(m, l, new Resolution(Optional.of(target), l.getUri(), target.getUri(), target != l, server(target),
+          proxy(target.getUri())));
+    }
+    Map<String, Resolution[]> h = new HashMap<>(Math.max(16, (int) (m.size() / 0.75f) + 1));
+    for (Map.Entry<String, Map<String, Resolution>> e : m.entrySet()) {
+      Resolution[] a = e.getValue().values().toArray(new Resolution[0]);
+      // longest path first, so the first prefix that matches is the most specific
+      Arrays.sort(a, (x, y) -> Integer.compare(y.prefix.length(), x.prefix.length()));
+      h.put(e.getKey(), a);
+    }
+    this.byHost = h;
+  }
+
+  private final static void register(Map<String, Map<String, Resolution>> m, RepositoryLocation l, Resolution r) {
+    m.computeIfAbsent(hostKey(l.getUri()), k -> new LinkedHashMap<>()).putIfAbsent(r.prefix, r);
+  }
+
+  private Optional<ServerProxy> server(RepositoryLocation l) {
+    return snapshot.getIndex().getServer(l.getId());
+  }
+
+  private Optional<ProxyProxy> proxy(URI uri) {
+    return snapshot.getProxySelector().proxyFor(uri);
+  }
+
+  /**
+   * @param uri target of a request
+   * @return location, credentials and proxy for it
+   */
+  public Resolution resolve(URI uri) {
+    String key = hostKey(Objects.requireNonNull(uri));
+    Resolution[] candidates = byHost.get(key);
+    if (candidates != null) {
+      String path = path(uri);
+      for (Resolution r : candidates)
+        if (r.matches(path))
+          return r;
+    }
+    Resolution r = unmatched.get(key);
+    if (r == null) {
+      if (unmatched.size() >= MAX_CACHED_HOSTS)
+        unmatched.clear();
+      r = unmatched.computeIfAbsent(key,
+          k -> new Resolution(Optional.empty(), uri, uri, false, Optional.empty(), proxy(uri)));
+    }
+    return r;
+  }
+
+  /**
+   * @param uri target of a request
+   * @return credentials for it, if its location has a {@code <server>}
+   */
+  public Optional<ServerProxy> getServer(URI uri) {
+    return resolve(uri).getServer();
+  }
+
+  final static String hostKey(URI uri) {
+    String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+    String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+    int port = uri.getPort();
+    if (port < 0)
+      port = "https".equals(scheme) ? 443 : "http".equals(scheme) ? 80 : -1;
+    return scheme + "://" + host + ":" + port;
+  }
+
+  private final static String path(URI uri) {
+    String p = uri.getRawPath();
+    return p == null ? "" : p;
+  }
+
+  /**
+   * What applies to one target URI. Instances for known locations are shared by every lookup that lands on them.
+   */
+  public final static class Resolution {
+    private final Optional<RepositoryLocation> location;
+    private final String prefix;
+    private final URI to;
+    private final boolean mirrored;
+    private final Optional<ServerProxy> server;
+    private final Optional<ProxyProxy> proxy;
+
+    private Resolution(Optional<RepositoryLocation> location, URI from, URI to, boolean mirrored,
+        Optional<ServerProxy> server, Optional<ProxyProxy> proxy) {
+      this.location = location;
+      this.prefix = trimSlash(path(from));
+      this.to = to;
+      this.mirrored = mirrored;
+      this.server = server;
+      this.proxy = proxy;
+    }
+
+    private final static String trimSlash(String p) {
+      return p.endsWith("/") ? p.substring(0, p.length() - 1) : p;
+    }
+
+    private boolean matches(String path) {
+      return path.startsWith(prefix) && (path.length() == prefix.length() || path.charAt(prefix.length()) == '/');
+    }
+
+    /**
+     * @return the repository or mirror the request goes to, after mirror routing; empty if the URI is not under any
+     *         known location
+     */
+    public Optional<RepositoryLocation> getLocation() {
+      return location;
+    }
+
+    /**
+     * @return credentials of {@link #getLocation()}
+     */
+    public Optional<ServerProxy> getServer() {
+      return server;
+    }
+
+    /**
+     * @return proxy to reach {@link #getLocation()}, or the target itself when there is no location
+     */
+    public Optional<ProxyProxy> getProxy() {
+      return proxy;
+    }
+
+    /**
+     * @return true if the target was under a repository that a mirror replaces
+     */
+    public boolean isMirrored() {
+      return mirrored;
+    }
+
+    /**
+     * @param uri target that resolved to this instance
+     * @return the same resource under {@link #getLocation()}; {@code uri} itself unless {@link #isMirrored()}
+     */
+    public URI rewrite(URI uri) {
+      if (!isMirrored())
+        return uri;
+      String rest = path(uri).substring(prefix.length());
+      String base = trimSlash(to.toString());
+      return URI.create(base + rest + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery()));
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.toList;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.maven.settings.Proxy;
+import org.apache.maven.settings.Server;
+import org.apache.maven.settings.crypto.DefaultSettingsDecryptionRequest;
+import org.apache.maven.settings.crypto.SettingsDecrypter;
+import org.apache.maven.settings.crypto.SettingsDecryptionResult;
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.SettingsSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link SettingsSnapshotSupplier} that decrypts the {@code {...}} secrets of another supplier's snapshot with a
+ * {@link SettingsDecrypter}.
+ *
+ * {@link #getServer(String)} decrypts a single server the first time it is asked for and remembers the result.
+ * {@link #decryptAll()}, which also backs {@link #getSnapshot()}, fans the remaining servers and proxies out over an
+ * {@link Executor} and reuses anything already decrypted. When the delegate publishes a new snapshot (for example a
+ * {@link ReloadingSettingsSupplier}) the decrypted state is discarded and rebuilt from it.
+ */
+@Named("decrypting")
+public class DecryptingSettingsSupplier implements SettingsSnapshotSupplier {
+  public final static Logger log = LoggerFactory.getLogger(DecryptingSettingsSupplier.class);
+
+  private final SettingsSupplier delegate;
+  private final SettingsDecrypter decrypter;
+  private final Executor executor;
+  private volatile State state;
+
+  @Inject
+  public DecryptingSettingsSupplier(@Named("default") SettingsSupplier delegate,
+      @Named("my") SettingsDecrypter decrypter) {
+    this(delegate, decrypter, ForkJoinPool.commonPool());
+  }
+
+  public DecryptingSettingsSupplier(SettingsSupplier delegate, SettingsDecrypter decrypter, Executor executor) {
+    this.delegate = Objects.requireNonNull(delegate);
+    this.decrypter = Objects.requireNonNull(decrypter);
+    this.executor = Objects.requireNonNull(executor);
+  }
+
+  /**
+   * @param id server id
+   * @return the server with its password and passphrase decrypted, if the id exists
+   */
+  public Optional<ServerProxy> getServer(String id) {
+    State s = current();
+    return s.source.getIndex().getServer(id).map(s::server);
+  }
+
+  /**
+   * Decrypt every server and proxy of the current snapshot in parallel.
+   *
+   * @return snapshot whose servers and proxies carry decrypted secrets
+   */
+  public SettingsSnapshot decryptAll() {
+    return current().decrypted.get();
+  }
+
+  @Override
+  public SettingsSnapshot getSnapshot() {
+    return decryptAll();
+  }
+
+  private State current() {
+    SettingsSnapshot source = delegate instanceof SettingsSnapshotSupplier
+        ? ((SettingsSnapshotSupplier) delegate).getSnapshot()
+        : null;
+    State s = state;
+    if (s != null && (source == null ? s.source.getSettings() == delegate.get() : s.source == source))
+      return s;
+    synchronized (this) {
+      s = state;
+      if (s == null || (source == null ? s.source.getSettings() != delegate.get() : s.source != source))
+        state = s = new State(source != null ? source : SettingsSnapshot.of(delegate.get()));
+      return s;
+    }
+  }
+
+  private ServerProxy decrypt(ServerProxy sp) {
+    Server s = new Server();
+    s.setId(sp.getId());
+    s.setUsername(sp.getUsername().orElse(null));
+    s.setPassword(sp.getPassword().orElse(null));
+    s.setPassphrase(sp.getPassphrase().orElse(null));
+    SettingsDecryptionResult r = decrypter.decrypt(new DefaultSettingsDecryptionRequest(s));
+    logProblems(r);
+    Server d = r.getServer();
+    return new ServerProxy(sp.getId(), sp.getUsername(), ofNullable(d.getPassword()), ofNullable(d.getPassphrase()),
+        sp.getPrivateKey(), sp.getFilePermissions(), sp.getDirectoryPermissions(), sp.getConfiguration());
+  }
+
+  private ProxyProxy decrypt(ProxyProxy pp) {
+    Proxy p = new Proxy();
+    p.setId(pp.getId());
+    p.setUsername(pp.getUsername().orElse(null));
+    p.setPassword(pp.getPassword().orElse(null));
+    SettingsDecryptionResult r = decrypter.decrypt(new DefaultSettingsDecryptionRequest(p));
+    logProblems(r);
+    return new ProxyProxy(pp.getId(), pp.getHost(), pp.getNonProxyHosts(), ofNullable(r.getProxy().getPassword()),
+        pp.getPort(), pp.getProtocol(), pp.getUsername(), pp.isActive());
+  }
+
+  private final static void logProblems(SettingsDecryptionResult r) {
+    r.getProblems().forEach(problem -> log.warn("Problem: " + problem.getMessage() + " @ " + problem.getLocation()));
+  }
+
+  private final class State {
+    private final SettingsSnapshot source;
+    private final Map<String, Lazy<ServerProxy>> servers = new ConcurrentHashMap<>();
+    private final Lazy<SettingsSnapshot> decrypted;
+
+    private State(SettingsSnapshot source) {
+      this.source = source;
+      this.decrypted = new Lazy<>(this::build);
+    }
+
+    /**
+     * The map only holds a {@link Lazy} per id, so decryption runs outside the map's locks and exactly once per id.
+     *
+     * @param sp first definition of a server id in {@link #source}
+     * @return decrypted server
+     */
+    private ServerProxy server(ServerProxy sp) {
+      return servers.computeIfAbsent(sp.getId(), k -> new Lazy<>(() -> decrypt(sp))).get();
+    }
+
+    private SettingsSnapshot build() {
+      SettingsProxy s = source.getSettings();
+      Map<String, ServerProxy> first = source.getIndex().getServers();
+      List<CompletableFuture<ServerProxy>> sf = s.getServers().stream()
+          .map(sp -> first.get(sp.getId()) == sp
+              ? CompletableFuture.supplyAsync(() -> server(sp), executor)
+              : CompletableFuture.supplyAsync(() -> decrypt(sp), executor))
+          .collect(toList());
+      List<CompletableFuture<ProxyProxy>> pf = s.getProxies().stream()
+          .map(pp -> CompletableFuture.supplyAsync(() -> decrypt(pp), executor)).collect(toList());
+      List<ServerProxy> ds = sf.stream().map(CompletableFuture::join).collect(toList());
+      List<ProxyProxy> dp = pf.stream().map(CompletableFuture::join).collect(toList());
+      return SettingsSnapshot.of(new SettingsProxy(s.isOffline(), s.getLocalRepository(), s.getModelEncoding(), ds,
+          s.getProfiles(), s.getMirrors(), s.getPluginGroups(), dp));
+    }
+  }
+}
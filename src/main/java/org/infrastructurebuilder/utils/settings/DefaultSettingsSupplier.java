@@ -20,7 +20,6 @@ import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.toList;
 
 import java.io.StringWriter;
-import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -72,13 +71,20 @@ import org.infrastructurebuilder.util.RepositoryPolicyProxy;
 import org.infrastructurebuilder.util.RepositoryProxy;
 import org.infrastructurebuilder.util.ServerProxy;
 import org.infrastructurebuilder.util.SettingsProxy;
-import org.infrastructurebuilder.util.SettingsSupplier;
 import org.infrastructurebuilder.util.UpdatePolicy;
+import org.infrastructurebuilder.utils.settings.SettingsMetrics.Phase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * {@link SettingsSnapshotSupplier} that locates the user and global settings files, builds the effective settings and
+ * converts them to a {@link SettingsProxy}.
+ *
+ * Safe for concurrent use: the snapshot is published once through a volatile field, and callers racing on the first
+ * {@link #get()} wait for a single build on a per-instance lock that later calls never take.
+ */
 @Named
-public class DefaultSettingsSupplier implements SettingsSupplier {
+public class DefaultSettingsSupplier implements SettingsSnapshotSupplier {
   public final static Logger log = LoggerFactory.getLogger(DefaultSettingsSupplier.class);
   public static final String SETTINGS_XML = "settings.xml";
   public static final String MAVEN_HOME = "MAVEN_HOME";
@@ -98,65 +104,164 @@ public class DefaultSettingsSupplier implements SettingsSupplier {
       .map(x -> x.resolve("conf").resolve(DefaultSettingsSupplier.SETTINGS_XML));
 
   private final Map<String, String> env;
+  private final PropertiesSupplier propSupplier;
+  private final SettingsBuilder settingsBuilder;
+  private final SettingsFileDiscovery discovery;
   private final Settings settings;
-  private SettingsProxy sp;
+  private final Object lock = new Object();
+  private volatile SettingsSnapshot snapshot;
 
   @Inject
   public DefaultSettingsSupplier(EnvSupplier envSupplier, @Named("default") PropertiesSupplier propSupplier,
       SettingsBuilder settingsBuilder) {
+    this(envSupplier, propSupplier, settingsBuilder, true);
+  }
+
+  /**
+   * @param envSupplier     environment used to locate the settings files
+   * @param propSupplier    system properties for interpolation
+   * @param settingsBuilder builder
+   * @param discovery       chains used to locate the settings files
+   */
+  public DefaultSettingsSupplier(EnvSupplier envSupplier, PropertiesSupplier propSupplier,
+      SettingsBuilder settingsBuilder, SettingsFileDiscovery discovery) {
+    this(envSupplier, propSupplier, settingsBuilder, discovery, true);
+  }
+
+  protected DefaultSettingsSupplier(EnvSupplier envSupplier, PropertiesSupplier propSupplier,
+      SettingsBuilder settingsBuilder, boolean eager) {
+    this(envSupplier, propSupplier, settingsBuilder, SettingsFileDiscovery.DEFAULT, eager);
+  }
+
+  /**
+   * @param envSupplier     environment used to locate the settings files
+   * @param propSupplier    system properties for interpolation
+   * @param settingsBuilder builder
+   * @param discovery       chains used to locate the settings files
+   * @param eager           if false, only record the inputs; nothing is read until the first {@link #get()}
+   */
+  protected DefaultSettingsSupplier(EnvSupplier envSupplier, PropertiesSupplier propSupplier,
+      SettingsBuilder settingsBuilder, SettingsFileDiscovery discovery, boolean eager) {
     this.env = Objects.requireNonNull(envSupplier).get();
+    this.propSupplier = Objects.requireNonNull(propSupplier);
+    this.settingsBuilder = settingsBuilder;
+    this.discovery = Objects.requireNonNull(discovery);
+    this.settings = eager ? buildSettings() : null;
+  }
+
+  /**
+   * Resolve the current settings files and build the effective {@link Settings} from them.
+   *
+   * @return freshly built effective settings
+   */
+  protected final Settings buildSettings() {
+    long start = SettingsMetrics.start();
+    Path global = getGlobalSettingsFile();
+    Path user = getUserSettingsFile();
+    SettingsMetrics.phase(Phase.DISCOVERY, start);
+    return getEffectiveSettingsForRequest.apply(settingsBuilder, requestFor(user, global, propSupplier.get()));
+  }
+
+  /**
+   * Convert effective settings into a new snapshot, reporting the {@link Phase#CONVERSION} time.
+   *
+   * @param s effective settings
+   * @return snapshot of {@link #proxyFromSettings} applied to {@code s}
+   */
+  final static SettingsSnapshot snapshotOf(Settings s) {
+    long start = SettingsMetrics.start();
+    SettingsProxy p = proxyFromSettings.apply(s);
+    SettingsMetrics.phase(Phase.CONVERSION, start);
+    return SettingsSnapshot.of(p);
+  }
+
+  /**
+   * Assemble the building request this component uses for a pair of settings files.
+   *
+   * @param userSettings     user settings file
+   * @param globalSettings   global settings file
+   * @param systemProperties system properties for interpolation
+   * @return building request
+   */
+  public final static SettingsBuildingRequest requestFor(Path userSettings, Path globalSettings,
+      Properties systemProperties) {
     SettingsBuildingRequest settingsRequest = new DefaultSettingsBuildingRequest();
     log.debug("Got the SettingsBuildingRequest");
-    settingsRequest.setGlobalSettingsFile(getGlobalSettingsFile().toFile());
+    settingsRequest.setGlobalSettingsFile(globalSettings.toFile());
     log.debug("setGlobalSettingsFile");
-    settingsRequest.setUserSettingsFile(getUserSettingsFile().toFile());
+    settingsRequest.setUserSettingsFile(userSettings.toFile());
     log.debug("setUserSettingsFile");
-    settingsRequest.setSystemProperties(propSupplier.get()); // Here is where you'd set anything you wanted to
+    settingsRequest.setSystemProperties(systemProperties); // Here is where you'd set anything you wanted to
     log.debug("setSystemProperties");
     settingsRequest.setUserProperties(new Properties()); // No additional properties within this component
     log.debug("setUserProperties");
-    this.settings = getEffectiveSettingsForRequest.apply(settingsBuilder, settingsRequest);
-
+    return settingsRequest;
   }
 
   public Path getUserSettingsFile() {
-    Path p = Optional.ofNullable(Objects.requireNonNull(env).get(DefaultSettingsSupplier.USER_SETTINGS_FILE))
-        .map(Paths::get).orElse(DEFAULT_USER_SETTINGS_FILE).toAbsolutePath();
-    if (!(Files.exists(p) && Files.isRegularFile(p) && Files.isReadable(p)))
-      throw new RuntimeException("User Settings file " + p.toString() + " is not a readable, regular file");
-    return p;
+    return discoverUserSettingsFile().getPath();
   }
 
   public Path getGlobalSettingsFile() {
-    Path p;
-    String alternateGlobalSettings = Objects.requireNonNull(env).get(DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE);
-    if (alternateGlobalSettings == null) {
-      String mavenHome = env.get(DefaultSettingsSupplier.MAVEN_HOME);
-      if (mavenHome == null) {
-        log.warn("No MAVEN_HOME set!!!  Resolving from SDKMAN...");
-        String home = System.getProperty("user.home");
-        Path sdkMan = Paths.get(home).resolve(".sdkman").resolve("candidates").resolve("maven").resolve("current");
-        if (!Files.isSymbolicLink(sdkMan))
-          throw new RuntimeException("MAVEN_HOME is not set to symlink of 'current'");
-        mavenHome = sdkMan.toAbsolutePath().toString();
-      }
-      p = Paths.get(mavenHome).resolve("conf").resolve(DefaultSettingsSupplier.SETTINGS_XML);
-    } else
-      p = Paths.get(alternateGlobalSettings);
-    if (!(Files.exists(p) && Files.isRegularFile(p) && Files.isReadable(p)))
-      throw new RuntimeException("Global Settings file " + p.toString() + " is not available");
-    return p;
+    return discoverGlobalSettingsFile().getPath();
   }
 
+  /**
+   * @return the user settings file and the {@link SettingsFileSource} that supplied it
+   */
+  public SettingsFileDiscovery.Discovered discoverUserSettingsFile() {
+    return discovery.user(env);
+  }
+
+  /**
+   * @return the global settings file and the {@link SettingsFileSource} that supplied it
+   */
+  public SettingsFileDiscovery.Discovered discoverGlobalSettingsFile() {
+    return discovery.global(env);
+  }
+
+  protected SettingsFileDiscovery getDiscovery() {
+    return discovery;
+  }
+
+  public final static Function<Map<String, String>, Path> userSettingsFileFromEnv = (env) -> {
+    return SettingsFileDiscovery.DEFAULT.user(env).getPath();
+  };
+
+  public final static Function<Map<String, String>, Path> globalSettingsFileFromEnv = (env) -> {
+    return SettingsFileDiscovery.DEFAULT.global(env).getPath();
+  };
+
   public final static Function<String, Optional<Path>> s2p = (p) -> {
     return Optional.ofNullable(p).map(Paths::get);
   };
 
+  /**
+   * @return the published snapshot, or null if none has been built yet; never builds
+   */
+  final SettingsSnapshot peekSnapshot() {
+    return snapshot;
+  }
+
+  @Override
+  public SettingsSnapshot getSnapshot() {
+    SettingsSnapshot p = this.snapshot;
+    if (p == null) {
+      synchronized (lock) {
+        p = this.snapshot;
+        if (p == null) {
+          this.snapshot = p = snapshotOf(settings != null ? settings : buildSettings());
+          SettingsMetrics.snapshot(p.getSettings());
+        }
+      }
+    }
+    return p;
+  }
+
   @Override
   public SettingsProxy get() {
-    if (this.sp == null)
-      this.sp = proxyFromSettings.apply(settings);
-    return this.sp;
+    SettingsMetrics.access();
+    return getSnapshot().getSettings();
   }
 
   public final static Function<Server, ServerProxy> proxyFromServer = (s2) -> {
@@ -208,9 +313,9 @@ public class DefaultSettingsSupplier implements SettingsSupplier {
     });
   };
   public final static Function<Repository, RepositoryProxy> proxyFromRepo = (r) -> {
-    return new RepositoryProxy(r.getId(),
+    return new RepositoryProxy(SettingsInterner.string(r.getId()),
         ofNullable(r.getLayout()).map(String::toUpperCase).map(Layout::valueOf).orElse(Layout.DEFAULT),
-        ofNullable(r.getName()), IBException.cet.withReturningTranslation(() -> new URL(r.getUrl())),
+        ofNullable(r.getName()).map(SettingsInterner::string), SettingsInterner.url(r.getUrl()),
         proxyFromRepoPolicy.apply(r.getReleases()), proxyFromRepoPolicy.apply(r.getSnapshots()));
   };
   public final static BiFunction<Boolean, Profile, ProfileProxy> proxyFromProfile = (active, p) -> {
@@ -221,16 +326,15 @@ public class DefaultSettingsSupplier implements SettingsSupplier {
         p.getRepositories().stream().map(proxyFromRepo).collect(toList()));
   };
   public final static Function<Mirror, MirrorProxy> proxyFromMirror = (m) -> {
-    return new MirrorProxy(m.getId(),
-        ofNullable(m.getLayout()).map(String::toUpperCase).map(Layout::valueOf).orElse(Layout.DEFAULT),
-        Arrays.asList(m.getMirrorOf().split(",")),
-        Arrays.asList(ofNullable(m.getLayout()).orElse(Layout.DEFAULT.name())).stream().map(String::toUpperCase)
-            .map(Layout::valueOf).collect(toList()),
-        ofNullable(m.getName()), IBException.cet.withReturningTranslation(() -> new URL(m.getUrl())));
+    Layout layout = ofNullable(m.getLayout()).map(String::toUpperCase).map(Layout::valueOf).orElse(Layout.DEFAULT);
+    return new MirrorProxy(SettingsInterner.string(m.getId()), layout, SettingsInterner.mirrorOf(m.getMirrorOf()),
+        SettingsInterner.layouts(layout), ofNullable(m.getName()).map(SettingsInterner::string),
+        SettingsInterner.url(m.getUrl()));
   };
   public final static Function<Proxy, ProxyProxy> proxyFromProxy = (p) -> {
     return new ProxyProxy(p.getId(), p.getHost(),
-        Arrays.asList((ofNullable(p.getNonProxyHosts()).orElse("")).split("|")).stream().collect(toList()),
+        Arrays.stream((ofNullable(p.getNonProxyHosts()).orElse("")).split("\\|")).map(String::trim)
+            .filter(h -> !h.isEmpty()).collect(toList()),
         ofNullable(p.getPassword()), p.getPort(), ofNullable(p.getProtocol()).orElse("http"),
         ofNullable(p.getUsername()), p.isActive());
   };
@@ -252,6 +356,7 @@ public class DefaultSettingsSupplier implements SettingsSupplier {
 
   public final static Function<SettingsBuildingResult, Settings> logProblems = (
       SettingsBuildingResult settingsResult) -> {
+    SettingsMetrics.problems(settingsResult.getProblems().size());
     settingsResult.getProblems()
         .forEach(problem -> log.warn("Problem: " + problem.getMessage() + " @ " + problem.getLocation()));
     Settings s = settingsResult.getEffectiveSettings();
@@ -268,7 +373,10 @@ public class DefaultSettingsSupplier implements SettingsSupplier {
       settingsBuilder, settingsRequest) -> {
     try {
       return logProblems.apply(settingsBuilder.build(settingsRequest));
-    } catch (NullPointerException | SettingsBuildingException e) {
+    } catch (SettingsBuildingException e) {
+      SettingsMetrics.problems(e.getProblems().size());
+      throw new RuntimeException(e);
+    } catch (NullPointerException e) {
       throw new RuntimeException(e);
     }
   };
@@ -0,0 +1,97 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.infrastructurebuilder.util.ProfileProxy;
+import org.infrastructurebuilder.util.RepositoryProxy;
+
+/**
+ * Result of {@link ProfileActivator#evaluate}: the active profiles and what they contribute once merged.
+ *
+ * Properties are merged in profile order, so a later active profile overrides an earlier one. Repositories follow
+ * Maven's injection order: the last active profile's repositories come first, and a repository id seen earlier in
+ * that order shadows the same id further down. Everything is computed once and immutable.
+ */
+public final class EffectiveProfiles {
+  private final List<ProfileProxy> active;
+  private final List<String> ids;
+  private final Map<String, String> properties;
+  private final List<RepositoryProxy> repositories;
+  private final List<RepositoryProxy> pluginRepositories;
+
+  EffectiveProfiles(List<ProfileProxy> active) {
+    this.active = unmodifiableList(new ArrayList<>(active));
+    List<String> i = new ArrayList<>(active.size());
+    Map<String, String> props = new LinkedHashMap<>();
+    for (ProfileProxy p : active) {
+      i.add(p.getId());
+      for (String k : p.getProperties().stringPropertyNames())
+        props.put(k, p.getProperties().getProperty(k));
+    }
+    this.ids = unmodifiableList(i);
+    this.properties = unmodifiableMap(props);
+    this.repositories = merge(active, ProfileProxy::getRepositories);
+    this.pluginRepositories = merge(active, ProfileProxy::getPluginRepositories);
+  }
+
+  private final static List<RepositoryProxy> merge(List<ProfileProxy> active,
+      Function<ProfileProxy, List<RepositoryProxy>> f) {
+    Map<String, RepositoryProxy> byId = new LinkedHashMap<>();
+    for (int i = active.size() - 1; i >= 0; --i)
+      for (RepositoryProxy r : f.apply(active.get(i)))
+        byId.putIfAbsent(r.getId(), r);
+    return unmodifiableList(new ArrayList<>(byId.values()));
+  }
+
+  /**
+   * @return active profiles in declaration order
+   */
+  public List<ProfileProxy> getActiveProfiles() {
+    return active;
+  }
+
+  public List<String> getActiveProfileIds() {
+    return ids;
+  }
+
+  public boolean isActive(String id) {
+    return ids.contains(id);
+  }
+
+  /**
+   * @return properties of all active profiles, later profiles winning
+   */
+  public Map<String, String> getProperties() {
+    return properties;
+  }
+
+  public List<RepositoryProxy> getRepositories() {
+    return repositories;
+  }
+
+  public List<RepositoryProxy> getPluginRepositories() {
+    return pluginRepositories;
+  }
+}
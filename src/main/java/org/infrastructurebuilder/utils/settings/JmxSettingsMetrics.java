@@ -0,0 +1,180 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.infrastructurebuilder.utils.settings.SettingsMetrics.Phase;
+
+/**
+ * {@link SettingsMetricsListener} that accumulates into {@link LongAdder}s and exposes them as an MXBean.
+ */
+final class JmxSettingsMetrics implements SettingsMetricsListener, SettingsMetricsMXBean {
+  private final Map<Phase, LongAdder> nanos = new EnumMap<>(Phase.class);
+  private final LongAdder builds = new LongAdder();
+  private final LongAdder decryptions = new LongAdder();
+  private final LongAdder problems = new LongAdder();
+  private final LongAdder cacheHits = new LongAdder();
+  private final LongAdder cacheMisses = new LongAdder();
+  private final LongAdder reloads = new LongAdder();
+  private final LongAdder failedReloads = new LongAdder();
+  private final LongAdder accesses = new LongAdder();
+  private volatile int[] sizes = new int[4];
+
+  JmxSettingsMetrics() {
+    for (Phase p : Phase.values())
+      nanos.put(p, new LongAdder());
+  }
+
+  @Override
+  public void phase(Phase phase, long n) {
+    nanos.get(phase).add(n);
+    if (phase == Phase.CONVERSION)
+      builds.increment();
+    else if (phase == Phase.DECRYPTION)
+      decryptions.increment();
+  }
+
+  @Override
+  public void problems(int count) {
+    problems.add(count);
+  }
+
+  @Override
+  public void cacheHit(String cache) {
+    cacheHits.increment();
+  }
+
+  @Override
+  public void cacheMiss(String cache) {
+    cacheMisses.increment();
+  }
+
+  @Override
+  public void reload(boolean success) {
+    (success ? reloads : failedReloads).increment();
+  }
+
+  @Override
+  public void snapshot(int servers, int profiles, int mirrors, int proxies) {
+    sizes = new int[] { servers, profiles, mirrors, proxies };
+  }
+
+  @Override
+  public void access() {
+    accesses.increment();
+  }
+
+  @Override
+  public long getDiscoveryNanos() {
+    return nanos.get(Phase.DISCOVERY).sum();
+  }
+
+  @Override
+  public long getReadNanos() {
+    return nanos.get(Phase.READ).sum();
+  }
+
+  @Override
+  public long getValidateNanos() {
+    return nanos.get(Phase.VALIDATE).sum();
+  }
+
+  @Override
+  public long getInterpolateNanos() {
+    return nanos.get(Phase.INTERPOLATE).sum();
+  }
+
+  @Override
+  public long getConversionNanos() {
+    return nanos.get(Phase.CONVERSION).sum();
+  }
+
+  @Override
+  public long getDecryptionNanos() {
+    return nanos.get(Phase.DECRYPTION).sum();
+  }
+
+  @Override
+  public long getBuilds() {
+    return builds.sum();
+  }
+
+  @Override
+  public long getDecryptions() {
+    return decryptions.sum();
+  }
+
+  @Override
+  public long getProblems() {
+    return problems.sum();
+  }
+
+  @Override
+  public long getCacheHits() {
+    return cacheHits.sum();
+  }
+
+  @Override
+  public long getCacheMisses() {
+    return cacheMisses.sum();
+  }
+
+  @Override
+  public long getReloads() {
+    return reloads.sum();
+  }
+
+  @Override
+  public long getFailedReloads() {
+    return failedReloads.sum();
+  }
+
+  @Override
+  public long getAccesses() {
+    return accesses.sum();
+  }
+
+  @Override
+  public int getServers() {
+    return sizes[0];
+  }
+
+  @Override
+  public int getProfiles() {
+    return sizes[1];
+  }
+
+  @Override
+  public int getMirrors() {
+    return sizes[2];
+  }
+
+  @Override
+  public int getProxies() {
+    return sizes[3];
+  }
+
+  @Override
+  public void reset() {
+    nanos.values().forEach(LongAdder::reset);
+    for (LongAdder a : new LongAdder[] { builds, decryptions, problems, cacheHits, cacheMisses, reloads, failedReloads,
+        accesses })
+      a.reset();
+  }
+}
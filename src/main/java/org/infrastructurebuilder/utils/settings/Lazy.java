@@ -0,0 +1,51 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe memoizing {@link Supplier}: the delegate runs at most once successfully, and every caller sees the same
+ * safely published value. A delegate failure is rethrown and retried on the next call.
+ *
+ * @param <T> value type
+ */
+final class Lazy<T> implements Supplier<T> {
+  private final Supplier<T> delegate;
+  private volatile T value;
+
+  Lazy(Supplier<T> delegate) {
+    this.delegate = Objects.requireNonNull(delegate);
+  }
+
+  @Override
+  public T get() {
+    T v = value;
+    if (v == null) {
+      synchronized (this) {
+        v = value;
+        if (v == null)
+          value = v = Objects.requireNonNull(delegate.get());
+      }
+    }
+    return v;
+  }
+
+  boolean isInitialized() {
+    return value != null;
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.infrastructurebuilder.util.EnvSupplier;
+import org.infrastructurebuilder.util.PropertiesSupplier;
+import org.infrastructurebuilder.util.SettingsProxy;
+
+/**
+ * {@link DefaultSettingsSupplier} that does no I/O while the container wires it.
+ *
+ * The constructor only records its inputs. File discovery, parsing and creation of the local repository happen
+ * exactly once, on the first {@link #get()} or on the thread started by {@link #warmUp()}, whichever comes first.
+ * Concurrent callers wait for that single build. If the build fails, the failure is rethrown and the next call tries
+ * again.
+ */
+@Named("lazy")
+public class LazySettingsSupplier extends DefaultSettingsSupplier {
+  private final AtomicReference<CompletableFuture<SettingsProxy>> warmUp = new AtomicReference<>();
+
+  @Inject
+  public LazySettingsSupplier(EnvSupplier envSupplier, @Named("default") PropertiesSupplier propSupplier,
+      SettingsBuilder settingsBuilder) {
+    super(envSupplier, propSupplier, settingsBuilder, false);
+  }
+
+  /**
+   * Build the snapshot on a background daemon thread. Only the first call starts the thread; later calls return the
+   * same future, or an already completed one if {@link #get()} has published the snapshot. After a failed warm-up
+   * the next call starts a new one.
+   *
+   * @return future completed with the snapshot, or exceptionally if the build failed
+   */
+  public CompletableFuture<SettingsProxy> warmUp() {
+    for (;;) {
+      CompletableFuture<SettingsProxy> f = warmUp.get();
+      if (f != null)
+        return f;
+      SettingsSnapshot s = peekSnapshot();
+      if (s != null) {
+        warmUp.compareAndSet(null, CompletableFuture.completedFuture(s.getSettings()));
+        continue;
+      }
+      CompletableFuture<SettingsProxy> mine = new CompletableFuture<>();
+      if (!warmUp.compareAndSet(null, mine))
+        continue;
+      Thread t = new Thread(() -> {
+        try {
+          mine.complete(get());
+        } catch (Throwable e) {
+          log.warn("Settings warm-up failed", e);
+          warmUp.compareAndSet(mine, null);
+          mine.completeExceptionally(e);
+        }
+      }, "settings-warm-up");
+      t.setDaemon(true);
+      t.start();
+      return mine;
+    }
+  }
+}
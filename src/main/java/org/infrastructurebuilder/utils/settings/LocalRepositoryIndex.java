@@ -0,0 +1,536 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inventory of a Maven local repository keyed by {@code groupId:artifactId:version}, kept in a memory-mapped file
+ * next to the repository so that "is this artifact present" is a lookup rather than a series of file-system probes.
+ *
+ * The index records every directory of the repository with its modification time and subdirectories; an artifact
+ * directory, one holding files named {@code artifactId-version*}, also records its file names. Maven's bookkeeping
+ * files ({@code *.lastUpdated}, {@code _remote.repositories}, {@code resolver-status.properties}) are ignored, so a
+ * failed download does not make an artifact look present, and symbolic links to directories are not followed.
+ * {@link #build(Path)} walks the whole tree in parallel. {@link #refresh()} only reads the modification time of each
+ * known directory and lists again just those that changed, since adding or removing an entry always touches its
+ * parent directory.
+ *
+ * Layout, all integers big-endian:
+ *
+ * <pre>
+ * int magic "IBRI" | int layout version | int CRC32 of body | int body length
+ * body: repository path | int directory count | int artifact directory count | int[count] record offsets
+ *       records, sorted by UTF-8 bytes of their path:
+ *       relative path ('/' separated) | long mtime | int n | n subdirectory names | int m | m file names
+ *       (m is -1 for directories that are not artifact directories)
+ * </pre>
+ *
+ * Strings are encoded as in {@link SettingsProxyCodec}. Instances are immutable and safe to share.
+ */
+public final class LocalRepositoryIndex {
+  public final static Logger log = LoggerFactory.getLogger(LocalRepositoryIndex.class);
+  public final static String SUFFIX = ".ibindex";
+  /** Bump whenever the layout above changes */
+  public final static int LAYOUT_VERSION = 2;
+
+  private final static int MAGIC = 0x49425249; // "IBRI"
+  private final static int HEADER = 4 * Integer.BYTES;
+  /**
+   * A directory changed within this many milliseconds of the walk may change again without a visible mtime change,
+   * so it is recorded as stale and listed again by the next refresh
+   */
+  private final static long RACY_MILLIS = 2000;
+  private final static long STALE = Long.MIN_VALUE;
+  /**
+   * Walks spend most of their time blocked in file-system calls, so they run on their own pool instead of starving
+   * other users of {@link ForkJoinPool#commonPool()}. Idle workers time out, so the pool costs nothing between walks.
+   */
+  private final static ForkJoinPool SCAN_POOL = new ForkJoinPool(
+      Math.max(2, Runtime.getRuntime().availableProcessors()), pool -> {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("local-repository-scan-" + t.getPoolIndex());
+        t.setDaemon(true);
+        return t;
+      }, null, false);
+
+  private final Path repository;
+  private final ByteBuffer body;
+  private final int count;
+  private final int artifacts;
+  private final int table;
+
+  /**
+   * @param repository local repository
+   * @return the index file for it, a sibling named after the repository directory
+   */
+  public final static Path indexFileFor(Path repository) {
+    Path abs = repository.toAbsolutePath();
+    return abs.resolveSibling(abs.getFileName() + SUFFIX);
+  }
+
+  /**
+   * @param settings settings naming the local repository
+   * @return up-to-date index of that repository
+   */
+  public final static LocalRepositoryIndex load(SettingsProxy settings) {
+    return load(settings.getLocalRepository());
+  }
+
+  /**
+   * Open the existing index and {@link #refresh()} it, or {@link #build(Path)} one if there is none.
+   *
+   * @param repository local repository
+   * @return up-to-date index
+   */
+  public final static LocalRepositoryIndex load(Path repository) {
+    return open(repository).map(LocalRepositoryIndex::refresh).orElseGet(() -> build(repository));
+  }
+
+  /**
+   * @param repository local repository
+   * @return the index as last written, possibly out of date, or empty if it is missing, damaged or for another path
+   */
+  public final static Optional<LocalRepositoryIndex> open(Path repository) {
+    Path p = indexFileFor(repository);
+    if (!Files.isRegularFile(p))
+      return Optional.empty();
+    try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+      return Optional.of(decode(repository, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size())));
+    } catch (IOException | RuntimeException e) {
+      log.debug("Ignoring local repository index " + p + ": " + e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Walk the whole repository and write a new index.
+   *
+   * @param repository local repository
+   * @return new index
+   */
+  public final static LocalRepositoryIndex build(Path repository) {
+    return scan(repository, Collections.emptyMap(), null);
+  }
+
+  /**
+   * @return an index reflecting the repository now, re-listing only directories whose mtime changed; this instance
+   *         if nothing did
+   */
+  public LocalRepositoryIndex refresh() {
+    return scan(repository, directories(), this);
+  }
+
+  private LocalRepositoryIndex(Path repository, ByteBuffer body, int count, int artifacts, int table) {
+    this.repository = repository;
+    this.body = body;
+    this.count = count;
+    this.artifacts = artifacts;
+    this.table = table;
+  }
+
+  public Path getRepository() {
+    return repository;
+  }
+
+  /**
+   * @return number of artifact directories, i.e. distinct {@code groupId:artifactId:version}
+   */
+  public int size() {
+    return artifacts;
+  }
+
+  /**
+   * @return true if the repository holds any file of this artifact version
+   */
+  public boolean contains(String groupId, String artifactId, String version) {
+    int r = find(groupId, artifactId, version);
+    return r >= 0 && fileCount(r) >= 0;
+  }
+
+  /**
+   * @param classifier classifier, or null for the main artifact
+   * @param extension  extension such as {@code jar} or {@code pom}
+   * @return true if the repository holds exactly that file
+   */
+  public boolean contains(String groupId, String artifactId, String version, String classifier, String extension) {
+    String name = artifactId + "-" + version + (classifier == null || classifier.isEmpty() ? "" : "-" + classifier)
+        + "." + extension;
+    return getFiles(groupId, artifactId, version).contains(name);
+  }
+
+  /**
+   * @return names of the files in the artifact directory, sorted; empty if the version is not present
+   */
+  public List<String> getFiles(String groupId, String artifactId, String version) {
+    int r = find(groupId, artifactId, version);
+    if (r < 0)
+      return Collections.emptyList();
+    Dir d = read(recordOffset(r));
+    return d.files == null ? Collections.emptyList() : Collections.unmodifiableList(d.files);
+  }
+
+  /**
+   * @return every indexed {@code groupId:artifactId:version}, sorted by path
+   */
+  public List<String> getCoordinates() {
+    List<String> l = new ArrayList<>(artifacts);
+    for (int i = 0; i < count; ++i) {
+      if (fileCount(i) < 0)
+        continue;
+      String path = string(recordOffset(i));
+      int v = path.lastIndexOf('/');
+      int a = path.lastIndexOf('/', v - 1);
+      l.add(path.substring(0, a).replace('/', '.') + ":" + path.substring(a + 1, v) + ":" + path.substring(v + 1));
+    }
+    return l;
+  }
+
+  private int find(String groupId, String artifactId, String version) {
+    byte[] key = (groupId.replace('.', '/') + "/" + artifactId + "/" + version).getBytes(UTF_8);
+    int lo = 0, hi = count - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = compare(recordOffset(mid), key);
+      if (c < 0)
+        lo = mid + 1;
+      else if (c > 0)
+        hi = mid - 1;
+      else
+        return mid;
+    }
+    return -1;
+  }
+
+  /** Unsigned comparison of the string at {@code offset} with {@code key}, without decoding it */
+  private int compare(int offset, byte[] key) {
+    int len = body.getInt(offset);
+    for (int i = 0, n = Math.min(len, key.length); i < n; ++i) {
+      int c = Integer.compare(body.get(offset + Integer.BYTES + i) & 0xff, key[i] & 0xff);
+      if (c != 0)
+        return c;
+    }
+    return Integer.compare(len, key.length);
+  }
+
+  private int recordOffset(int i) {
+    return body.getInt(table + Integer.BYTES * i);
+  }
+
+  private int fileCount(int i) {
+    int o = skipString(recordOffset(i)) + Long.BYTES;
+    int n = body.getInt(o);
+    o += Integer.BYTES;
+    for (int j = 0; j < n; ++j)
+      o = skipString(o);
+    return body.getInt(o);
+  }
+
+  private int skipString(int offset) {
+    return offset + Integer.BYTES + body.getInt(offset);
+  }
+
+  private String string(int offset) {
+    byte[] b = new byte[body.getInt(offset)];
+    for (int i = 0; i < b.length; ++i)
+      b[i] = body.get(offset + Integer.BYTES + i);
+    return new String(b, UTF_8);
+  }
+
+  private Dir read(int offset) {
+    String path = string(offset);
+    int o = skipString(offset);
+    long mtime = body.getLong(o);
+    o += Long.BYTES;
+    int n = body.getInt(o);
+    o += Integer.BYTES;
+    List<String> subdirs = new ArrayList<>(n);
+    for (int j = 0; j < n; ++j) {
+      subdirs.add(string(o));
+      o = skipString(o);
+    }
+    int m = body.getInt(o);
+    o += Integer.BYTES;
+    List<String> files = null;
+    if (m >= 0) {
+      files = new ArrayList<>(m);
+      for (int j = 0; j < m; ++j) {
+        files.add(string(o));
+        o = skipString(o);
+      }
+    }
+    return new Dir(path, mtime, subdirs, files);
+  }
+
+  private Map<String, Dir> directories() {
+    Map<String, Dir> m = new HashMap<>(count * 2);
+    for (int i = 0; i < count; ++i) {
+      Dir d = read(recordOffset(i));
+      m.put(d.path, d);
+    }
+    return m;
+  }
+
+  private final static LocalRepositoryIndex scan(Path repository, Map<String, Dir> previous,
+      LocalRepositoryIndex current) {
+    Path root = repository.toAbsolutePath();
+    long start = System.currentTimeMillis();
+    Map<String, Dir> found = new ConcurrentHashMap<>();
+    AtomicBoolean listed = new AtomicBoolean();
+    SCAN_POOL.invoke(new Scan(root, "", previous, found, listed, start - RACY_MILLIS));
+    if (current != null && !listed.get() && found.size() == previous.size())
+      return current;
+    List<Dir> dirs = new ArrayList<>(found.values());
+    dirs.sort((a, b) -> compareBytes(a.key, b.key));
+    byte[] file = toBytes(root, dirs);
+    log.debug("Indexed " + dirs.size() + " directories of " + root + " in " + (System.currentTimeMillis() - start)
+        + "ms");
+    write(indexFileFor(root), file);
+    return IBException.cet.withReturningTranslation(() -> decode(root, ByteBuffer.wrap(file)));
+  }
+
+  private final static int compareBytes(byte[] a, byte[] b) {
+    for (int i = 0, n = Math.min(a.length, b.length); i < n; ++i) {
+      int c = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+      if (c != 0)
+        return c;
+    }
+    return Integer.compare(a.length, b.length);
+  }
+
+  private final static byte[] toBytes(Path root, List<Dir> dirs) {
+    return IBException.cet.withReturningTranslation(() -> {
+      ByteArrayOutputStream records = new ByteArrayOutputStream(dirs.size() * 64);
+      DataOutputStream ro = new DataOutputStream(records);
+      int[] offsets = new int[dirs.size()];
+      int artifacts = 0;
+      byte[] repo = root.toString().getBytes(UTF_8);
+      // records start after the repository path, the two counts and the offset table
+      int base = Integer.BYTES + repo.length + 2 * Integer.BYTES + Integer.BYTES * offsets.length;
+      for (int i = 0; i < offsets.length; ++i) {
+        Dir d = dirs.get(i);
+        offsets[i] = base + ro.size();
+        ro.writeInt(d.key.length);
+        ro.write(d.key);
+        ro.writeLong(d.mtime);
+        ro.writeInt(d.subdirs.size());
+        for (String s : d.subdirs)
+          SettingsProxyCodec.writeString(ro, s);
+        if (d.files == null)
+          ro.writeInt(-1);
+        else {
+          ++artifacts;
+          ro.writeInt(d.files.size());
+          for (String s : d.files)
+            SettingsProxyCodec.writeString(ro, s);
+        }
+      }
+      ro.flush();
+      ByteArrayOutputStream body = new ByteArrayOutputStream(base + records.size());
+      DataOutputStream out = new DataOutputStream(body);
+      out.writeInt(repo.length);
+      out.write(repo);
+      out.writeInt(offsets.length);
+      out.writeInt(artifacts);
+      for (int o : offsets)
+        out.writeInt(o);
+      records.writeTo(out);
+      out.flush();
+      byte[] b = body.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(b, 0, b.length);
+      return ByteBuffer.allocate(HEADER + b.length).putInt(MAGIC).putInt(LAYOUT_VERSION).putInt((int) crc.getValue())
+          .putInt(b.length).put(b).array();
+    });
+  }
+
+  private final static void write(Path target, byte[] file) {
+    Path tmp = null;
+    try {
+      tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+      try (OutputStream os = Files.newOutputStream(tmp)) {
+        os.write(file);
+      }
+      Files.move(tmp, target, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Unable to write local repository index " + target + "; keeping it in memory only", e);
+      if (tmp != null) {
+        Path t = tmp;
+        IBException.cet.withTranslation(() -> Files.deleteIfExists(t));
+      }
+    }
+  }
+
+  private final static LocalRepositoryIndex decode(Path repository, ByteBuffer file) throws IOException {
+    if (file.capacity() < HEADER)
+      throw new IOException("Truncated header");
+    if (file.getInt(0) != MAGIC || file.getInt(4) != LAYOUT_VERSION)
+      throw new IOException("Foreign or outdated index");
+    int length = file.getInt(12);
+    if (length != file.capacity() - HEADER)
+      throw new IOException("Length mismatch");
+    ByteBuffer d = file.duplicate();
+    d.position(HEADER);
+    ByteBuffer body = d.slice();
+    CRC32 crc = new CRC32();
+    crc.update(body.duplicate());
+    if ((int) crc.getValue() != file.getInt(8))
+      throw new IOException("Checksum mismatch");
+    Path root = repository.toAbsolutePath();
+    LocalRepositoryIndex index = new LocalRepositoryIndex(root, body, 0, 0, 0);
+    if (!root.toString().equals(index.string(0)))
+      throw new IOException("Index is for a different repository");
+    int o = index.skipString(0);
+    int count = body.getInt(o);
+    int artifacts = body.getInt(o + Integer.BYTES);
+    int table = o + 2 * Integer.BYTES;
+    if (count < 0 || artifacts < 0 || artifacts > count || table + Integer.BYTES * (long) count > length)
+      throw new IOException("Bad directory table");
+    return new LocalRepositoryIndex(root, body, count, artifacts, table);
+  }
+
+  private final static class Dir {
+    private final String path;
+    private final byte[] key;
+    private final long mtime;
+    private final List<String> subdirs;
+    /** null unless this is an artifact directory */
+    private final List<String> files;
+
+    private Dir(String path, long mtime, List<String> subdirs, List<String> files) {
+      this.path = path;
+      this.key = path.getBytes(UTF_8);
+      this.mtime = mtime;
+      this.subdirs = subdirs;
+      this.files = files;
+    }
+  }
+
+  private final static class Scan extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final Path root;
+    private final String path;
+    private final Map<String, Dir> previous;
+    private final Map<String, Dir> found;
+    private final AtomicBoolean listed;
+    private final long racy;
+
+    private Scan(Path root, String path, Map<String, Dir> previous, Map<String, Dir> found, AtomicBoolean listed,
+        long racy) {
+      this.root = root;
+      this.path = path;
+      this.previous = previous;
+      this.found = found;
+      this.listed = listed;
+      this.racy = racy;
+    }
+
+    @Override
+    protected void compute() {
+      Path dir = path.isEmpty() ? root : root.resolve(path);
+      Dir d;
+      try {
+        long mtime = Files.getLastModifiedTime(dir).toMillis();
+        Dir prev = previous.get(path);
+        d = prev != null && prev.mtime == mtime ? prev : list(dir, mtime >= racy ? STALE : mtime);
+      } catch (NoSuchFileException e) {
+        return;
+      } catch (IOException e) {
+        log.debug("Skipping " + dir + ": " + e.getMessage());
+        return;
+      }
+      found.put(path, d);
+      List<Scan> children = new ArrayList<>(d.subdirs.size());
+      for (String s : d.subdirs)
+        children.add(new Scan(root, path.isEmpty() ? s : path + "/" + s, previous, found, listed, racy));
+      invokeAll(children);
+    }
+
+    private Dir list(Path dir, long mtime) throws IOException {
+      listed.set(true);
+      List<String> subdirs = new ArrayList<>();
+      List<String> files = new ArrayList<>();
+      try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+        for (Path p : ds) {
+          String name = p.getFileName().toString();
+          // a symlinked directory could loop back up the tree, so only regular files are followed
+          BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          if (a.isDirectory())
+            subdirs.add(name);
+          else if ((a.isRegularFile() || a.isSymbolicLink() && Files.isRegularFile(p)) && !isBookkeeping(name))
+            files.add(name);
+        }
+      }
+      Collections.sort(subdirs);
+      Collections.sort(files);
+      return new Dir(path, mtime, subdirs, isArtifactDirectory(files) ? files : null);
+    }
+
+    /** Files Maven keeps next to artifacts, including the markers of failed downloads */
+    private final static boolean isBookkeeping(String name) {
+      return name.endsWith(".lastUpdated") || name.equals("_remote.repositories")
+          || name.equals("resolver-status.properties");
+    }
+
+    private boolean isArtifactDirectory(List<String> files) {
+      int v = path.lastIndexOf('/');
+      int a = v < 0 ? -1 : path.lastIndexOf('/', v - 1);
+      if (a <= 0)
+        return false; // needs at least group/artifact/version
+      String version = path.substring(v + 1);
+      // timestamped snapshots are named artifact-1.0-20200101.120000-1.jar inside 1.0-SNAPSHOT
+      String prefix = path.substring(a + 1, v) + "-"
+          + (version.endsWith("-SNAPSHOT") ? version.substring(0, version.length() - "SNAPSHOT".length()) : version);
+      for (String f : files)
+        if (f.startsWith(prefix))
+          return true;
+      return false;
+    }
+  }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.infrastructurebuilder.util.ProfileProxy;
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory-mappable binary form of a {@link SettingsProxy}, written once by a parent process and opened by any number of
+ * forked JVMs without touching XML.
+ *
+ * The file is the checksummed header shared with {@link SettingsSnapshotCache} (magic "IBSM") followed by a body laid
+ * out as, all integers big-endian:
+ *
+ * <pre>
+ * key | offline, localRepository, modelEncoding, pluginGroups
+ * then for servers, profiles, mirrors and proxies in turn:
+ * int count | int[count + 1] offsets into the body | count entries in {@link SettingsProxyCodec} encoding
+ * </pre>
+ *
+ * Opening validates the header, length, checksum and key, then returns a proxy whose entity lists decode an element
+ * the first time it is read and keep it. Any mismatch makes {@link #open(Path, String)} return empty, so the caller
+ * can fall back to a normal build.
+ */
+public final class MappedSettingsSnapshot {
+  public final static Logger log = LoggerFactory.getLogger(MappedSettingsSnapshot.class);
+  public final static String SUFFIX = ".ibmap";
+  /** Bump whenever the body layout above changes */
+  public final static int LAYOUT_VERSION = 1;
+
+  private final static int MAGIC = 0x4942534d; // "IBSM"
+
+  private MappedSettingsSnapshot() {
+  }
+
+  @FunctionalInterface
+  private interface Writer<T> {
+    void write(DataOutput out, T t) throws IOException;
+  }
+
+  @FunctionalInterface
+  private interface Reader<T> {
+    T read(DataInput in) throws IOException;
+  }
+
+  /**
+   * @param key settings key, typically from {@link SettingsSnapshotCache#keyFor}
+   * @param s   settings
+   * @return the complete file content
+   */
+  public final static byte[] toBytes(String key, SettingsProxy s) {
+    return IBException.cet.withReturningTranslation(() -> {
+      ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+      DataOutputStream out = new DataOutputStream(body);
+      SettingsProxyCodec.writeString(out, key);
+      out.writeBoolean(s.isOffline());
+      SettingsProxyCodec.writeString(out, s.getLocalRepository().toString());
+      SettingsProxyCodec.writeString(out, s.getModelEncoding().name());
+      out.writeInt(s.getPluginGroups().size());
+      for (String g : s.getPluginGroups())
+        SettingsProxyCodec.writeString(out, g);
+      section(body, out, s.getServers(), SettingsProxyCodec::writeServer);
+      section(body, out, s.getProfiles(), SettingsProxyCodec::writeProfile);
+      section(body, out, s.getMirrors(), SettingsProxyCodec::writeMirror);
+      section(body, out, s.getProxies(), SettingsProxyCodec::writeProxy);
+      out.flush();
+      return SettingsCacheFiles.frame(MAGIC, LAYOUT_VERSION, body.toByteArray());
+    });
+  }
+
+  private final static <T> void section(ByteArrayOutputStream body, DataOutputStream out, List<T> items, Writer<T> w)
+      throws IOException {
+    ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    DataOutputStream eo = new DataOutputStream(entries);
+    int[] offsets = new int[items.size() + 1];
+    // entries start right after the count and the offset table
+    int base = body.size() + Integer.BYTES * (offsets.length + 1);
+    for (int i = 0; i < items.size(); ++i) {
+      offsets[i] = base + eo.size();
+      w.write(eo, items.get(i));
+    }
+    offsets[items.size()] = base + eo.size();
+    out.writeInt(items.size());
+    for (int o : offsets)
+      out.writeInt(o);
+    eo.flush();
+    entries.writeTo(out);
+  }
+
+  /**
+   * Write the snapshot file atomically with owner-only permissions where supported. Failures are logged and
+   * otherwise ignored.
+   *
+   * @param target file to write
+   * @param key    settings key
+   * @param s      settings
+   * @return true if the file was written
+   */
+  public final static boolean write(Path target, String key, SettingsProxy s) {
+    return SettingsCacheFiles.write(target, toBytes(key, s));
+  }
+
+  /**
+   * @param p   snapshot file
+   * @param key expected settings key
+   * @return settings backed by the mapped file, or empty if it is missing, damaged, stale or for another key
+   */
+  public final static Optional<SettingsProxy> open(Path p, String key) {
+    Objects.requireNonNull(key);
+    if (!Files.isRegularFile(p))
+      return Optional.empty();
+    try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+      MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+      return Optional.of(decode(m, key));
+    } catch (IOException | RuntimeException e) {
+      log.debug("Ignoring mapped settings snapshot " + p + ": " + e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * @param file complete file content, as from {@link #toBytes} or a mapping
+   * @param key  expected settings key
+   * @return lazily decoded settings
+   * @throws IOException if the content is not a valid snapshot for {@code key}
+   */
+  final static SettingsProxy decode(ByteBuffer file, String key) throws IOException {
+    ByteBuffer body = SettingsCacheFiles.unframe(file, MAGIC, LAYOUT_VERSION);
+    int length = body.capacity();
+    DataInputStream in = new DataInputStream(SettingsCacheFiles.input(body.duplicate()));
+    if (!key.equals(SettingsProxyCodec.readString(in)))
+      throw new IOException("Snapshot is for different settings");
+    boolean offline = in.readBoolean();
+    Path localRepository = Paths.get(SettingsProxyCodec.readString(in));
+    Charset encoding = Charset.forName(SettingsProxyCodec.readString(in));
+    int n = in.readInt();
+    String[] groups = new String[n];
+    for (int i = 0; i < n; ++i)
+      groups[i] = SettingsProxyCodec.readString(in);
+    int position = length - in.available();
+    LazyList<ServerProxy> servers = new LazyList<>(body, position, SettingsProxyCodec::readServer);
+    LazyList<ProfileProxy> profiles = new LazyList<>(body, servers.end(), SettingsProxyCodec::readProfile);
+    LazyList<MirrorProxy> mirrors = new LazyList<>(body, profiles.end(), SettingsProxyCodec::readMirror);
+    LazyList<ProxyProxy> proxies = new LazyList<>(body, mirrors.end(), SettingsProxyCodec::readProxy);
+    if (proxies.end() != length)
+      throw new IOException("Trailing data");
+    return new SettingsProxy(offline, localRepository, encoding, servers, profiles, mirrors,
+        Arrays.asList(groups), proxies);
+  }
+
+  private final static ByteBuffer slice(ByteBuffer b, int offset, int length) {
+    ByteBuffer d = b.duplicate();
+    d.position(offset);
+    d.limit(offset + length);
+    return d.slice();
+  }
+
+  /**
+   * Read-only list over one section; each element is decoded on first access and then kept.
+   */
+  private final static class LazyList<T> extends AbstractList<T> implements RandomAccess {
+    private final ByteBuffer body;
+    private final int table;
+    private final int size;
+    private final Reader<T> reader;
+    private final AtomicReferenceArray<T> decoded;
+
+    private LazyList(ByteBuffer body, int position, Reader<T> reader) throws IOException {
+      if (position < 0 || position + Integer.BYTES > body.capacity())
+        throw new IOException("Section out of bounds");
+      this.body = body;
+      this.size = body.getInt(position);
+      this.table = position + Integer.BYTES;
+      if (size < 0 || table + Integer.BYTES * (size + 1) > body.capacity())
+        throw new IOException("Offset table out of bounds");
+      this.reader = reader;
+      this.decoded = new AtomicReferenceArray<>(size);
+      for (int i = 0, prev = table + Integer.BYTES * (size + 1); i <= size; ++i) {
+        int o = body.getInt(table + Integer.BYTES * i);
+        if (o < prev || o > body.capacity())
+          throw new IOException("Bad offset in section");
+        prev = o;
+      }
+    }
+
+    private int end() {
+      return body.getInt(table + Integer.BYTES * size);
+    }
+
+    @Override
+    public T get(int index) {
+      T t = decoded.get(index);
+      if (t == null) {
+        int from = body.getInt(table + Integer.BYTES * index);
+        int to = body.getInt(table + Integer.BYTES * (index + 1));
+        t = IBException.cet.withReturningTranslation(
+            () -> reader.read(new DataInputStream(SettingsCacheFiles.input(slice(body, from, to - from)))));
+        if (!decoded.compareAndSet(index, null, t))
+          t = decoded.get(index);
+      }
+      return t;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.infrastructurebuilder.util.EnvSupplier;
+import org.infrastructurebuilder.util.PropertiesSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link SettingsSnapshotSupplier} for families of short-lived JVMs on one host.
+ *
+ * The first process to need a given set of settings builds them normally and leaves a {@link MappedSettingsSnapshot}
+ * in the cache directory; every later process with the same inputs maps that file and decodes entities only as they
+ * are read, so it does no XML work at all. A missing, damaged or stale file silently falls back to a normal build,
+ * which rewrites it. The directory is the {@value CachingSettingsSupplier#SETTINGS_CACHE_DIRECTORY} environment entry
+ * if present, otherwise {@link CachingSettingsSupplier#DEFAULT_CACHE_DIRECTORY}.
+ */
+@Named("mapped")
+public class MappedSettingsSupplier implements SettingsSnapshotSupplier {
+  public final static Logger log = LoggerFactory.getLogger(MappedSettingsSupplier.class);
+  public static final String CACHE_NAME = "settings-mapped";
+
+  private final SettingsSnapshot snapshot;
+  private final boolean mapped;
+
+  @Inject
+  public MappedSettingsSupplier(EnvSupplier envSupplier, @Named("default") PropertiesSupplier propSupplier,
+      SettingsBuilder settingsBuilder) {
+    this(envSupplier, propSupplier, settingsBuilder, SettingsCacheFiles.directory(envSupplier));
+  }
+
+  public MappedSettingsSupplier(EnvSupplier envSupplier, PropertiesSupplier propSupplier,
+      SettingsBuilder settingsBuilder, Path directory) {
+    Objects.requireNonNull(directory);
+    SettingsCacheFiles.Loaded l = SettingsCacheFiles.load(envSupplier, propSupplier, settingsBuilder, CACHE_NAME,
+        key -> MappedSettingsSnapshot.open(directory.resolve(key + MappedSettingsSnapshot.SUFFIX), key),
+        (key, s) -> MappedSettingsSnapshot.write(directory.resolve(key + MappedSettingsSnapshot.SUFFIX), key, s));
+    this.snapshot = l.snapshot;
+    this.mapped = l.hit;
+  }
+
+  /**
+   * @return true if this instance was served from a mapped snapshot file
+   */
+  public boolean isMapped() {
+    return mapped;
+  }
+
+  @Override
+  public SettingsSnapshot getSnapshot() {
+    return snapshot;
+  }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableMap;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.infrastructurebuilder.util.Layout;
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.infrastructurebuilder.util.RepositoryProxy;
+
+/**
+ * Answers "which mirror serves this repository" for the {@code <mirrors>} of a settings snapshot.
+ *
+ * Selection follows Maven's {@code DefaultMirrorSelector}: the first mirror whose {@code mirrorOf} is exactly the
+ * repository id and whose layouts accept the repository's wins, ahead of any pattern; otherwise the first mirror whose
+ * pattern matches does. Patterns are comma separated and may contain
+ * {@code *}, {@code external:*}, {@code external:http:*}, plain ids and {@code !id} exclusions. An exclusion or plain
+ * id decides at its first occurrence; wildcards only apply if no such token names the repository.
+ *
+ * Patterns are compiled once when the router is built. The answer for a repository only depends on its id, whether
+ * its URL is local, external or external-http, and its layout, so answers are memoized on exactly that and a repeated
+ * lookup does no allocation.
+ */
+public final class MirrorRouter {
+  public final static String WILDCARD = "*";
+  public final static String EXTERNAL_WILDCARD = "external:*";
+  public final static String EXTERNAL_HTTP_WILDCARD = "external:http:*";
+
+  private final static int LOCAL = 0, EXTERNAL = 1, EXTERNAL_HTTP = 2;
+  private final static int SLOTS = 3 * Layout.values().length;
+
+  private final List<MirrorProxy> mirrors;
+  private final Map<String, List<MirrorProxy>> exact;
+  private final List<Pattern> patterns;
+  private final Map<String, Optional<MirrorProxy>[]> memo = new ConcurrentHashMap<>();
+
+  public final static MirrorRouter of(List<MirrorProxy> mirrors) {
+    return new MirrorRouter(Objects.requireNonNull(mirrors));
+  }
+
+  private MirrorRouter(List<MirrorProxy> mirrors) {
+    this.mirrors = mirrors;
+    Map<String, List<MirrorProxy>> e = new HashMap<>();
+    List<Pattern> p = new ArrayList<>(mirrors.size());
+    for (MirrorProxy m : mirrors) {
+      List<String> tokens = new ArrayList<>();
+      for (String t : m.getMirrorOf()) {
+        t = t.trim();
+        if (!t.isEmpty())
+          tokens.add(t);
+      }
+      if (tokens.size() == 1 && isPlainId(tokens.get(0)))
+        e.computeIfAbsent(tokens.get(0), k -> new ArrayList<>(1)).add(m);
+      p.add(new Pattern(m, tokens));
+    }
+    this.exact = unmodifiableMap(e);
+    this.patterns = p;
+  }
+
+  private final static boolean isPlainId(String t) {
+    return !t.startsWith("!") && !WILDCARD.equals(t) && !EXTERNAL_WILDCARD.equals(t)
+        && !EXTERNAL_HTTP_WILDCARD.equals(t);
+  }
+
+  public List<MirrorProxy> getMirrors() {
+    return mirrors;
+  }
+
+  /**
+   * @param repository repository
+   * @return mirror to use instead of the repository, if any
+   */
+  public Optional<MirrorProxy> route(RepositoryProxy repository) {
+    return route(repository.getId(), repository.getUrl(), repository.getLayout());
+  }
+
+  /**
+   * @param repositoryId id of the repository
+   * @param url          its URL
+   * @return mirror to use instead of the repository, if any
+   */
+  public Optional<MirrorProxy> route(String repositoryId, URL url) {
+    return route(repositoryId, url, Layout.DEFAULT);
+  }
+
+  /**
+   * @param repositoryId id of the repository
+   * @param url          its URL
+   * @param layout       its layout; null means {@link Layout#DEFAULT}
+   * @return mirror to use instead of the repository, if any
+   */
+  public Optional<MirrorProxy> route(String repositoryId, URL url, Layout layout) {
+    return route(repositoryId, classify(Objects.requireNonNull(url)), layout);
+  }
+
+  /**
+   * @param location repository location
+   * @return mirror to use instead of the repository, if any
+   */
+  public Optional<MirrorProxy> route(RepositoryLocation location) {
+    return route(location.getId(), location.getUri(), location.getLayout());
+  }
+
+  /**
+   * @param repositoryId id of the repository
+   * @param uri          its URI
+   * @param layout       its layout; null means {@link Layout#DEFAULT}
+   * @return mirror to use instead of the repository, if any
+   */
+  public Optional<MirrorProxy> route(String repositoryId, URI uri, Layout layout) {
+    return route(repositoryId, classify(Objects.requireNonNull(uri)), layout);
+  }
+
+  private Optional<MirrorProxy> route(String repositoryId, int kind, Layout layout) {
+    Objects.requireNonNull(repositoryId);
+    Layout l = layout == null ? Layout.DEFAULT : layout;
+    int slot = kind * Layout.values().length + l.ordinal();
+    Optional<MirrorProxy>[] answers = memo.computeIfAbsent(repositoryId, k -> newSlots());
+    Optional<MirrorProxy> a = answers[slot];
+    if (a == null) // Optional is immutable, so a racing duplicate computation is harmless
+      answers[slot] = a = select(repositoryId, kind, l);
+    return a;
+  }
+
+  @SuppressWarnings("unchecked")
+  private final static Optional<MirrorProxy>[] newSlots() {
+    return new Optional[SLOTS];
+  }
+
+  private Optional<MirrorProxy> select(String id, int kind, Layout layout) {
+    for (MirrorProxy m : exact.getOrDefault(id, emptyList()))
+      if (matchesLayout(m, layout))
+        return Optional.of(m);
+    for (Pattern p : patterns)
+      if (p.matches(id, kind) && matchesLayout(p.mirror, layout))
+        return Optional.of(p.mirror);
+    return Optional.empty();
+  }
+
+  private final static boolean matchesLayout(MirrorProxy m, Layout layout) {
+    List<Layout> layouts = m.getMirrorOfLayouts();
+    return layouts == null || layouts.isEmpty() || layouts.contains(layout);
+  }
+
+  /**
+   * Maven's external classification: anything not on {@code localhost}, {@code 127.0.0.1} or a {@code file} URL is
+   * external, and external {@code http} or {@code dav} variants are additionally external-http.
+   */
+  final static int classify(URL url) {
+    return classify(url.getProtocol(), url.getHost());
+  }
+
+  final static int classify(URI uri) {
+    return classify(uri.getScheme(), uri.getHost());
+  }
+
+  private final static int classify(String protocol, String host) {
+    if ("file".equalsIgnoreCase(protocol) || "localhost".equals(host) || "127.0.0.1".equals(host))
+      return LOCAL;
+    if ("http".equalsIgnoreCase(protocol) || "dav".equalsIgnoreCase(protocol)
+        || "dav:http".equalsIgnoreCase(protocol) || "dav+http".equalsIgnoreCase(protocol))
+      return EXTERNAL_HTTP;
+    return EXTERNAL;
+  }
+
+  private final static class Pattern {
+    private final MirrorProxy mirror;
+    private final Map<String, Boolean> named = new HashMap<>();
+    private final boolean any;
+    private final boolean external;
+    private final boolean externalHttp;
+
+    private Pattern(MirrorProxy mirror, List<String> tokens) {
+      this.mirror = mirror;
+      boolean a = false, e = false, h = false;
+      for (String t : tokens) {
+        if (WILDCARD.equals(t))
+          a = true;
+        else if (EXTERNAL_WILDCARD.equals(t))
+          e = true;
+        else if (EXTERNAL_HTTP_WILDCARD.equals(t))
+          h = true;
+        else if (t.length() > 1 && t.startsWith("!"))
+          named.putIfAbsent(t.substring(1), Boolean.FALSE);
+        else
+          named.putIfAbsent(t, Boolean.TRUE);
+      }
+      this.any = a;
+      this.external = e;
+      this.externalHttp = h;
+    }
+
+    private boolean matches(String id, int kind) {
+      Boolean b = named.get(id);
+      if (b != null)
+        return b;
+      return any || (external && kind != LOCAL) || (externalHttp && kind == EXTERNAL_HTTP);
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringTokenizer;
+
+import org.sonatype.plexus.components.cipher.PlexusCipher;
+import org.sonatype.plexus.components.cipher.PlexusCipherException;
+import org.sonatype.plexus.components.sec.dispatcher.DefaultSecDispatcher;
+import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+import org.sonatype.plexus.components.sec.dispatcher.SecUtil;
+import org.sonatype.plexus.components.sec.dispatcher.model.SettingsSecurity;
+
+/**
+ * Base of this package's {@link SecDispatcher}s.
+ *
+ * {@link DefaultSecDispatcher} keeps its cipher, decryptors and configuration file in plain mutable fields, which
+ * another thread may see unset if the dispatcher was not published safely. This class holds them in its own final
+ * and volatile fields and decrypts using only those, so an instance can be shared between any number of threads
+ * without locking. The decryptor map is copied, so later changes to the caller's map have no effect. The inherited
+ * fields are still filled in for code that reads them.
+ */
+abstract class MyAbstractSecDispatcher extends DefaultSecDispatcher implements SecDispatcher {
+  protected final PlexusCipher cipher;
+  protected final Map<String, PasswordDecryptor> decryptors;
+  private volatile String configurationFile;
+
+  @FunctionalInterface
+  protected interface MasterPassword {
+    String get() throws SecDispatcherException;
+  }
+
+  protected MyAbstractSecDispatcher(PlexusCipher cipher, Map<String, PasswordDecryptor> decryptors) {
+    super();
+    this.cipher = Objects.requireNonNull(cipher);
+    this.decryptors = decryptors == null ? Collections.emptyMap()
+        : Collections.unmodifiableMap(new HashMap<>(decryptors));
+    this.configurationFile = _configurationFile;
+    _cipher = this.cipher;
+    _decryptors = this.decryptors;
+  }
+
+  @Override
+  public String getConfigurationFile() {
+    return configurationFile;
+  }
+
+  @Override
+  public void setConfigurationFile(String file) {
+    configurationFile = Objects.requireNonNull(file);
+    _configurationFile = file;
+  }
+
+  @Override
+  public String decrypt(String str) throws SecDispatcherException {
+    return decrypt(str, () -> masterPassword(readSecurity(securityFile())));
+  }
+
+  /**
+   * {@link DefaultSecDispatcher#decrypt(String)} reading only this class's fields.
+   *
+   * @param str    possibly encrypted value
+   * @param master source of the master password, asked only for values without a {@code type} attribute
+   * @return plain value
+   */
+  protected final String decrypt(String str, MasterPassword master) throws SecDispatcherException {
+    if (!cipher.isEncryptedString(str))
+      return str;
+    try {
+      String bare = cipher.unDecorate(str);
+      Map<String, String> attributes = attributes(bare);
+      String type = attributes == null ? null : attributes.get(TYPE_ATTR);
+      if (type == null)
+        return cipher.decrypt(bare, master.get());
+      PasswordDecryptor d = decryptors.get(type);
+      if (d == null)
+        throw new SecDispatcherException("no dispatcher for hint " + type);
+      return d.decrypt(strip(bare), attributes, SecUtil.getConfig(readSecurity(securityFile()), type));
+    } catch (PlexusCipherException e) {
+      throw new SecDispatcherException(e);
+    }
+  }
+
+  /**
+   * @return {@code settings-security.xml} location; the {@value #SYSTEM_PROPERTY_SEC_LOCATION} system property wins
+   */
+  protected final Path securityFile() {
+    String location = System.getProperty(SYSTEM_PROPERTY_SEC_LOCATION, configurationFile);
+    return Paths.get(location.charAt(0) == '~' ? System.getProperty("user.home") + location.substring(1) : location);
+  }
+
+  protected final static SettingsSecurity readSecurity(Path location) throws SecDispatcherException {
+    SettingsSecurity sec = SecUtil.read(location.toString(), true);
+    if (sec == null)
+      throw new SecDispatcherException(
+          "cannot retrieve master password. Please check that " + location + " exists and has data");
+    return sec;
+  }
+
+  protected final String masterPassword(SettingsSecurity sec) throws SecDispatcherException {
+    if (sec.getMaster() == null)
+      throw new SecDispatcherException("master password is not set");
+    try {
+      return cipher.decryptDecorated(sec.getMaster(), SYSTEM_PROPERTY_SEC_LOCATION);
+    } catch (PlexusCipherException e) {
+      throw new SecDispatcherException(e);
+    }
+  }
+
+  /** {@code [type=x, key=value]} prefix of an undecorated value, or null */
+  private final static Map<String, String> attributes(String bare) {
+    int start = bare.indexOf(ATTR_START);
+    int stop = bare.indexOf(ATTR_STOP);
+    if (start == -1 || stop <= start + 1)
+      return null;
+    String attrs = bare.substring(start + 1, stop).trim();
+    if (attrs.isEmpty())
+      return null;
+    Map<String, String> m = new HashMap<>();
+    StringTokenizer st = new StringTokenizer(attrs, ", ");
+    while (st.hasMoreTokens()) {
+      String pair = st.nextToken();
+      int pos = pair.indexOf('=');
+      if (pos != -1)
+        m.put(pair.substring(0, pos).trim(), pair.substring(pos + 1).trim());
+    }
+    return m;
+  }
+
+  private final static String strip(String bare) {
+    int pos = bare.indexOf(ATTR_STOP);
+    return pos == -1 ? bare : bare.substring(pos + 1);
+  }
+}
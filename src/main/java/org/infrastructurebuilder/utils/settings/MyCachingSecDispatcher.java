@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.sonatype.plexus.components.cipher.PlexusCipher;
+import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+/**
+ * {@link SecDispatcher} that reads {@code settings-security.xml} and decrypts the master password once, then
+ * memoizes decrypted values per ciphertext.
+ *
+ * The security file is checked with a single stat per call. When its modification time or size changes, or the
+ * entry expires, the master password is loaded again and all memoized values from the old master are dropped. The
+ * memo is a bounded LRU. Values that name a typed {@link PasswordDecryptor} ({@code {[type=...]...}}) are memoized the same way.
+ *
+ * Thread safe: the master password is published through an {@link AtomicReference} and the memo is guarded by its
+ * own monitor, which is held only for map operations and never while decrypting or loading the master. See also
+ * {@link MyAbstractSecDispatcher}.
+ */
+@Named("caching")
+public final class MyCachingSecDispatcher extends MyAbstractSecDispatcher implements SecDispatcher {
+  public final static int DEFAULT_MAX_ENTRIES = 1024;
+  public final static Duration DEFAULT_TTL = Duration.ofMinutes(10);
+  public final static String CACHE_NAME = "sec-dispatcher";
+
+  private final long ttlNanos;
+  private final Map<String, Decrypted> memo;
+  private final AtomicReference<Master> master = new AtomicReference<>();
+
+  @Inject
+  public MyCachingSecDispatcher(@Named("my") PlexusCipher myCipher, Map<String, PasswordDecryptor> myDecrypters) {
+    this(myCipher, myDecrypters, DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+  }
+
+  public MyCachingSecDispatcher(PlexusCipher myCipher, Map<String, PasswordDecryptor> myDecrypters, int maxEntries,
+      Duration ttl) {
+    super(myCipher, myDecrypters);
+    if (maxEntries < 1)
+      throw new IllegalArgumentException("maxEntries must be positive");
+    this.ttlNanos = Objects.requireNonNull(ttl).toNanos();
+    this.memo = new LinkedHashMap<String, Decrypted>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Decrypted> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  @Override
+  public String decrypt(String str) throws SecDispatcherException {
+    if (!cipher.isEncryptedString(str))
+      return str;
+    long now = System.nanoTime();
+    Master m = currentMaster(now);
+    synchronized (memo) {
+      Decrypted d = memo.get(str);
+      if (d != null && d.master == m && now - d.created < ttlNanos) {
+        SettingsMetrics.cacheHit(CACHE_NAME);
+        return d.value;
+      }
+    }
+    SettingsMetrics.cacheMiss(CACHE_NAME);
+    String value = decrypt(str, m::getPassword);
+    synchronized (memo) {
+      memo.put(str, new Decrypted(m, now, value));
+    }
+    return value;
+  }
+
+  /**
+   * Drop the memoized master password and every decrypted value.
+   */
+  public void invalidate() {
+    master.set(null);
+    synchronized (memo) {
+      memo.clear();
+    }
+  }
+
+  /**
+   * The master is loaded outside any lock and installed with a compare-and-swap, so a reload never blocks decryption
+   * of other values. Racing loaders may each read the file once; one of them wins.
+   */
+  private Master currentMaster(long now) throws SecDispatcherException {
+    Path location = securityFile();
+    long[] stamp = stamp(location);
+    for (;;) {
+      Master m = master.get();
+      if (m != null && m.matches(location, stamp) && now - m.loaded < ttlNanos)
+        return m;
+      Master next = new Master(location, stamp, now, this);
+      if (master.compareAndSet(m, next)) {
+        // entries of the old master can no longer match; drop them to free the space
+        synchronized (memo) {
+          memo.clear();
+        }
+        return next;
+      }
+    }
+  }
+
+  private final static long[] stamp(Path p) {
+    try {
+      return new long[] { Files.getLastModifiedTime(p).toMillis(), Files.size(p) };
+    } catch (IOException e) {
+      return new long[] { -1L, -1L };
+    }
+  }
+
+  private final static class Master {
+    private final Path location;
+    private final long[] stamp;
+    private final long loaded;
+    private final String password;
+    private final SecDispatcherException failure;
+
+    private Master(Path location, long[] stamp, long loaded, MyCachingSecDispatcher d) {
+      this.location = location;
+      this.stamp = stamp;
+      this.loaded = loaded;
+      String pw = null;
+      SecDispatcherException fail = null;
+      try {
+        pw = d.masterPassword(readSecurity(location));
+      } catch (SecDispatcherException e) {
+        fail = e;
+      }
+      this.password = pw;
+      this.failure = fail;
+    }
+
+    private boolean matches(Path p, long[] s) {
+      return location.equals(p) && stamp[0] == s[0] && stamp[1] == s[1];
+    }
+
+    private String getPassword() throws SecDispatcherException {
+      if (failure != null)
+        throw failure;
+      return password;
+    }
+  }
+
+  private final static class Decrypted {
+    private final Master master;
+    private final long created;
+    private final String value;
+
+    private Decrypted(Master master, long created, String value) {
+      this.master = master;
+      this.created = created;
+      this.value = value;
+    }
+  }
+}
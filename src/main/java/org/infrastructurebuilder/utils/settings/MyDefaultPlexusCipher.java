@@ -15,6 +15,9 @@
  */
 package org.infrastructurebuilder.utils.settings;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -22,12 +25,45 @@ import org.sonatype.plexus.components.cipher.DefaultPlexusCipher;
 import org.sonatype.plexus.components.cipher.PlexusCipher;
 import org.sonatype.plexus.components.cipher.PlexusCipherException;
 
+/**
+ * {@link PlexusCipher} that is safe to share between threads without a lock.
+ *
+ * Older plexus-cipher releases keep one {@code MessageDigest} inside each {@code PBECipher}, so concurrent calls on
+ * one {@link DefaultPlexusCipher} can derive the wrong key. Encryption and decryption here borrow a delegate from a
+ * lock-free pool and return it afterwards, so no two threads use the same one. The pool grows to the highest number
+ * of concurrent callers seen. The decorated variants go through {@link #encrypt} and {@link #decrypt}.
+ */
 @Named("my")
 public final class MyDefaultPlexusCipher extends DefaultPlexusCipher implements PlexusCipher {
+  private final Queue<DefaultPlexusCipher> pool = new ConcurrentLinkedQueue<>();
 
   @Inject
   public MyDefaultPlexusCipher() throws PlexusCipherException {
     super();
   }
 
+  @Override
+  public String encrypt(String str, String passPhrase) throws PlexusCipherException {
+    DefaultPlexusCipher c = borrow();
+    try {
+      return c.encrypt(str, passPhrase);
+    } finally {
+      pool.offer(c);
+    }
+  }
+
+  @Override
+  public String decrypt(String str, String passPhrase) throws PlexusCipherException {
+    DefaultPlexusCipher c = borrow();
+    try {
+      return c.decrypt(str, passPhrase);
+    } finally {
+      pool.offer(c);
+    }
+  }
+
+  private DefaultPlexusCipher borrow() throws PlexusCipherException {
+    DefaultPlexusCipher c = pool.poll();
+    return c != null ? c : new DefaultPlexusCipher();
+  }
 }
@@ -16,23 +16,24 @@
 package org.infrastructurebuilder.utils.settings;
 
 import java.util.Map;
-import java.util.Objects;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.sonatype.plexus.components.cipher.PlexusCipher;
-import org.sonatype.plexus.components.sec.dispatcher.DefaultSecDispatcher;
 import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
 import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
 
+/**
+ * {@link SecDispatcher} that reads {@code settings-security.xml} on every call, as Maven's does.
+ *
+ * Thread safe: see {@link MyAbstractSecDispatcher}.
+ */
 @Named("maven")
-public final class MyDefaultSecDispatcher extends DefaultSecDispatcher implements SecDispatcher {
+public final class MyDefaultSecDispatcher extends MyAbstractSecDispatcher implements SecDispatcher {
   @Inject
   public MyDefaultSecDispatcher(@Named("my") PlexusCipher myCipher, Map<String, PasswordDecryptor> myDecrypters) {
-    super();
-    _cipher = Objects.requireNonNull(myCipher);
-    _decryptors = myDecrypters;
+    super(myCipher, myDecrypters);
   }
 
 }
@@ -15,22 +15,117 @@
  */
 package org.infrastructurebuilder.utils.settings;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Map;
+import java.util.Objects;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.apache.maven.settings.Settings;
 import org.apache.maven.settings.building.DefaultSettingsBuilder;
 import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.building.SettingsBuildingException;
+import org.apache.maven.settings.building.SettingsBuildingRequest;
+import org.apache.maven.settings.building.SettingsBuildingResult;
+import org.apache.maven.settings.building.SettingsProblemCollector;
 import org.apache.maven.settings.io.SettingsReader;
 import org.apache.maven.settings.io.SettingsWriter;
 import org.apache.maven.settings.validation.SettingsValidator;
+import org.infrastructurebuilder.utils.settings.SettingsMetrics.Phase;
 
+/**
+ * {@link DefaultSettingsBuilder} that reports {@link Phase#READ}, {@link Phase#VALIDATE} and {@link Phase#INTERPOLATE}
+ * timings to {@link SettingsMetrics} while anything is listening. The interpolation time is whatever the build spent
+ * outside reading and validating the two files, which includes the merge.
+ */
 @Named("my")
 final class MyDefaultSettingsBuilder extends DefaultSettingsBuilder implements SettingsBuilder {
+  private final static ThreadLocal<long[]> timings = ThreadLocal.withInitial(() -> new long[2]);
 
   @Inject
   public MyDefaultSettingsBuilder(SettingsReader settingsReader, SettingsWriter settingsWriter,
       SettingsValidator settingsValidator) {
-    super(settingsReader, settingsWriter, settingsValidator);
+    super(new TimedReader(settingsReader), settingsWriter, new TimedValidator(settingsValidator));
+  }
+
+  @Override
+  public SettingsBuildingResult build(SettingsBuildingRequest request) throws SettingsBuildingException {
+    long start = SettingsMetrics.start();
+    if (start == 0L)
+      return super.build(request);
+    long[] t = timings.get();
+    t[0] = t[1] = 0L;
+    try {
+      return super.build(request);
+    } finally {
+      long total = System.nanoTime() - start;
+      SettingsMetrics.elapsed(Phase.READ, t[0]);
+      SettingsMetrics.elapsed(Phase.VALIDATE, t[1]);
+      SettingsMetrics.elapsed(Phase.INTERPOLATE, Math.max(0L, total - t[0] - t[1]));
+    }
+  }
+
+  private final static void add(int slot, long start) {
+    if (start != 0L)
+      timings.get()[slot] += System.nanoTime() - start;
+  }
+
+  /**
+   * Times the stream and file reads of the settings sources. The {@link Reader} variant is what interpolation uses to
+   * read its result back, so it is left to the interpolation phase.
+   */
+  private final static class TimedReader implements SettingsReader {
+    private final SettingsReader delegate;
+
+    private TimedReader(SettingsReader delegate) {
+      this.delegate = Objects.requireNonNull(delegate);
+    }
+
+    @Override
+    public Settings read(File input, Map<String, ?> options) throws IOException {
+      long start = SettingsMetrics.start();
+      try {
+        return delegate.read(input, options);
+      } finally {
+        add(0, start);
+      }
+    }
+
+    @Override
+    public Settings read(Reader input, Map<String, ?> options) throws IOException {
+      return delegate.read(input, options);
+    }
+
+    @Override
+    public Settings read(InputStream input, Map<String, ?> options) throws IOException {
+      long start = SettingsMetrics.start();
+      try {
+        return delegate.read(input, options);
+      } finally {
+        add(0, start);
+      }
+    }
   }
 
+  private final static class TimedValidator implements SettingsValidator {
+    private final SettingsValidator delegate;
+
+    private TimedValidator(SettingsValidator delegate) {
+      this.delegate = Objects.requireNonNull(delegate);
+    }
+
+    @Override
+    public void validate(Settings settings, SettingsProblemCollector problems) {
+      long start = SettingsMetrics.start();
+      try {
+        delegate.validate(settings, problems);
+      } finally {
+        add(1, start);
+      }
+    }
+  }
 }
@@ -20,8 +20,17 @@ import javax.inject.Named;
 
 import org.apache.maven.settings.crypto.DefaultSettingsDecrypter;
 import org.apache.maven.settings.crypto.SettingsDecrypter;
+import org.apache.maven.settings.crypto.SettingsDecryptionRequest;
+import org.apache.maven.settings.crypto.SettingsDecryptionResult;
+import org.infrastructurebuilder.utils.settings.SettingsMetrics.Phase;
 import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
 
+/**
+ * {@link DefaultSettingsDecrypter} that reports decryption time and problems to {@link SettingsMetrics}.
+ *
+ * Stateless apart from its final {@link SecDispatcher}, so it is thread safe whenever that dispatcher is, as both
+ * dispatchers in this package are.
+ */
 @Named("my")
 final class MyDefaultSettingsDecrypter extends DefaultSettingsDecrypter implements SettingsDecrypter {
 
@@ -30,4 +39,13 @@ final class MyDefaultSettingsDecrypter extends DefaultSettingsDecrypter implemen
     super(securityDispatcher);
   }
 
+  @Override
+  public SettingsDecryptionResult decrypt(SettingsDecryptionRequest request) {
+    long start = SettingsMetrics.start();
+    SettingsDecryptionResult r = super.decrypt(request);
+    SettingsMetrics.phase(Phase.DECRYPTION, start);
+    SettingsMetrics.problems(r.getProblems().size());
+    return r;
+  }
+
 }
@@ -0,0 +1,185 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Compiled form of a Maven {@code nonProxyHosts} list.
+ *
+ * Patterns are matched case-insensitively and may use {@code *} as a wildcard. They are sorted at compile time into
+ * the cheapest structure that can answer them:
+ * <ul>
+ * <li>exact hosts and leading-wildcard patterns ({@code *.example.com}) go into a trie of reversed characters</li>
+ * <li>trailing-wildcard patterns ({@code 192.168.*}) go into a trie of forward characters</li>
+ * <li>anything else is kept as a split glob</li>
+ * </ul>
+ * {@link #matches(String)} walks the host's characters in place and does not allocate.
+ */
+public final class NonProxyHostsMatcher {
+  private final static NonProxyHostsMatcher NONE = new NonProxyHostsMatcher(false, new Node(), new Node(),
+      new String[0][]);
+
+  private final boolean matchAll;
+  private final Node suffixes;
+  private final Node prefixes;
+  private final String[][] globs;
+
+  /**
+   * @param patterns {@code nonProxyHosts} entries, already split on {@code |}
+   * @return compiled matcher
+   */
+  public final static NonProxyHostsMatcher compile(List<String> patterns) {
+    if (Objects.requireNonNull(patterns).isEmpty())
+      return NONE;
+    boolean all = false;
+    Node suffixes = new Node();
+    Node prefixes = new Node();
+    List<String[]> globs = new ArrayList<>();
+    for (String raw : patterns) {
+      String p = raw.trim().toLowerCase(Locale.ROOT);
+      if (p.isEmpty())
+        continue;
+      int first = p.indexOf('*');
+      int last = p.lastIndexOf('*');
+      if (p.chars().allMatch(c -> c == '*'))
+        all = true;
+      else if (first < 0)
+        suffixes.insertReversed(p, 0, p.length()).exact = true;
+      else if (first == 0 && last == 0)
+        suffixes.insertReversed(p, 1, p.length()).wildcard = true;
+      else if (first == p.length() - 1)
+        prefixes.insert(p, 0, first).wildcard = true;
+      else
+        globs.add(p.split("\\*", -1));
+    }
+    return new NonProxyHostsMatcher(all, suffixes, prefixes, globs.toArray(new String[globs.size()][]));
+  }
+
+  private NonProxyHostsMatcher(boolean matchAll, Node suffixes, Node prefixes, String[][] globs) {
+    this.matchAll = matchAll;
+    this.suffixes = suffixes;
+    this.prefixes = prefixes;
+    this.globs = globs;
+  }
+
+  /**
+   * @param host host name or address, as returned by {@link java.net.URI#getHost()}
+   * @return true if the host should bypass the proxy
+   */
+  public boolean matches(String host) {
+    if (host == null)
+      return false;
+    if (matchAll)
+      return true;
+    // Reversed walk: exact hosts and *.suffix patterns
+    Node n = suffixes;
+    for (int i = host.length() - 1; n != null; --i) {
+      if (n.wildcard)
+        return true;
+      if (i < 0) {
+        if (n.exact)
+          return true;
+        break;
+      }
+      n = n.child(Character.toLowerCase(host.charAt(i)));
+    }
+    // Forward walk: prefix.* patterns
+    n = prefixes;
+    for (int i = 0; n != null && i <= host.length(); ++i) {
+      if (n.wildcard)
+        return true;
+      if (i < host.length())
+        n = n.child(Character.toLowerCase(host.charAt(i)));
+    }
+    for (String[] g : globs)
+      if (glob(g, host))
+        return true;
+    return false;
+  }
+
+  private final static boolean glob(String[] parts, String host) {
+    String head = parts[0];
+    String tail = parts[parts.length - 1];
+    if (head.length() + tail.length() > host.length() || !host.regionMatches(true, 0, head, 0, head.length())
+        || !host.regionMatches(true, host.length() - tail.length(), tail, 0, tail.length()))
+      return false;
+    int pos = head.length();
+    int end = host.length() - tail.length();
+    for (int i = 1; i < parts.length - 1; ++i) {
+      String part = parts[i];
+      int found = -1;
+      for (int j = pos; j + part.length() <= end; ++j)
+        if (host.regionMatches(true, j, part, 0, part.length())) {
+          found = j;
+          break;
+        }
+      if (found < 0)
+        return false;
+      pos = found + part.length();
+    }
+    return true;
+  }
+
+  private final static class Node {
+    private char[] keys = new char[0];
+    private Node[] children = new Node[0];
+    private boolean exact;
+    private boolean wildcard;
+
+    private Node insertReversed(String s, int from, int to) {
+      Node n = this;
+      for (int i = to - 1; i >= from; --i)
+        n = n.getOrAdd(s.charAt(i));
+      return n;
+    }
+
+    private Node insert(String s, int from, int to) {
+      Node n = this;
+      for (int i = from; i < to; ++i)
+        n = n.getOrAdd(s.charAt(i));
+      return n;
+    }
+
+    private Node getOrAdd(char c) {
+      int i = Arrays.binarySearch(keys, c);
+      if (i >= 0)
+        return children[i];
+      // Keep keys sorted on insert so lookups can binary search
+      int at = -(i + 1);
+      char[] k = new char[keys.length + 1];
+      Node[] ch = new Node[keys.length + 1];
+      System.arraycopy(keys, 0, k, 0, at);
+      System.arraycopy(children, 0, ch, 0, at);
+      System.arraycopy(keys, at, k, at + 1, keys.length - at);
+      System.arraycopy(children, at, ch, at + 1, keys.length - at);
+      k[at] = c;
+      Node n = ch[at] = new Node();
+      keys = k;
+      children = ch;
+      return n;
+    }
+
+    private Node child(char c) {
+      int i = Arrays.binarySearch(keys, c);
+      return i < 0 ? null : children[i];
+    }
+  }
+}
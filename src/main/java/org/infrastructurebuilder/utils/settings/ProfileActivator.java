@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import org.infrastructurebuilder.util.ActivationFileProxy;
+import org.infrastructurebuilder.util.ActivationOSProxy;
+import org.infrastructurebuilder.util.ActivationPropertyProxy;
+import org.infrastructurebuilder.util.ActivationProxy;
+import org.infrastructurebuilder.util.ProfileProxy;
+
+/**
+ * Maven's settings profile activation rules, evaluated against an {@link ActivationEnvironment}.
+ *
+ * A profile is active if it is listed in {@code <activeProfiles>}, or if it has an {@code <activation>} and every
+ * condition present in it holds. When nothing is active that way, the {@code activeByDefault} profiles are.
+ */
+public final class ProfileActivator {
+  private ProfileActivator() {
+  }
+
+  /**
+   * @param profiles profiles in declaration order
+   * @param env      environment to evaluate against
+   * @return active profiles and their merged contributions
+   */
+  public final static EffectiveProfiles evaluate(List<ProfileProxy> profiles, ActivationEnvironment env) {
+    Objects.requireNonNull(env);
+    List<ProfileProxy> active = new ArrayList<>();
+    List<ProfileProxy> byDefault = new ArrayList<>();
+    for (ProfileProxy p : profiles) {
+      if (p.isActive() || isActive(p.getActivation(), env))
+        active.add(p);
+      else if (p.getActivation().map(ActivationProxy::isActiveByDefault).orElse(false))
+        byDefault.add(p);
+    }
+    return new EffectiveProfiles(active.isEmpty() ? byDefault : active);
+  }
+
+  final static boolean isActive(Optional<ActivationProxy> activation, ActivationEnvironment env) {
+    if (!activation.isPresent())
+      return false;
+    ActivationProxy a = activation.get();
+    boolean any = false;
+    if (a.getJdk().isPresent()) {
+      if (!env.isJdk(a.getJdk().get()))
+        return false;
+      any = true;
+    }
+    if (a.getOs().isPresent()) {
+      if (!isActive(a.getOs().get(), env))
+        return false;
+      any = true;
+    }
+    if (a.getProperty().isPresent()) {
+      if (!isActive(a.getProperty().get(), env))
+        return false;
+      any = true;
+    }
+    if (a.getFile().isPresent()) {
+      ActivationFileProxy f = a.getFile().get();
+      if (f.getExists().isPresent() || f.getMissing().isPresent()) {
+        if (!(f.getExists().isPresent() ? env.exists(f.getExists().get()) : !env.exists(f.getMissing().get())))
+          return false;
+        any = true;
+      }
+    }
+    return any;
+  }
+
+  private final static boolean isActive(ActivationOSProxy os, ActivationEnvironment env) {
+    return matches(os.getName(), env::isOsName) && matches(os.getFamily(), env::isOsFamily)
+        && matches(os.getArch(), env::isOsArch) && matches(os.getVersion(), env::isOsVersion);
+  }
+
+  private final static boolean matches(Optional<String> expected, Predicate<String> test) {
+    if (!expected.isPresent())
+      return true;
+    String e = expected.get();
+    return e.startsWith("!") ? !test.test(e.substring(1)) : test.test(e);
+  }
+
+  private final static boolean isActive(ActivationPropertyProxy p, ActivationEnvironment env) {
+    String name = p.getName();
+    if (name == null || name.isEmpty())
+      return false;
+    boolean reverseName = name.startsWith("!");
+    if (reverseName)
+      name = name.substring(1);
+    String actual = env.getProperties().get(name);
+    Optional<String> value = p.getValue().filter(v -> !v.isEmpty());
+    if (value.isPresent()) {
+      String v = value.get();
+      boolean reverseValue = v.startsWith("!");
+      if (reverseValue)
+        v = v.substring(1);
+      boolean result = v.equals(actual);
+      return reverseValue ? !result : result;
+    }
+    boolean result = actual != null && !actual.isEmpty();
+    return reverseName ? !result : result;
+  }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.EnvSupplier;
+import org.infrastructurebuilder.util.PropertiesSupplier;
+import org.infrastructurebuilder.util.SettingsProxy;
+
+/**
+ * {@link DefaultSettingsSupplier} that watches the user and global settings files and rebuilds the snapshot in the
+ * background when either of them changes.
+ *
+ * Bursts of file-system events are collapsed into one rebuild after the debounce interval. The new
+ * {@link SettingsProxy} is published atomically, so {@link #get()} never blocks. A failed rebuild is logged and the
+ * last good snapshot stays in place. Registered {@link SettingsChangeListener}s receive the {@link SettingsDiff}
+ * between the previous and the new snapshot whenever a reload actually changed something.
+ */
+@Named("reloading")
+public class ReloadingSettingsSupplier extends DefaultSettingsSupplier implements Closeable {
+  public final static Duration DEFAULT_DEBOUNCE = Duration.ofMillis(500);
+
+  private final AtomicReference<SettingsSnapshot> current;
+  private final AtomicReference<ScheduledFuture<?>> pending = new AtomicReference<>();
+  private final AtomicLong reloads = new AtomicLong();
+  private final List<SettingsChangeListener> listeners = new CopyOnWriteArrayList<>();
+  private final Object reloadLock = new Object();
+  private final Duration debounce;
+  private final Path userFile;
+  private final Path globalFile;
+  private final Map<Path, Set<Path>> watchedNamesByDir = new HashMap<>();
+  private final WatchService watcher;
+  private final ScheduledExecutorService scheduler;
+  private final Thread watchThread;
+
+  @Inject
+  public ReloadingSettingsSupplier(EnvSupplier envSupplier, @Named("default") PropertiesSupplier propSupplier,
+      SettingsBuilder settingsBuilder) {
+    this(envSupplier, propSupplier, settingsBuilder, DEFAULT_DEBOUNCE);
+  }
+
+  public ReloadingSettingsSupplier(EnvSupplier envSupplier, PropertiesSupplier propSupplier,
+      SettingsBuilder settingsBuilder, Duration debounce) {
+    super(envSupplier, propSupplier, settingsBuilder);
+    this.debounce = Objects.requireNonNull(debounce);
+    this.current = new AtomicReference<>(super.getSnapshot());
+    this.userFile = getUserSettingsFile();
+    this.globalFile = getGlobalSettingsFile();
+    for (Path p : Arrays.asList(userFile, globalFile)) {
+      Path abs = p.toAbsolutePath();
+      watchedNamesByDir.computeIfAbsent(abs.getParent(), k -> new HashSet<>()).add(abs.getFileName());
+    }
+    this.watcher = IBException.cet.withReturningTranslation(() -> FileSystems.getDefault().newWatchService());
+    for (Path dir : watchedNamesByDir.keySet())
+      IBException.cet.withTranslation(() -> dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE));
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "settings-reload");
+      t.setDaemon(true);
+      return t;
+    });
+    this.watchThread = new Thread(this::watch, "settings-watch");
+    this.watchThread.setDaemon(true);
+    this.watchThread.start();
+  }
+
+  @Override
+  public SettingsSnapshot getSnapshot() {
+    return current.get();
+  }
+
+  /**
+   * @return number of snapshots successfully published after the initial build
+   */
+  public long getReloadCount() {
+    return reloads.get();
+  }
+
+  public void addChangeListener(SettingsChangeListener l) {
+    listeners.add(Objects.requireNonNull(l));
+  }
+
+  public void removeChangeListener(SettingsChangeListener l) {
+    listeners.remove(l);
+  }
+
+  /**
+   * Rebuild the snapshot immediately on the calling thread.
+   *
+   * Reloads are serialized on a per-instance lock, so snapshots are published in the order they were built and every
+   * listener sees each change exactly once, diffed against the snapshot it replaced. {@link #get()} never waits for
+   * the lock.
+   *
+   * @return true if a new snapshot was published, false if the rebuild failed and the previous one was kept
+   */
+  public boolean reload() {
+    synchronized (reloadLock) {
+      return reloadLocked();
+    }
+  }
+
+  private boolean reloadLocked() {
+    try {
+      // the watcher saw these files change, so earlier existence probes may be stale
+      getDiscovery().invalidate(userFile);
+      getDiscovery().invalidate(globalFile);
+      SettingsSnapshot next = snapshotOf(buildSettings());
+      SettingsSnapshot prev = current.getAndSet(next);
+      SettingsMetrics.snapshot(next.getSettings());
+      reloads.incrementAndGet();
+      SettingsMetrics.reload(true);
+      log.info("Reloaded settings from " + userFile + " and " + globalFile);
+      if (!listeners.isEmpty())
+        notifyListeners(SettingsDiff.between(prev.getSettings(), next.getSettings()));
+      return true;
+    } catch (RuntimeException e) {
+      log.warn("Settings reload failed; keeping last good snapshot", e);
+      SettingsMetrics.reload(false);
+      return false;
+    }
+  }
+
+  private void notifyListeners(SettingsDiff diff) {
+    if (diff.isEmpty())
+      return;
+    for (SettingsChangeListener l : listeners) {
+      try {
+        l.settingsChanged(diff);
+      } catch (RuntimeException e) {
+        log.warn("Settings change listener " + l + " failed", e);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchThread.interrupt();
+    scheduler.shutdownNow();
+    watcher.close();
+  }
+
+  private void scheduleReload() {
+    ScheduledFuture<?> prev = pending.getAndSet(scheduler.schedule(this::reload, debounce.toMillis(),
+        TimeUnit.MILLISECONDS));
+    if (prev != null)
+      prev.cancel(false);
+  }
+
+  private void watch() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        WatchKey key = watcher.take();
+        Set<Path> names = watchedNamesByDir.getOrDefault(key.watchable(), new HashSet<>());
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+          relevant |= event.kind() == OVERFLOW || names.contains(event.context());
+        }
+        key.reset();
+        if (relevant)
+          scheduleReload();
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      log.debug("Settings watcher stopped");
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.net.URI;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.infrastructurebuilder.util.Layout;
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.infrastructurebuilder.util.RepositoryProxy;
+
+/**
+ * Immutable {@link URI}-based view of a repository or mirror.
+ *
+ * {@link RepositoryProxy} and {@link MirrorProxy} carry a {@link java.net.URL}, whose {@code equals} and
+ * {@code hashCode} may resolve host names. A location compares and hashes on its id, the text of its URI and its
+ * layout only, so it can be used as a map key or set element without any network access. URIs are taken from
+ * {@link SettingsInterner}, so locations built from the same settings share them.
+ */
+public final class RepositoryLocation {
+  private final String id;
+  private final URI uri;
+  private final Layout layout;
+  private final Optional<String> name;
+
+  public final static RepositoryLocation of(RepositoryProxy r) {
+    return new RepositoryLocation(r.getId(), SettingsInterner.uri(r.getUrl().toExternalForm()), r.getLayout(),
+        r.getName());
+  }
+
+  public final static RepositoryLocation of(MirrorProxy m) {
+    return new RepositoryLocation(m.getId(), SettingsInterner.uri(m.getUrl().toExternalForm()), m.getLayout(),
+        m.getName());
+  }
+
+  public final static RepositoryLocation of(String id, URI uri, Layout layout) {
+    return new RepositoryLocation(id, uri, layout, Optional.empty());
+  }
+
+  private RepositoryLocation(String id, URI uri, Layout layout, Optional<String> name) {
+    this.id = SettingsInterner.string(Objects.requireNonNull(id));
+    this.uri = Objects.requireNonNull(uri);
+    this.layout = layout == null ? Layout.DEFAULT : layout;
+    this.name = Objects.requireNonNull(name);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public URI getUri() {
+    return uri;
+  }
+
+  public Layout getLayout() {
+    return layout;
+  }
+
+  public Optional<String> getName() {
+    return name;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, uri.toString(), layout);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof RepositoryLocation))
+      return false;
+    RepositoryLocation other = (RepositoryLocation) obj;
+    return id.equals(other.id) && uri.toString().equals(other.uri.toString()) && layout == other.layout;
+  }
+
+  @Override
+  public String toString() {
+    return id + " -> " + uri + " (" + layout + ")";
+  }
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.codehaus.plexus.util.xml.pull.EntityReplacementMap;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.infrastructurebuilder.IBException;
+
+/**
+ * Immutable, compact tree of a server {@code <configuration>}.
+ *
+ * Values can be looked up by slash-separated element paths relative to this node, for example
+ * {@code get("httpHeaders/property/name")}, with an optional trailing {@code @attribute} segment. Nothing is
+ * reparsed for a lookup. The XML text is rendered only when {@link #toString()} is first called, and it is exactly the
+ * text {@code Xpp3DomWriter} produces for the equivalent {@link Xpp3Dom}.
+ */
+public final class ServerConfiguration {
+  private final static String[] NO_STRINGS = new String[0];
+  private final static ServerConfiguration[] NO_CHILDREN = new ServerConfiguration[0];
+
+  private final String name;
+  private final String value;
+  private final String[] attributeNames;
+  private final String[] attributeValues;
+  private final ServerConfiguration[] children;
+  private volatile String text;
+
+  private ServerConfiguration(String name, String value, String[] attributeNames, String[] attributeValues,
+      ServerConfiguration[] children) {
+    this.name = name;
+    this.value = value;
+    this.attributeNames = attributeNames;
+    this.attributeValues = attributeValues;
+    this.children = children;
+  }
+
+  /**
+   * @param dom parsed configuration
+   * @return the same tree without parser locations or mutable state
+   */
+  public final static ServerConfiguration of(Xpp3Dom dom) {
+    String[] names = dom.getAttributeNames();
+    String[] values = new String[names.length];
+    for (int i = 0; i < names.length; ++i)
+      values[i] = dom.getAttribute(names[i]);
+    Xpp3Dom[] c = dom.getChildren();
+    ServerConfiguration[] kids = c.length == 0 ? NO_CHILDREN : new ServerConfiguration[c.length];
+    for (int i = 0; i < c.length; ++i)
+      kids[i] = of(c[i]);
+    return new ServerConfiguration(dom.getName(), dom.getValue(), names.length == 0 ? NO_STRINGS : names,
+        values.length == 0 ? NO_STRINGS : values, kids);
+  }
+
+  /**
+   * Parse configuration text, such as {@code ServerProxy.getConfiguration()}, the way {@code Xpp3DomBuilder} does:
+   * text is trimmed and kept only on leaves.
+   *
+   * @param xml configuration element
+   * @return tree
+   */
+  public final static ServerConfiguration parse(String xml) {
+    return IBException.cet.withReturningTranslation(() -> {
+      XmlPullParser x = new MXParser(EntityReplacementMap.defaultEntityReplacementMap);
+      x.setInput(new StringReader(xml));
+      while (x.next() != XmlPullParser.START_TAG)
+        ;
+      return parse(x);
+    });
+  }
+
+  private final static ServerConfiguration parse(XmlPullParser x) throws IOException, XmlPullParserException {
+    String name = x.getName();
+    boolean empty = x.isEmptyElementTag();
+    String[] names = NO_STRINGS, values = NO_STRINGS;
+    if (x.getAttributeCount() > 0) {
+      Map<String, String> attributes = new HashMap<>(); // Xpp3Dom keeps attributes in a HashMap
+      for (int i = 0; i < x.getAttributeCount(); ++i)
+        attributes.put(x.getAttributeName(i), x.getAttributeValue(i));
+      names = attributes.keySet().toArray(NO_STRINGS);
+      values = new String[names.length];
+      for (int i = 0; i < names.length; ++i)
+        values[i] = attributes.get(names[i]);
+    }
+    List<ServerConfiguration> kids = new ArrayList<>();
+    StringBuilder sb = empty ? null : new StringBuilder();
+    for (int e = x.next(); e != XmlPullParser.END_TAG; e = x.next()) {
+      if (e == XmlPullParser.START_TAG)
+        kids.add(parse(x));
+      else if (e == XmlPullParser.TEXT && sb != null)
+        sb.append(x.getText().trim());
+      else if (e == XmlPullParser.END_DOCUMENT)
+        throw new XmlPullParserException("Unexpected end of configuration", x, null);
+    }
+    return new ServerConfiguration(name, kids.isEmpty() && sb != null ? sb.toString() : null, names, values,
+        kids.isEmpty() ? NO_CHILDREN : kids.toArray(NO_CHILDREN));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return text of a leaf element; empty for elements with children or written as {@code <a/>}
+   */
+  public Optional<String> getValue() {
+    return Optional.ofNullable(value);
+  }
+
+  public List<String> getAttributeNames() {
+    return unmodifiableList(Arrays.asList(attributeNames));
+  }
+
+  public Optional<String> getAttribute(String attribute) {
+    for (int i = 0; i < attributeNames.length; ++i)
+      if (attributeNames[i].equals(attribute))
+        return Optional.of(attributeValues[i]);
+    return Optional.empty();
+  }
+
+  public List<ServerConfiguration> getChildren() {
+    return unmodifiableList(Arrays.asList(children));
+  }
+
+  public Optional<ServerConfiguration> getChild(String child) {
+    for (ServerConfiguration c : children)
+      if (c.name.equals(child))
+        return Optional.of(c);
+    return Optional.empty();
+  }
+
+  /**
+   * @param path slash-separated child names, relative to this node
+   * @return the first node on that path
+   */
+  public Optional<ServerConfiguration> find(String path) {
+    List<ServerConfiguration> l = findAll(path);
+    return l.isEmpty() ? Optional.empty() : Optional.of(l.get(0));
+  }
+
+  /**
+   * @param path slash-separated child names, relative to this node
+   * @return every node on that path, in document order
+   */
+  public List<ServerConfiguration> findAll(String path) {
+    List<ServerConfiguration> current = Arrays.asList(this);
+    for (String segment : segments(path)) {
+      if (segment.startsWith("@"))
+        throw new IllegalArgumentException("Attribute segment must be last: " + path);
+      List<ServerConfiguration> next = new ArrayList<>();
+      for (ServerConfiguration n : current)
+        for (ServerConfiguration c : n.children)
+          if (c.name.equals(segment))
+            next.add(c);
+      current = next;
+    }
+    return unmodifiableList(current);
+  }
+
+  /**
+   * @param path slash-separated child names relative to this node, optionally ending in {@code @attribute}
+   * @return value of the first match
+   */
+  public Optional<String> get(String path) {
+    List<String> l = getAll(path);
+    return l.isEmpty() ? Optional.empty() : Optional.of(l.get(0));
+  }
+
+  /**
+   * @param path slash-separated child names relative to this node, optionally ending in {@code @attribute}
+   * @return values of every match that has one, in document order
+   */
+  public List<String> getAll(String path) {
+    int at = path.lastIndexOf('@');
+    String attribute = at < 0 ? null : path.substring(at + 1);
+    String elements = at < 0 ? path : path.substring(0, at);
+    List<String> out = new ArrayList<>();
+    for (ServerConfiguration n : findAll(elements))
+      (attribute == null ? n.getValue() : n.getAttribute(attribute)).ifPresent(out::add);
+    return unmodifiableList(out);
+  }
+
+  /**
+   * @param path      as for {@link #get(String)}
+   * @param converter conversion of the text, for example {@code Integer::valueOf}
+   * @return converted value of the first match
+   */
+  public <T> Optional<T> get(String path, Function<String, T> converter) {
+    return get(path).map(Objects.requireNonNull(converter));
+  }
+
+  public Optional<Integer> getInt(String path) {
+    return get(path, Integer::valueOf);
+  }
+
+  public Optional<Boolean> getBoolean(String path) {
+    return get(path, Boolean::valueOf);
+  }
+
+  private final static List<String> segments(String path) {
+    List<String> l = new ArrayList<>();
+    for (String s : Objects.requireNonNull(path).split("/"))
+      if (!s.isEmpty())
+        l.add(s);
+    return l;
+  }
+
+  /**
+   * @return the configuration as {@code Xpp3DomWriter} writes it, rendered on first call
+   */
+  @Override
+  public String toString() {
+    String t = text;
+    if (t == null) {
+      StringWriter w = new StringWriter();
+      write(new PrettyPrintXMLWriter(w));
+      text = t = w.toString();
+    }
+    return t;
+  }
+
+  private void write(PrettyPrintXMLWriter w) {
+    w.startElement(name);
+    for (int i = 0; i < attributeNames.length; ++i)
+      w.addAttribute(attributeNames[i], attributeValues[i]);
+    for (ServerConfiguration c : children)
+      c.write(w);
+    if (value != null)
+      w.writeText(value);
+    w.endElement();
+  }
+}
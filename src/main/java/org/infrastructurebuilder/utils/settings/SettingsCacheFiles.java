@@ -0,0 +1,293 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.getEffectiveSettingsForRequest;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.globalSettingsFileFromEnv;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.requestFor;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.snapshotOf;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.userSettingsFileFromEnv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.EnvSupplier;
+import org.infrastructurebuilder.util.PropertiesSupplier;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.utils.settings.SettingsMetrics.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * What {@link SettingsSnapshotCache} and {@link MappedSettingsSnapshot} share, so their on-disk formats cannot drift:
+ * the key, the checksummed header, the atomic owner-only write and the load-or-build flow of their suppliers.
+ *
+ * Every file starts with
+ *
+ * <pre>
+ * int magic | int layout version | int codec version | int CRC32 of body | int body length
+ * </pre>
+ *
+ * all big-endian. The magic and layout version belong to the format; the codec version is
+ * {@link SettingsProxyCodec#FORMAT_VERSION}.
+ */
+final class SettingsCacheFiles {
+  public final static Logger log = LoggerFactory.getLogger(SettingsCacheFiles.class);
+  final static int HEADER = 5 * Integer.BYTES;
+
+  private final static Pattern ENV_REFERENCE = Pattern.compile("\\$\\{env\\.([^}]+)\\}");
+
+  private SettingsCacheFiles() {
+  }
+
+  /**
+   * @param envSupplier environment
+   * @return the {@value CachingSettingsSupplier#SETTINGS_CACHE_DIRECTORY} entry if present, otherwise
+   *         {@link CachingSettingsSupplier#DEFAULT_CACHE_DIRECTORY}
+   */
+  final static Path directory(EnvSupplier envSupplier) {
+    return Optional.ofNullable(Objects.requireNonNull(envSupplier).get())
+        .map(e -> e.get(CachingSettingsSupplier.SETTINGS_CACHE_DIRECTORY)).map(Paths::get)
+        .orElse(CachingSettingsSupplier.DEFAULT_CACHE_DIRECTORY);
+  }
+
+  /**
+   * @see SettingsSnapshotCache#keyFor(Path, Path, Properties, Map)
+   */
+  final static String keyFor(Path userSettings, Path globalSettings, Properties systemProperties,
+      Map<String, String> environment) {
+    return IBException.cet.withReturningTranslation(() -> {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      md.update(Integer.toString(SettingsProxyCodec.FORMAT_VERSION).getBytes(UTF_8));
+      TreeMap<String, String> env = new TreeMap<>();
+      for (Path p : new Path[] { userSettings, globalSettings }) {
+        update(md, p.toAbsolutePath().toString());
+        byte[] content = Files.readAllBytes(p);
+        update(md, Integer.toString(content.length));
+        md.update(content);
+        Matcher m = ENV_REFERENCE.matcher(new String(content, UTF_8));
+        while (m.find()) {
+          String v = environment.get(m.group(1));
+          env.put(m.group(1), v == null ? "-" : "+" + v); // an unset variable differs from any value
+        }
+      }
+      TreeMap<String, String> props = new TreeMap<>();
+      systemProperties.stringPropertyNames().forEach(k -> props.put(k, systemProperties.getProperty(k)));
+      for (Map<String, String> m : Arrays.asList(props, env)) {
+        update(md, Integer.toString(m.size()));
+        for (Map.Entry<String, String> e : m.entrySet()) {
+          update(md, e.getKey());
+          update(md, e.getValue());
+        }
+      }
+      StringBuilder sb = new StringBuilder();
+      for (byte b : md.digest())
+        sb.append(String.format("%02x", b));
+      return sb.toString();
+    });
+  }
+
+  private final static void update(MessageDigest md, String s) {
+    byte[] b = String.valueOf(s).getBytes(UTF_8);
+    md.update((byte) (b.length >>> 24));
+    md.update((byte) (b.length >>> 16));
+    md.update((byte) (b.length >>> 8));
+    md.update((byte) b.length);
+    md.update(b);
+  }
+
+  /**
+   * @param magic  format magic
+   * @param layout format layout version
+   * @param body   encoded body
+   * @return the header followed by {@code body}
+   */
+  final static byte[] frame(int magic, int layout, byte[] body) {
+    return ByteBuffer.allocate(HEADER + body.length).putInt(magic).putInt(layout)
+        .putInt(SettingsProxyCodec.FORMAT_VERSION).putInt((int) checksum(ByteBuffer.wrap(body))).putInt(body.length)
+        .put(body).array();
+  }
+
+  /**
+   * @param file   complete file content
+   * @param magic  expected magic
+   * @param layout expected layout version
+   * @return the body, once magic, versions, length and checksum all match
+   * @throws IOException on any mismatch
+   */
+  final static ByteBuffer unframe(ByteBuffer file, int magic, int layout) throws IOException {
+    if (file.capacity() < HEADER)
+      throw new IOException("Truncated header");
+    if (file.getInt(0) != magic || file.getInt(4) != layout || file.getInt(8) != SettingsProxyCodec.FORMAT_VERSION)
+      throw new IOException("Foreign or outdated file");
+    int length = file.getInt(16);
+    if (length != file.capacity() - HEADER)
+      throw new IOException("Length mismatch");
+    ByteBuffer d = file.duplicate();
+    d.position(HEADER);
+    d.limit(HEADER + length);
+    ByteBuffer body = d.slice();
+    if ((int) checksum(body.duplicate()) != file.getInt(12))
+      throw new IOException("Checksum mismatch");
+    return body;
+  }
+
+  private final static long checksum(ByteBuffer b) {
+    CRC32 crc = new CRC32();
+    crc.update(b);
+    return crc.getValue();
+  }
+
+  /**
+   * @param b buffer
+   * @return stream reading {@code b} from its position, reporting the remaining bytes as {@code available()}
+   */
+  final static InputStream input(ByteBuffer b) {
+    return new BufferInput(b);
+  }
+
+  /**
+   * Write a file atomically with owner-only permissions where the file system supports them, because the content
+   * carries the same (possibly unencrypted) credentials as the settings files. Failures are logged and otherwise
+   * ignored; every cache is only an optimization.
+   *
+   * @param target  file to write
+   * @param content complete file content
+   * @return true if the file was written
+   */
+  final static boolean write(Path target, byte[] content) {
+    Path dir = target.toAbsolutePath().getParent();
+    Path tmp = null;
+    try {
+      Files.createDirectories(dir);
+      tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+      try {
+        Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+      } catch (UnsupportedOperationException e) {
+        log.debug("Cannot restrict permissions on " + tmp);
+      }
+      try (OutputStream os = Files.newOutputStream(tmp)) {
+        os.write(content);
+      }
+      Files.move(tmp, target, ATOMIC_MOVE, REPLACE_EXISTING);
+      return true;
+    } catch (IOException | RuntimeException e) {
+      log.warn("Unable to write settings cache file " + target, e);
+      if (tmp != null) {
+        Path t = tmp;
+        IBException.cet.withTranslation(() -> Files.deleteIfExists(t));
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Discover the settings files, derive their key and either load the stored snapshot or build and store one.
+   *
+   * @param cacheName name reported to {@link SettingsMetrics}
+   * @param read      stored settings for a key, or empty
+   * @param write     store settings under a key
+   * @return the snapshot and whether it was loaded
+   */
+  final static Loaded load(EnvSupplier envSupplier, PropertiesSupplier propSupplier, SettingsBuilder settingsBuilder,
+      String cacheName, Function<String, Optional<SettingsProxy>> read, BiConsumer<String, SettingsProxy> write) {
+    Map<String, String> env = Objects.requireNonNull(envSupplier).get();
+    long start = SettingsMetrics.start();
+    Path user = userSettingsFileFromEnv.apply(env);
+    Path global = globalSettingsFileFromEnv.apply(env);
+    SettingsMetrics.phase(Phase.DISCOVERY, start);
+    Properties props = Objects.requireNonNull(propSupplier).get();
+    String key = keyFor(user, global, props, System.getenv());
+    Optional<SettingsProxy> stored = read.apply(key);
+    if (stored.isPresent()) {
+      log.debug(cacheName + " hit " + key);
+      SettingsMetrics.cacheHit(cacheName);
+      SettingsSnapshot snapshot = SettingsSnapshot.of(stored.get());
+      Path lp = snapshot.getSettings().getLocalRepository();
+      if (!Files.exists(lp))
+        IBException.cet.withTranslation(() -> Files.createDirectories(lp));
+      SettingsMetrics.snapshot(snapshot.getSettings());
+      return new Loaded(snapshot, true);
+    }
+    log.debug(cacheName + " miss " + key);
+    SettingsMetrics.cacheMiss(cacheName);
+    SettingsSnapshot snapshot = snapshotOf(
+        getEffectiveSettingsForRequest.apply(settingsBuilder, requestFor(user, global, props)));
+    write.accept(key, snapshot.getSettings());
+    SettingsMetrics.snapshot(snapshot.getSettings());
+    return new Loaded(snapshot, false);
+  }
+
+  final static class Loaded {
+    final SettingsSnapshot snapshot;
+    final boolean hit;
+
+    private Loaded(SettingsSnapshot snapshot, boolean hit) {
+      this.snapshot = snapshot;
+      this.hit = hit;
+    }
+  }
+
+  private final static class BufferInput extends InputStream {
+    private final ByteBuffer b;
+
+    private BufferInput(ByteBuffer b) {
+      this.b = b;
+    }
+
+    @Override
+    public int read() {
+      return b.hasRemaining() ? b.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] dst, int off, int len) {
+      if (!b.hasRemaining())
+        return -1;
+      int n = Math.min(len, b.remaining());
+      b.get(dst, off, n);
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return b.remaining();
+    }
+  }
+}
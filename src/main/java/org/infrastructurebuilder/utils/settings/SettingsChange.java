@@ -0,0 +1,82 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * One entity-level difference between two settings snapshots.
+ *
+ * @param <T> proxy type of the entity, or {@link String} for plugin groups
+ */
+public final class SettingsChange<T> {
+  public enum Type {
+    ADDED, REMOVED, CHANGED
+  }
+
+  public enum Entity {
+    SERVER, MIRROR, PROXY, PROFILE, PLUGIN_GROUP
+  }
+
+  private final Type type;
+  private final Entity entity;
+  private final String id;
+  private final Optional<T> before;
+  private final Optional<T> after;
+
+  SettingsChange(Type type, Entity entity, String id, T before, T after) {
+    this.type = Objects.requireNonNull(type);
+    this.entity = Objects.requireNonNull(entity);
+    this.id = Objects.requireNonNull(id);
+    this.before = Optional.ofNullable(before);
+    this.after = Optional.ofNullable(after);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public Entity getEntity() {
+    return entity;
+  }
+
+  /**
+   * @return id of the entity; the group itself for plugin groups
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @return entity in the old snapshot; empty for {@link Type#ADDED}
+   */
+  public Optional<T> getBefore() {
+    return before;
+  }
+
+  /**
+   * @return entity in the new snapshot; empty for {@link Type#REMOVED}
+   */
+  public Optional<T> getAfter() {
+    return after;
+  }
+
+  @Override
+  public String toString() {
+    return type + " " + entity + " " + id;
+  }
+}
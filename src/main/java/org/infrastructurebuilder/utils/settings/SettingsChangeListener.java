@@ -0,0 +1,63 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+/**
+ * Receiver for the differences between consecutive settings snapshots.
+ *
+ * {@link #settingsChanged(SettingsDiff)} is called once per non-empty diff and by default dispatches every change to
+ * {@link #added}, {@link #removed} or {@link #changed}, so an implementation overrides either the aggregate or the
+ * per-entity callbacks. Callbacks arrive on the thread that published the new snapshot. An exception thrown by a
+ * listener is logged and otherwise ignored.
+ */
+public interface SettingsChangeListener {
+
+  /**
+   * @param diff all changes between the previous and the new snapshot, never empty
+   */
+  default void settingsChanged(SettingsDiff diff) {
+    for (SettingsChange<?> c : diff.getChanges()) {
+      switch (c.getType()) {
+      case ADDED:
+        added(c);
+        break;
+      case REMOVED:
+        removed(c);
+        break;
+      default:
+        changed(c);
+      }
+    }
+  }
+
+  /**
+   * @param change an entity present only in the new snapshot
+   */
+  default void added(SettingsChange<?> change) {
+  }
+
+  /**
+   * @param change an entity present only in the old snapshot
+   */
+  default void removed(SettingsChange<?> change) {
+  }
+
+  /**
+   * @param change an entity present in both snapshots with different content
+   */
+  default void changed(SettingsChange<?> change) {
+  }
+}
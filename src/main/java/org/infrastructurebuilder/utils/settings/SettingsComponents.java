@@ -0,0 +1,146 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.crypto.SettingsDecrypter;
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.io.SettingsReader;
+import org.apache.maven.settings.io.SettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.apache.maven.settings.validation.SettingsValidator;
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.EnvSupplier;
+import org.infrastructurebuilder.util.PropertiesSupplier;
+import org.infrastructurebuilder.util.SettingsSupplier;
+import org.sonatype.plexus.components.cipher.PlexusCipher;
+import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+
+/**
+ * The component graph a container would inject, assembled with plain constructor calls.
+ *
+ * Short-lived tools that only need settings or credentials can use this instead of starting a sisu/Plexus container:
+ * there is no classpath scanning and no reflection, only the reader, writer, validator, {@link SettingsBuilder},
+ * {@link PlexusCipher}, {@link SecDispatcher} and {@link SettingsDecrypter} that the {@code @Named} components would
+ * have been wired with. Suppliers created here behave exactly like their injected counterparts.
+ *
+ * Instances are immutable and may be shared; every component in the graph is thread safe.
+ */
+public final class SettingsComponents {
+  private final SettingsReader reader;
+  private final SettingsWriter writer;
+  private final SettingsValidator validator;
+  private final SettingsBuilder settingsBuilder;
+  private final PlexusCipher cipher;
+  private final SecDispatcher secDispatcher;
+  private final SettingsDecrypter decrypter;
+
+  /**
+   * @return the graph the container builds by default: {@link MyDefaultSecDispatcher} with no extra
+   *         {@link PasswordDecryptor}s
+   */
+  public final static SettingsComponents create() {
+    return create(Collections.emptyMap(), false);
+  }
+
+  /**
+   * @param decryptors named password decryptors, as the container would collect them
+   * @param caching    if true use {@link MyCachingSecDispatcher} instead of {@link MyDefaultSecDispatcher}
+   * @return new component graph
+   */
+  public final static SettingsComponents create(Map<String, PasswordDecryptor> decryptors, boolean caching) {
+    return new SettingsComponents(new HashMap<>(Objects.requireNonNull(decryptors)), caching);
+  }
+
+  private SettingsComponents(Map<String, PasswordDecryptor> decryptors, boolean caching) {
+    this.reader = new DefaultSettingsReader();
+    this.writer = new DefaultSettingsWriter();
+    this.validator = new DefaultSettingsValidator();
+    this.settingsBuilder = new MyDefaultSettingsBuilder(reader, writer, validator);
+    this.cipher = IBException.cet.withReturningTranslation(() -> new MyDefaultPlexusCipher());
+    this.secDispatcher = caching ? new MyCachingSecDispatcher(cipher, decryptors)
+        : new MyDefaultSecDispatcher(cipher, decryptors);
+    this.decrypter = new MyDefaultSettingsDecrypter(secDispatcher);
+  }
+
+  public SettingsReader getReader() {
+    return reader;
+  }
+
+  public SettingsWriter getWriter() {
+    return writer;
+  }
+
+  public SettingsValidator getValidator() {
+    return validator;
+  }
+
+  public SettingsBuilder getSettingsBuilder() {
+    return settingsBuilder;
+  }
+
+  public PlexusCipher getCipher() {
+    return cipher;
+  }
+
+  public SecDispatcher getSecDispatcher() {
+    return secDispatcher;
+  }
+
+  public SettingsDecrypter getSettingsDecrypter() {
+    return decrypter;
+  }
+
+  /**
+   * @return supplier over the process environment and system properties
+   */
+  public DefaultSettingsSupplier newSettingsSupplier() {
+    return newSettingsSupplier(() -> System.getenv(), () -> System.getProperties());
+  }
+
+  /**
+   * @param envSupplier  environment used to locate the settings files
+   * @param propSupplier system properties for interpolation
+   * @return eagerly built supplier, as {@code @Named("default")}
+   */
+  public DefaultSettingsSupplier newSettingsSupplier(EnvSupplier envSupplier, PropertiesSupplier propSupplier) {
+    return new DefaultSettingsSupplier(envSupplier, propSupplier, settingsBuilder);
+  }
+
+  /**
+   * @param envSupplier  environment used to locate the settings files
+   * @param propSupplier system properties for interpolation
+   * @return supplier that builds on first use, as {@code @Named("lazy")}
+   */
+  public LazySettingsSupplier newLazySettingsSupplier(EnvSupplier envSupplier, PropertiesSupplier propSupplier) {
+    return new LazySettingsSupplier(envSupplier, propSupplier, settingsBuilder);
+  }
+
+  /**
+   * @param delegate supplier whose secrets should be decrypted
+   * @return decrypting supplier using this graph's {@link SettingsDecrypter}, as {@code @Named("decrypting")}
+   */
+  public DecryptingSettingsSupplier newDecryptingSettingsSupplier(SettingsSupplier delegate) {
+    return new DecryptingSettingsSupplier(delegate, decrypter);
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.utils.settings.SettingsChange.Entity;
+import org.infrastructurebuilder.utils.settings.SettingsChange.Type;
+
+/**
+ * Entity-by-entity comparison of two {@link SettingsProxy} instances.
+ *
+ * Servers, mirrors, proxies and profiles are matched by id, the first definition of an id winning as in
+ * {@link SettingsIndex}. A matched pair counts as changed if its {@link SettingsProxyCodec} encodings differ; the same
+ * instance on both sides is unchanged without being encoded.
+ * Plugin groups are compared as a set. Changes are listed by entity, then removals, additions and changes, each in
+ * declaration order.
+ *
+ * The top-level {@code offline}, {@code localRepository} and model encoding fields are not entities and are reported
+ * separately through {@link #isLocalRepositoryChanged()} and {@link #isOfflineChanged()}.
+ */
+public final class SettingsDiff {
+  private final List<SettingsChange<?>> changes;
+  private final boolean localRepositoryChanged;
+  private final boolean offlineChanged;
+
+  /**
+   * @param before old settings
+   * @param after  new settings
+   * @return differences from {@code before} to {@code after}
+   */
+  public final static SettingsDiff between(SettingsProxy before, SettingsProxy after) {
+    return new SettingsDiff(Objects.requireNonNull(before), Objects.requireNonNull(after));
+  }
+
+  private SettingsDiff(SettingsProxy b, SettingsProxy a) {
+    List<SettingsChange<?>> l = new ArrayList<>();
+    if (b != a) {
+      Encoder enc = new Encoder();
+      diff(l, Entity.SERVER, b.getServers(), a.getServers(), s -> s.getId(), enc, SettingsProxyCodec::writeServer);
+      diff(l, Entity.MIRROR, b.getMirrors(), a.getMirrors(), m -> m.getId(), enc, SettingsProxyCodec::writeMirror);
+      diff(l, Entity.PROXY, b.getProxies(), a.getProxies(), p -> p.getId(), enc, SettingsProxyCodec::writeProxy);
+      diff(l, Entity.PROFILE, b.getProfiles(), a.getProfiles(), p -> p.getId(), enc, SettingsProxyCodec::writeProfile);
+      Set<String> bg = new LinkedHashSet<>(b.getPluginGroups()), ag = new LinkedHashSet<>(a.getPluginGroups());
+      for (String g : bg)
+        if (!ag.contains(g))
+          l.add(new SettingsChange<>(Type.REMOVED, Entity.PLUGIN_GROUP, g, g, null));
+      for (String g : ag)
+        if (!bg.contains(g))
+          l.add(new SettingsChange<>(Type.ADDED, Entity.PLUGIN_GROUP, g, null, g));
+    }
+    this.changes = unmodifiableList(l);
+    Path bl = b.getLocalRepository(), al = a.getLocalRepository();
+    this.localRepositoryChanged = !Objects.equals(bl, al);
+    this.offlineChanged = b.isOffline() != a.isOffline();
+  }
+
+  @FunctionalInterface
+  private interface Writer<T> {
+    void write(DataOutput out, T t) throws IOException;
+  }
+
+  private final static <T> void diff(List<SettingsChange<?>> l, Entity entity, List<T> before, List<T> after,
+      Function<T, String> id, Encoder enc, Writer<T> w) {
+    Map<String, T> b = byId(before, id), a = byId(after, id);
+    for (Map.Entry<String, T> e : b.entrySet())
+      if (!a.containsKey(e.getKey()))
+        l.add(new SettingsChange<>(Type.REMOVED, entity, e.getKey(), e.getValue(), null));
+    for (Map.Entry<String, T> e : a.entrySet())
+      if (!b.containsKey(e.getKey()))
+        l.add(new SettingsChange<>(Type.ADDED, entity, e.getKey(), null, e.getValue()));
+    for (Map.Entry<String, T> e : a.entrySet()) {
+      T old = b.get(e.getKey());
+      if (old != null && old != e.getValue() && !Arrays.equals(enc.encode(w, old), enc.encode(w, e.getValue())))
+        l.add(new SettingsChange<>(Type.CHANGED, entity, e.getKey(), old, e.getValue()));
+    }
+  }
+
+  private final static <T> Map<String, T> byId(List<T> items, Function<T, String> id) {
+    Map<String, T> m = new LinkedHashMap<>();
+    for (T t : items)
+      m.putIfAbsent(id.apply(t), t);
+    return m;
+  }
+
+  /** One reusable buffer per diff */
+  private final static class Encoder {
+    private final ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(bos);
+
+    private <T> byte[] encode(Writer<T> w, T t) {
+      bos.reset();
+      IBException.cet.withTranslation(() -> w.write(out, t));
+      return bos.toByteArray();
+    }
+  }
+
+  public boolean isEmpty() {
+    return changes.isEmpty() && !localRepositoryChanged && !offlineChanged;
+  }
+
+  public List<SettingsChange<?>> getChanges() {
+    return changes;
+  }
+
+  /**
+   * @param entity entity kind
+   * @return changes to entities of that kind
+   */
+  public List<SettingsChange<?>> getChanges(Entity entity) {
+    List<SettingsChange<?>> l = new ArrayList<>();
+    for (SettingsChange<?> c : changes)
+      if (c.getEntity() == entity)
+        l.add(c);
+    return l;
+  }
+
+  public boolean isLocalRepositoryChanged() {
+    return localRepositoryChanged;
+  }
+
+  public boolean isOfflineChanged() {
+    return offlineChanged;
+  }
+
+  @Override
+  public String toString() {
+    return changes.toString();
+  }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ordered chains of {@link SettingsFileSource}s for the user and global settings files, with a shared cache of
+ * file-system probes.
+ *
+ * Each resolution asks the sources for candidates in order, stopping after the first authoritative one that offers a
+ * path. The candidates are then probed in order (exists, regular file, readable) and the first usable one wins, so a
+ * later candidate is not probed once an earlier one is usable. Probe results, positive and negative, are remembered for the time-to-live, so
+ * creating suppliers over and over makes no file-system calls at all once the cache is warm.
+ *
+ * {@link #DEFAULT} reproduces the lookup {@link DefaultSettingsSupplier} has always done: {@code USER_SETTINGS_FILE},
+ * then {@code ~/.m2/settings.xml} for the user file, and {@code GLOBAL_SETTINGS_FILE}, {@code MAVEN_HOME}, then SDKMAN
+ * for the global one.
+ */
+public final class SettingsFileDiscovery {
+  public final static Duration DEFAULT_TTL = Duration.ofSeconds(5);
+  public final static List<SettingsFileSource> DEFAULT_USER_SOURCES = unmodifiableList(
+      Arrays.asList(SettingsFileSource.userSettingsVariable(), SettingsFileSource.userHome()));
+  public final static List<SettingsFileSource> DEFAULT_GLOBAL_SOURCES = unmodifiableList(Arrays.asList(
+      SettingsFileSource.globalSettingsVariable(), SettingsFileSource.mavenHome(), SettingsFileSource.sdkman()));
+  public final static SettingsFileDiscovery DEFAULT = new SettingsFileDiscovery(DEFAULT_USER_SOURCES,
+      DEFAULT_GLOBAL_SOURCES, DEFAULT_TTL);
+
+  private final List<SettingsFileSource> userSources;
+  private final List<SettingsFileSource> globalSources;
+  private final long ttlNanos;
+  private final Map<Path, Probe> probes = new ConcurrentHashMap<>();
+
+  public SettingsFileDiscovery(List<SettingsFileSource> userSources, List<SettingsFileSource> globalSources,
+      Duration ttl) {
+    this.userSources = unmodifiableList(new ArrayList<>(Objects.requireNonNull(userSources)));
+    this.globalSources = unmodifiableList(new ArrayList<>(Objects.requireNonNull(globalSources)));
+    this.ttlNanos = Objects.requireNonNull(ttl).toNanos();
+  }
+
+  /**
+   * @param env environment
+   * @return the user settings file and the source that supplied it
+   * @throws RuntimeException if no source yields a readable, regular file
+   */
+  public Discovered user(Map<String, String> env) {
+    return resolve("User", userSources, env);
+  }
+
+  /**
+   * @param env environment
+   * @return the global settings file and the source that supplied it
+   * @throws RuntimeException if no source yields a readable, regular file
+   */
+  public Discovered global(Map<String, String> env) {
+    return resolve("Global", globalSources, env);
+  }
+
+  /**
+   * Forget the cached probe for a file, for example because it is known to have just been created or deleted.
+   *
+   * @param p file
+   */
+  public void invalidate(Path p) {
+    probes.remove(p.toAbsolutePath());
+  }
+
+  public void clear() {
+    probes.clear();
+  }
+
+  private Discovered resolve(String kind, List<SettingsFileSource> sources, Map<String, String> env) {
+    Objects.requireNonNull(env);
+    List<SettingsFileSource> offering = new ArrayList<>(sources.size());
+    List<Path> candidates = new ArrayList<>(sources.size());
+    for (SettingsFileSource s : sources) {
+      Path p = s.candidate(env).orElse(null);
+      if (p != null) {
+        offering.add(s);
+        candidates.add(p);
+        if (s.isAuthoritative())
+          break;
+      }
+    }
+    if (candidates.isEmpty())
+      throw new RuntimeException(kind + " Settings file not found by any of " + sources);
+    long now = System.nanoTime();
+    for (int i = 0; i < candidates.size(); ++i) {
+      Path p = candidates.get(i);
+      Probe cached = probes.get(p);
+      boolean usable = cached != null && now - cached.at < ttlNanos ? cached.usable : probe(p, now);
+      if (usable)
+        return new Discovered(p, offering.get(i).getName());
+    }
+    throw new RuntimeException(
+        kind + " Settings file " + candidates.get(candidates.size() - 1) + " is not a readable, regular file");
+  }
+
+  private boolean probe(Path p, long now) {
+    boolean usable = Files.isRegularFile(p) && Files.isReadable(p);
+    probes.put(p, new Probe(usable, now));
+    return usable;
+  }
+
+  private final static class Probe {
+    private final boolean usable;
+    private final long at;
+
+    private Probe(boolean usable, long at) {
+      this.usable = usable;
+      this.at = at;
+    }
+  }
+
+  /**
+   * A resolved settings file and the name of the {@link SettingsFileSource} it came from.
+   */
+  public final static class Discovered {
+    private final Path path;
+    private final String source;
+
+    private Discovered(Path path, String source) {
+      this.path = path;
+      this.source = source;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public String getSource() {
+      return source;
+    }
+
+    @Override
+    public String toString() {
+      return path + " (" + source + ")";
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.DEFAULT_USER_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.MAVEN_HOME;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.SETTINGS_XML;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import org.infrastructurebuilder.IBException;
+
+/**
+ * One place a settings file may come from, for example an environment variable or {@code MAVEN_HOME}.
+ *
+ * A source only names a candidate path; {@link SettingsFileDiscovery} decides whether the file is usable. An
+ * authoritative source that offers a candidate ends the search, so a configured but broken location is reported
+ * instead of silently falling through to the next source.
+ */
+public final class SettingsFileSource {
+  private final String name;
+  private final Function<Map<String, String>, Optional<Path>> candidate;
+  private final boolean authoritative;
+
+  /**
+   * @param name          name reported when this source wins
+   * @param candidate     candidate path for an environment, or empty if the source does not apply; must not touch the
+   *                      file system
+   * @param authoritative whether an offered candidate ends the search
+   */
+  public SettingsFileSource(String name, Function<Map<String, String>, Optional<Path>> candidate,
+      boolean authoritative) {
+    this.name = Objects.requireNonNull(name);
+    this.candidate = Objects.requireNonNull(candidate);
+    this.authoritative = authoritative;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isAuthoritative() {
+    return authoritative;
+  }
+
+  public Optional<Path> candidate(Map<String, String> env) {
+    return candidate.apply(env).map(Path::toAbsolutePath);
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  /**
+   * @param variable environment entry naming a settings file
+   * @return authoritative source for that entry
+   */
+  public final static SettingsFileSource environment(String variable) {
+    return new SettingsFileSource("env:" + variable,
+        env -> Optional.ofNullable(env.get(variable)).map(Paths::get), true);
+  }
+
+  /**
+   * @return authoritative source for {@code $MAVEN_HOME/conf/settings.xml}
+   */
+  public final static SettingsFileSource mavenHome() {
+    return new SettingsFileSource(MAVEN_HOME,
+        env -> Optional.ofNullable(env.get(MAVEN_HOME)).map(h -> Paths.get(h).resolve("conf").resolve(SETTINGS_XML)),
+        true);
+  }
+
+  /**
+   * The "no {@code MAVEN_HOME}" warning is logged the first time the source is asked, not on every discovery.
+   *
+   * @return source for the SDKMAN {@code current} Maven under the <em>current</em> {@code user.home}
+   */
+  public final static SettingsFileSource sdkman() {
+    AtomicBoolean warned = new AtomicBoolean();
+    return new SettingsFileSource("sdkman", env -> {
+      if (warned.compareAndSet(false, true))
+        DefaultSettingsSupplier.log.warn("No MAVEN_HOME set!!!  Resolving from SDKMAN...");
+      return Optional.ofNullable(System.getProperty("user.home"))
+          .map(h -> Paths.get(h).resolve(".sdkman").resolve("candidates").resolve("maven").resolve("current")
+              .resolve("conf").resolve(SETTINGS_XML));
+    }, true);
+  }
+
+  /**
+   * @param resource classpath resource name
+   * @return non-authoritative source for a settings file shipped on the classpath as a plain file
+   */
+  public final static SettingsFileSource classpath(String resource) {
+    return new SettingsFileSource("classpath:" + resource, env -> {
+      URL u = Thread.currentThread().getContextClassLoader() == null ? null
+          : Thread.currentThread().getContextClassLoader().getResource(resource);
+      if (u == null || !"file".equals(u.getProtocol()))
+        return Optional.empty();
+      return Optional.of(IBException.cet.withReturningTranslation(() -> Paths.get(u.toURI())));
+    }, false);
+  }
+
+  /**
+   * @param path settings file
+   * @return authoritative source that always offers {@code path}
+   */
+  public final static SettingsFileSource explicit(Path path) {
+    Objects.requireNonNull(path);
+    return new SettingsFileSource("explicit:" + path, env -> Optional.of(path), true);
+  }
+
+  /**
+   * @return authoritative source for {@code ~/.m2/settings.xml}
+   */
+  public final static SettingsFileSource userHome() {
+    return new SettingsFileSource("user.home", env -> Optional.of(DEFAULT_USER_SETTINGS_FILE), true);
+  }
+
+  /**
+   * @return {@link DefaultSettingsSupplier#USER_SETTINGS_FILE} environment entry
+   */
+  public final static SettingsFileSource userSettingsVariable() {
+    return environment(USER_SETTINGS_FILE);
+  }
+
+  /**
+   * @return {@link DefaultSettingsSupplier#GLOBAL_SETTINGS_FILE} environment entry
+   */
+  public final static SettingsFileSource globalSettingsVariable() {
+    return environment(GLOBAL_SETTINGS_FILE);
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Collections.unmodifiableMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.utils.settings.SettingsChange.Entity;
+
+/**
+ * SHA-256 fingerprints of a {@link SettingsProxy} and of each of its servers, mirrors, proxies and profiles.
+ *
+ * An entity's fingerprint is the digest of its {@link SettingsProxyCodec} encoding, so any field change, including
+ * credentials, changes it. Entities are keyed by id, the first definition of an id winning as in
+ * {@link SettingsIndex}. The snapshot fingerprint covers the top-level fields and the entity fingerprints. Servers
+ * are taken in id order and plugin groups as a sorted set, so reordering them does not change it. Mirrors, proxies and
+ * profiles keep declaration order, because it decides mirror matching, proxy selection and profile merging.
+ *
+ * Two settings with equal fingerprints behave the same, so a dependent cache can be invalidated by comparing one
+ * string. Fingerprints are derived from passwords and passphrases and should be kept as private as the settings.
+ */
+public final class SettingsFingerprint {
+  public final static String ALGORITHM = "SHA-256";
+
+  private final String fingerprint;
+  private final Map<Entity, Map<String, String>> entities = new EnumMap<>(Entity.class);
+
+  /**
+   * @param settings settings to fingerprint
+   * @return fingerprints of {@code settings} and its entities
+   */
+  public final static SettingsFingerprint of(SettingsProxy settings) {
+    return new SettingsFingerprint(Objects.requireNonNull(settings));
+  }
+
+  private SettingsFingerprint(SettingsProxy s) {
+    Digester d = new Digester();
+    put(d, Entity.SERVER, s.getServers(), v -> v.getId(), SettingsProxyCodec::writeServer);
+    put(d, Entity.MIRROR, s.getMirrors(), v -> v.getId(), SettingsProxyCodec::writeMirror);
+    put(d, Entity.PROXY, s.getProxies(), v -> v.getId(), SettingsProxyCodec::writeProxy);
+    put(d, Entity.PROFILE, s.getProfiles(), v -> v.getId(), SettingsProxyCodec::writeProfile);
+    this.fingerprint = d.digest(out -> {
+      out.writeInt(SettingsProxyCodec.FORMAT_VERSION);
+      out.writeBoolean(s.isOffline());
+      SettingsProxyCodec.writeString(out, s.getLocalRepository().toString());
+      SettingsProxyCodec.writeString(out, s.getModelEncoding().name());
+      writeFingerprints(out, new TreeMap<>(entities.get(Entity.SERVER)));
+      for (Entity e : new Entity[] { Entity.MIRROR, Entity.PROXY, Entity.PROFILE })
+        writeFingerprints(out, entities.get(e));
+      TreeSet<String> groups = new TreeSet<>(s.getPluginGroups());
+      out.writeInt(groups.size());
+      for (String g : groups)
+        SettingsProxyCodec.writeString(out, g);
+    });
+  }
+
+  @FunctionalInterface
+  private interface Writer<T> {
+    void write(DataOutputStream out, T t) throws IOException;
+  }
+
+  @FunctionalInterface
+  private interface Content {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private final <T> void put(Digester d, Entity entity, List<T> items, Function<T, String> id, Writer<T> w) {
+    Map<String, String> m = new LinkedHashMap<>();
+    for (T t : items)
+      if (!m.containsKey(id.apply(t)))
+        m.put(id.apply(t), d.digest(out -> w.write(out, t)));
+    entities.put(entity, unmodifiableMap(m));
+  }
+
+  private final static void writeFingerprints(DataOutputStream out, Map<String, String> m) throws IOException {
+    out.writeInt(m.size());
+    for (Map.Entry<String, String> e : m.entrySet()) {
+      SettingsProxyCodec.writeString(out, e.getKey());
+      out.writeBytes(e.getValue());
+    }
+  }
+
+  /** One reusable buffer and digest per fingerprint */
+  private final static class Digester {
+    private final ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(bos);
+    private final MessageDigest md = IBException.cet
+        .withReturningTranslation(() -> MessageDigest.getInstance(ALGORITHM));
+
+    private String digest(Content c) {
+      bos.reset();
+      IBException.cet.withTranslation(() -> c.write(out));
+      StringBuilder sb = new StringBuilder(64);
+      for (byte b : md.digest(bos.toByteArray()))
+        sb.append(String.format("%02x", b));
+      return sb.toString();
+    }
+  }
+
+  /**
+   * @return hex fingerprint of the whole settings
+   */
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * @param entity {@link Entity#SERVER}, {@link Entity#MIRROR}, {@link Entity#PROXY} or {@link Entity#PROFILE}
+   * @return hex fingerprints by id, in declaration order; empty for {@link Entity#PLUGIN_GROUP}
+   */
+  public Map<String, String> getFingerprints(Entity entity) {
+    return entities.getOrDefault(Objects.requireNonNull(entity), Collections.emptyMap());
+  }
+
+  /**
+   * @param entity entity kind
+   * @param id     entity id
+   * @return hex fingerprint of the first entity of that kind with that id
+   */
+  public Optional<String> getFingerprint(Entity entity, String id) {
+    return Optional.ofNullable(getFingerprints(entity).get(id));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof SettingsFingerprint && fingerprint.equals(((SettingsFingerprint) o).fingerprint);
+  }
+
+  @Override
+  public int hashCode() {
+    return fingerprint.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return fingerprint;
+  }
+}
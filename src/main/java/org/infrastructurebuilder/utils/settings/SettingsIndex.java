@@ -0,0 +1,117 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.infrastructurebuilder.util.ProfileProxy;
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hash indexes over the id-keyed entries of one {@link SettingsProxy}.
+ *
+ * When an id occurs more than once the first entry wins, which is the entry a linear scan of the original list would
+ * have found. Every duplicate is logged and reported through {@link #getDuplicates()}.
+ */
+public final class SettingsIndex {
+  public final static Logger log = LoggerFactory.getLogger(SettingsIndex.class);
+
+  private final Map<String, ServerProxy> servers;
+  private final Map<String, MirrorProxy> mirrors;
+  private final Map<String, ProfileProxy> profiles;
+  private final Map<String, ProxyProxy> proxies;
+  private final List<String> duplicates;
+
+  public final static SettingsIndex of(SettingsProxy s) {
+    return new SettingsIndex(Objects.requireNonNull(s));
+  }
+
+  private SettingsIndex(SettingsProxy s) {
+    List<String> dups = new ArrayList<>();
+    this.servers = index("server", s.getServers(), ServerProxy::getId, dups);
+    this.mirrors = index("mirror", s.getMirrors(), MirrorProxy::getId, dups);
+    this.profiles = index("profile", s.getProfiles(), ProfileProxy::getId, dups);
+    this.proxies = index("proxy", s.getProxies(), ProxyProxy::getId, dups);
+    this.duplicates = unmodifiableList(dups);
+  }
+
+  private final static <T> Map<String, T> index(String kind, List<T> items, Function<T, String> id,
+      List<String> dups) {
+    Map<String, T> m = new HashMap<>(Math.max(16, (int) (items.size() / 0.75f) + 1));
+    for (T item : items) {
+      String k = id.apply(item);
+      if (m.putIfAbsent(k, item) != null) {
+        String msg = "Duplicate " + kind + " id '" + k + "'";
+        log.warn(msg + "; using the first definition");
+        dups.add(msg);
+      }
+    }
+    return unmodifiableMap(m);
+  }
+
+  public Optional<ServerProxy> getServer(String id) {
+    return Optional.ofNullable(servers.get(id));
+  }
+
+  public Optional<MirrorProxy> getMirror(String id) {
+    return Optional.ofNullable(mirrors.get(id));
+  }
+
+  public Optional<ProfileProxy> getProfile(String id) {
+    return Optional.ofNullable(profiles.get(id));
+  }
+
+  public Optional<ProxyProxy> getProxy(String id) {
+    return Optional.ofNullable(proxies.get(id));
+  }
+
+  public Map<String, ServerProxy> getServers() {
+    return servers;
+  }
+
+  public Map<String, MirrorProxy> getMirrors() {
+    return mirrors;
+  }
+
+  public Map<String, ProfileProxy> getProfiles() {
+    return profiles;
+  }
+
+  public Map<String, ProxyProxy> getProxies() {
+    return proxies;
+  }
+
+  /**
+   * @return one message per duplicated id found while building the index
+   */
+  public List<String> getDuplicates() {
+    return duplicates;
+  }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableList;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.Layout;
+
+/**
+ * Process-wide canonical instances of the values that large settings files repeat over and over: ids, URLs, URIs,
+ * {@code mirrorOf} lists and layout lists.
+ *
+ * Every pool is keyed by the source string, so interning a {@link URL} never calls {@link URL#hashCode()} or
+ * {@link URL#equals(Object)}, both of which may resolve host names. Pools are bounded: one that reaches
+ * {@link #MAX_ENTRIES} is emptied and starts over, which keeps memory flat when many unrelated settings pass through a
+ * long-lived process. Interned values are immutable and safe to share between snapshots.
+ */
+public final class SettingsInterner {
+  public final static int MAX_ENTRIES = 8192;
+
+  private final static Pool<String> STRINGS = new Pool<>();
+  private final static Pool<URL> URLS = new Pool<>();
+  private final static Pool<URI> URIS = new Pool<>();
+  private final static Pool<List<String>> LISTS = new Pool<>();
+  private final static Map<Layout, List<Layout>> LAYOUTS = new ConcurrentHashMap<>();
+
+  private SettingsInterner() {
+  }
+
+  /**
+   * @param s string, may be null
+   * @return canonical equal string
+   */
+  public final static String string(String s) {
+    return s == null ? null : STRINGS.get(s, Function.identity());
+  }
+
+  /**
+   * @param spec URL text
+   * @return canonical URL for exactly that text
+   */
+  public final static URL url(String spec) {
+    return URLS.get(spec, k -> IBException.cet.withReturningTranslation(() -> new URL(k)));
+  }
+
+  /**
+   * @param spec URL or URI text; characters a URI does not allow, such as spaces, are quoted
+   * @return canonical URI for exactly that text
+   */
+  public final static URI uri(String spec) {
+    return URIS.get(spec, SettingsInterner::toURI);
+  }
+
+  private final static URI toURI(String spec) {
+    try {
+      return new URI(spec);
+    } catch (URISyntaxException e) {
+      // java.net.URL is more lenient; let the multi-argument constructor quote what URI rejects
+      try {
+        URL u = new URL(spec);
+        return new URI(u.getProtocol(), u.getUserInfo(), u.getHost(), u.getPort(), u.getPath(), u.getQuery(),
+            u.getRef());
+      } catch (MalformedURLException | URISyntaxException e2) {
+        throw new IllegalArgumentException("Not a URI: " + spec, e);
+      }
+    }
+  }
+
+  /**
+   * @param mirrorOf raw comma-separated {@code mirrorOf}
+   * @return canonical unmodifiable list of its elements, untrimmed as {@code proxyFromMirror} has always kept them
+   */
+  public final static List<String> mirrorOf(String mirrorOf) {
+    return LISTS.get(mirrorOf, k -> {
+      List<String> l = new ArrayList<>();
+      for (String s : k.split(","))
+        l.add(string(s));
+      return unmodifiableList(l);
+    });
+  }
+
+  /**
+   * @param strings list of strings
+   * @return canonical unmodifiable list with the same elements
+   */
+  public final static List<String> strings(List<String> strings) {
+    return LISTS.get(String.join("\u0000", strings) + "\u0000" + strings.size(), k -> {
+      List<String> l = new ArrayList<>(strings.size());
+      for (String s : strings)
+        l.add(string(s));
+      return unmodifiableList(l);
+    });
+  }
+
+  /**
+   * @param layout layout
+   * @return canonical single-element list
+   */
+  public final static List<Layout> layouts(Layout layout) {
+    return LAYOUTS.computeIfAbsent(layout, l -> singletonList(l));
+  }
+
+  /**
+   * Drop every pooled value. Values already handed out stay valid.
+   */
+  public final static void clear() {
+    STRINGS.map.clear();
+    URLS.map.clear();
+    URIS.map.clear();
+    LISTS.map.clear();
+  }
+
+  private final static class Pool<T> {
+    private final Map<String, T> map = new ConcurrentHashMap<>();
+
+    private T get(String key, Function<String, T> create) {
+      T t = map.get(key);
+      if (t == null) {
+        if (map.size() >= MAX_ENTRIES)
+          map.clear();
+        t = map.computeIfAbsent(key, create);
+      }
+      return t;
+    }
+  }
+}
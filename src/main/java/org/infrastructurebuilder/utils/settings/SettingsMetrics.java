@@ -0,0 +1,191 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide instrumentation hub for settings resolution, decryption and access.
+ *
+ * Components report through the static methods here, which fan out to every registered
+ * {@link SettingsMetricsListener}. With no listener registered each call site costs one volatile read and takes no
+ * timestamps. {@link #registerMBean()} adds a listener that publishes the totals over JMX; setting the system property
+ * {@value #JMX_PROPERTY} to {@code true} does so when this class is loaded.
+ */
+public final class SettingsMetrics {
+  public final static Logger log = LoggerFactory.getLogger(SettingsMetrics.class);
+  public final static String OBJECT_NAME = "org.infrastructurebuilder.utils.settings:type=SettingsMetrics";
+  public final static String JMX_PROPERTY = "org.infrastructurebuilder.settings.jmx";
+
+  public enum Phase {
+    /** Locating the user and global settings files */
+    DISCOVERY,
+    /** Parsing the settings files */
+    READ,
+    /** Validating the parsed settings */
+    VALIDATE,
+    /** Merging and interpolating the parsed settings */
+    INTERPOLATE,
+    /** Converting effective settings to a {@link SettingsProxy} */
+    CONVERSION,
+    /** Decrypting server and proxy secrets */
+    DECRYPTION
+  }
+
+  private final static SettingsMetricsListener[] NONE = new SettingsMetricsListener[0];
+  private static volatile SettingsMetricsListener[] listeners = NONE;
+  private static JmxSettingsMetrics mbean;
+
+  static {
+    if (Boolean.getBoolean(JMX_PROPERTY))
+      registerMBean();
+  }
+
+  private SettingsMetrics() {
+  }
+
+  public final static synchronized void addListener(SettingsMetricsListener l) {
+    SettingsMetricsListener[] next = Arrays.copyOf(listeners, listeners.length + 1);
+    next[listeners.length] = Objects.requireNonNull(l);
+    listeners = next;
+  }
+
+  public final static synchronized void removeListener(SettingsMetricsListener l) {
+    listeners = Arrays.stream(listeners).filter(x -> x != l).toArray(SettingsMetricsListener[]::new);
+  }
+
+  /**
+   * Register the JMX view under {@link #OBJECT_NAME}, once per class loader.
+   *
+   * @return the registered MXBean
+   */
+  public final static synchronized SettingsMetricsMXBean registerMBean() {
+    if (mbean == null) {
+      JmxSettingsMetrics m = new JmxSettingsMetrics();
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      IBException.cet.withTranslation(() -> {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name))
+          server.unregisterMBean(name);
+        server.registerMBean(m, name);
+      });
+      addListener(m);
+      mbean = m;
+    }
+    return mbean;
+  }
+
+  public final static synchronized void unregisterMBean() {
+    if (mbean != null) {
+      removeListener(mbean);
+      mbean = null;
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+      } catch (JMException e) {
+        log.debug("Settings MBean was not registered", e);
+      }
+    }
+  }
+
+  /**
+   * @return true if at least one listener is registered
+   */
+  public final static boolean isEnabled() {
+    return listeners.length != 0;
+  }
+
+  /**
+   * @return start time for {@link #phase(Phase, long)}, or 0 if nothing is listening
+   */
+  public final static long start() {
+    return listeners.length == 0 ? 0L : System.nanoTime();
+  }
+
+  /**
+   * @param phase phase that just completed
+   * @param start value of {@link #start()} taken when it began
+   */
+  public final static void phase(Phase phase, long start) {
+    if (start != 0L)
+      elapsed(phase, System.nanoTime() - start);
+  }
+
+  /**
+   * @param phase phase that completed
+   * @param nanos time already measured for it
+   */
+  public final static void elapsed(Phase phase, long nanos) {
+    if (listeners.length != 0)
+      fire(l -> l.phase(phase, nanos));
+  }
+
+  public final static void problems(int count) {
+    if (count > 0 && listeners.length != 0)
+      fire(l -> l.problems(count));
+  }
+
+  public final static void cacheHit(String cache) {
+    if (listeners.length != 0)
+      fire(l -> l.cacheHit(cache));
+  }
+
+  public final static void cacheMiss(String cache) {
+    if (listeners.length != 0)
+      fire(l -> l.cacheMiss(cache));
+  }
+
+  public final static void reload(boolean success) {
+    if (listeners.length != 0)
+      fire(l -> l.reload(success));
+  }
+
+  /**
+   * Called only where a supplier publishes the settings it serves, so that the gauges follow those settings.
+   *
+   * @param s settings just published
+   */
+  public final static void snapshot(SettingsProxy s) {
+    if (listeners.length != 0)
+      fire(l -> l.snapshot(s.getServers().size(), s.getProfiles().size(), s.getMirrors().size(),
+          s.getProxies().size()));
+  }
+
+  public final static void access() {
+    if (listeners.length != 0)
+      fire(SettingsMetricsListener::access);
+  }
+
+  private final static void fire(Consumer<SettingsMetricsListener> event) {
+    for (SettingsMetricsListener l : listeners)
+      try {
+        event.accept(l);
+      } catch (RuntimeException e) {
+        log.debug("Settings metrics listener failed", e);
+      }
+  }
+}
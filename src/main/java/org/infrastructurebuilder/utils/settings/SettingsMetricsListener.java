@@ -0,0 +1,77 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import org.infrastructurebuilder.utils.settings.SettingsMetrics.Phase;
+
+/**
+ * Receiver for the instrumentation events published through {@link SettingsMetrics}.
+ *
+ * Every method has an empty default, so an implementation only overrides what it records. Callbacks arrive on the
+ * thread doing the work and must be cheap and thread-safe. An exception thrown by a listener is logged and otherwise
+ * ignored.
+ */
+public interface SettingsMetricsListener {
+
+  /**
+   * @param phase phase that completed
+   * @param nanos wall-clock time spent in it
+   */
+  default void phase(Phase phase, long nanos) {
+  }
+
+  /**
+   * @param count number of settings problems reported by one build or decryption
+   */
+  default void problems(int count) {
+  }
+
+  /**
+   * @param cache name of the cache that answered
+   */
+  default void cacheHit(String cache) {
+  }
+
+  /**
+   * @param cache name of the cache that had to compute the value
+   */
+  default void cacheMiss(String cache) {
+  }
+
+  /**
+   * @param success true if a new snapshot was published
+   */
+  default void reload(boolean success) {
+  }
+
+  /**
+   * A supplier published a snapshot of its settings files: a first build, a reload or a load from an on-disk cache.
+   * Derived snapshots, such as decrypted or template-produced ones, and registry entries are not reported.
+   *
+   * @param servers  number of servers
+   * @param profiles number of profiles
+   * @param mirrors  number of mirrors
+   * @param proxies  number of proxies
+   */
+  default void snapshot(int servers, int profiles, int mirrors, int proxies) {
+  }
+
+  /**
+   * A supplier handed out its settings.
+   */
+  default void access() {
+  }
+}
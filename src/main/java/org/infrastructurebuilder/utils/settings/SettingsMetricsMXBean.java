@@ -0,0 +1,62 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+/**
+ * Management interface of the settings metrics, registered under {@link SettingsMetrics#OBJECT_NAME}.
+ *
+ * Times are cumulative nanoseconds since registration or the last {@link #reset()}. The entity counts describe the
+ * snapshot a supplier most recently published; see {@link SettingsMetricsListener#snapshot(int, int, int, int)}.
+ */
+public interface SettingsMetricsMXBean {
+  long getDiscoveryNanos();
+
+  long getReadNanos();
+
+  long getValidateNanos();
+
+  long getInterpolateNanos();
+
+  long getConversionNanos();
+
+  long getDecryptionNanos();
+
+  long getBuilds();
+
+  long getDecryptions();
+
+  long getProblems();
+
+  long getCacheHits();
+
+  long getCacheMisses();
+
+  long getReloads();
+
+  long getFailedReloads();
+
+  long getAccesses();
+
+  int getServers();
+
+  int getProfiles();
+
+  int getMirrors();
+
+  int getProxies();
+
+  void reset();
+}
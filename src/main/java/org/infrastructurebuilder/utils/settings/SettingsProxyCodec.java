@@ -0,0 +1,332 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.ActivationFileProxy;
+import org.infrastructurebuilder.util.ActivationOSProxy;
+import org.infrastructurebuilder.util.ActivationPropertyProxy;
+import org.infrastructurebuilder.util.ActivationProxy;
+import org.infrastructurebuilder.util.ChecksumPolicy;
+import org.infrastructurebuilder.util.Layout;
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.infrastructurebuilder.util.ProfileProxy;
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.infrastructurebuilder.util.RepositoryPolicyProxy;
+import org.infrastructurebuilder.util.RepositoryProxy;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.UpdatePolicy;
+
+/**
+ * Compact binary encoding of a {@link SettingsProxy} tree.
+ *
+ * The encoding is deterministic: profile properties are written in key order, everything else in list order. Strings
+ * are written as length-prefixed UTF-8 so that large server configurations are not limited by
+ * {@link DataOutput#writeUTF(String)}.
+ */
+public final class SettingsProxyCodec {
+  /** Bump whenever the layout below changes; older encodings are then rejected */
+  public final static int FORMAT_VERSION = 1;
+
+  private SettingsProxyCodec() {
+  }
+
+  public final static byte[] toBytes(SettingsProxy s) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    IBException.cet.withTranslation(() -> writeSettings(new DataOutputStream(bos), s));
+    return bos.toByteArray();
+  }
+
+  public final static void writeSettings(DataOutput out, SettingsProxy s) throws IOException {
+    out.writeBoolean(s.isOffline());
+    writeString(out, s.getLocalRepository().toString());
+    writeString(out, s.getModelEncoding().name());
+    out.writeInt(s.getServers().size());
+    for (ServerProxy v : s.getServers())
+      writeServer(out, v);
+    out.writeInt(s.getProfiles().size());
+    for (ProfileProxy v : s.getProfiles())
+      writeProfile(out, v);
+    out.writeInt(s.getMirrors().size());
+    for (MirrorProxy v : s.getMirrors())
+      writeMirror(out, v);
+    writeStrings(out, s.getPluginGroups());
+    out.writeInt(s.getProxies().size());
+    for (ProxyProxy v : s.getProxies())
+      writeProxy(out, v);
+  }
+
+  public final static SettingsProxy readSettings(DataInput in) throws IOException {
+    boolean offline = in.readBoolean();
+    Path localRepository = Paths.get(readString(in));
+    Charset encoding = Charset.forName(readString(in));
+    int n = readCount(in);
+    List<ServerProxy> servers = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i)
+      servers.add(readServer(in));
+    n = readCount(in);
+    List<ProfileProxy> profiles = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i)
+      profiles.add(readProfile(in));
+    n = readCount(in);
+    List<MirrorProxy> mirrors = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i)
+      mirrors.add(readMirror(in));
+    List<String> pluginGroups = readStrings(in);
+    n = readCount(in);
+    List<ProxyProxy> proxies = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i)
+      proxies.add(readProxy(in));
+    return new SettingsProxy(offline, localRepository, encoding, servers, profiles, mirrors, pluginGroups, proxies);
+  }
+
+  public final static void writeServer(DataOutput out, ServerProxy s) throws IOException {
+    writeString(out, s.getId());
+    writeOptional(out, s.getUsername());
+    writeOptional(out, s.getPassword());
+    writeOptional(out, s.getPassphrase());
+    writeOptional(out, s.getPrivateKey().map(Path::toString));
+    writeOptional(out, s.getFilePermissions());
+    writeOptional(out, s.getDirectoryPermissions());
+    writeOptional(out, s.getConfiguration());
+  }
+
+  public final static ServerProxy readServer(DataInput in) throws IOException {
+    return new ServerProxy(readString(in), readOptional(in), readOptional(in), readOptional(in),
+        readOptional(in).map(Paths::get), readOptional(in), readOptional(in), readOptional(in));
+  }
+
+  public final static void writeProfile(DataOutput out, ProfileProxy p) throws IOException {
+    writeString(out, p.getId());
+    out.writeBoolean(p.isActive());
+    out.writeBoolean(p.getActivation().isPresent());
+    if (p.getActivation().isPresent())
+      writeActivation(out, p.getActivation().get());
+    writeRepositories(out, p.getPluginRepositories());
+    Properties props = p.getProperties();
+    TreeSet<String> keys = new TreeSet<>(props.stringPropertyNames());
+    out.writeInt(keys.size());
+    for (String k : keys) {
+      writeString(out, k);
+      writeString(out, props.getProperty(k));
+    }
+    writeRepositories(out, p.getRepositories());
+  }
+
+  public final static ProfileProxy readProfile(DataInput in) throws IOException {
+    String id = readString(in);
+    boolean active = in.readBoolean();
+    Optional<ActivationProxy> activation = in.readBoolean() ? Optional.of(readActivation(in)) : Optional.empty();
+    List<RepositoryProxy> pluginRepositories = readRepositories(in);
+    Properties props = new Properties();
+    int n = readCount(in);
+    for (int i = 0; i < n; ++i)
+      props.setProperty(readString(in), readString(in));
+    return new ProfileProxy(id, active, activation, pluginRepositories, props, readRepositories(in));
+  }
+
+  public final static void writeMirror(DataOutput out, MirrorProxy m) throws IOException {
+    writeString(out, m.getId());
+    writeString(out, m.getLayout().name());
+    writeStrings(out, m.getMirrorOf());
+    out.writeInt(m.getMirrorOfLayouts().size());
+    for (Layout l : m.getMirrorOfLayouts())
+      writeString(out, l.name());
+    writeOptional(out, m.getName());
+    writeString(out, m.getUrl().toExternalForm());
+  }
+
+  public final static MirrorProxy readMirror(DataInput in) throws IOException {
+    String id = SettingsInterner.string(readString(in));
+    Layout layout = Layout.valueOf(readString(in));
+    List<String> mirrorOf = SettingsInterner.strings(readStrings(in));
+    int n = readCount(in);
+    List<Layout> layouts = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i)
+      layouts.add(Layout.valueOf(readString(in)));
+    if (n == 1)
+      layouts = SettingsInterner.layouts(layouts.get(0));
+    Optional<String> name = readOptional(in).map(SettingsInterner::string);
+    return new MirrorProxy(id, layout, mirrorOf, layouts, name, SettingsInterner.url(readString(in)));
+  }
+
+  public final static void writeProxy(DataOutput out, ProxyProxy p) throws IOException {
+    writeString(out, p.getId());
+    writeString(out, p.getHost());
+    writeStrings(out, p.getNonProxyHosts());
+    writeOptional(out, p.getPassword());
+    out.writeInt(p.getPort());
+    writeString(out, p.getProtocol());
+    writeOptional(out, p.getUsername());
+    out.writeBoolean(p.isActive());
+  }
+
+  public final static ProxyProxy readProxy(DataInput in) throws IOException {
+    return new ProxyProxy(readString(in), readString(in), readStrings(in), readOptional(in), in.readInt(),
+        readString(in), readOptional(in), in.readBoolean());
+  }
+
+  private final static void writeActivation(DataOutput out, ActivationProxy a) throws IOException {
+    out.writeBoolean(a.isActiveByDefault());
+    out.writeBoolean(a.getFile().isPresent());
+    if (a.getFile().isPresent()) {
+      writeOptional(out, a.getFile().get().getExists().map(Path::toString));
+      writeOptional(out, a.getFile().get().getMissing().map(Path::toString));
+    }
+    writeOptional(out, a.getJdk());
+    out.writeBoolean(a.getOs().isPresent());
+    if (a.getOs().isPresent()) {
+      ActivationOSProxy os = a.getOs().get();
+      writeOptional(out, os.getArch());
+      writeOptional(out, os.getFamily());
+      writeOptional(out, os.getName());
+      writeOptional(out, os.getVersion());
+    }
+    out.writeBoolean(a.getProperty().isPresent());
+    if (a.getProperty().isPresent()) {
+      writeString(out, a.getProperty().get().getName());
+      writeOptional(out, a.getProperty().get().getValue());
+    }
+  }
+
+  private final static ActivationProxy readActivation(DataInput in) throws IOException {
+    boolean activeByDefault = in.readBoolean();
+    Optional<ActivationFileProxy> file = in.readBoolean()
+        ? Optional.of(new ActivationFileProxy(readOptional(in).map(Paths::get), readOptional(in).map(Paths::get)))
+        : Optional.empty();
+    Optional<String> jdk = readOptional(in);
+    Optional<ActivationOSProxy> os = in.readBoolean()
+        ? Optional.of(new ActivationOSProxy(readOptional(in), readOptional(in), readOptional(in), readOptional(in)))
+        : Optional.empty();
+    Optional<ActivationPropertyProxy> property = in.readBoolean()
+        ? Optional.of(new ActivationPropertyProxy(readString(in), readOptional(in)))
+        : Optional.empty();
+    return new ActivationProxy(activeByDefault, file, jdk, os, property);
+  }
+
+  private final static void writeRepositories(DataOutput out, List<RepositoryProxy> repos) throws IOException {
+    out.writeInt(repos.size());
+    for (RepositoryProxy r : repos) {
+      writeString(out, r.getId());
+      writeString(out, r.getLayout().name());
+      writeOptional(out, r.getName());
+      writeString(out, r.getUrl().toExternalForm());
+      writePolicy(out, r.getReleases());
+      writePolicy(out, r.getSnapshots());
+    }
+  }
+
+  private final static List<RepositoryProxy> readRepositories(DataInput in) throws IOException {
+    int n = readCount(in);
+    List<RepositoryProxy> l = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i)
+      l.add(new RepositoryProxy(SettingsInterner.string(readString(in)), Layout.valueOf(readString(in)),
+          readOptional(in).map(SettingsInterner::string), SettingsInterner.url(readString(in)), readPolicy(in),
+          readPolicy(in)));
+    return l;
+  }
+
+  private final static void writePolicy(DataOutput out, Optional<RepositoryPolicyProxy> p) throws IOException {
+    out.writeBoolean(p.isPresent());
+    if (p.isPresent()) {
+      out.writeBoolean(p.get().isEnabled());
+      writeString(out, p.get().getChecksumPolicy().name());
+      writeString(out, p.get().getUpdatePolicy().name());
+      out.writeInt(p.get().getInterval());
+    }
+  }
+
+  private final static Optional<RepositoryPolicyProxy> readPolicy(DataInput in) throws IOException {
+    if (!in.readBoolean())
+      return Optional.empty();
+    return Optional.of(new RepositoryPolicyProxy(in.readBoolean(), ChecksumPolicy.valueOf(readString(in)),
+        UpdatePolicy.valueOf(readString(in)), in.readInt()));
+  }
+
+  private final static void writeStrings(DataOutput out, List<String> l) throws IOException {
+    out.writeInt(l.size());
+    for (String s : l)
+      writeString(out, s);
+  }
+
+  private final static List<String> readStrings(DataInput in) throws IOException {
+    int n = readCount(in);
+    List<String> l = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i)
+      l.add(readString(in));
+    return l;
+  }
+
+  private final static void writeOptional(DataOutput out, Optional<String> s) throws IOException {
+    writeString(out, s.orElse(null));
+  }
+
+  private final static Optional<String> readOptional(DataInput in) throws IOException {
+    return Optional.ofNullable(readString(in));
+  }
+
+  final static void writeString(DataOutput out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] b = s.getBytes(UTF_8);
+    out.writeInt(b.length);
+    out.write(b);
+  }
+
+  final static String readString(DataInput in) throws IOException {
+    int len = in.readInt();
+    if (len == -1)
+      return null;
+    byte[] b = new byte[checkLength(in, len)];
+    in.readFully(b);
+    return new String(b, UTF_8);
+  }
+
+  private final static int readCount(DataInput in) throws IOException {
+    return checkLength(in, in.readInt());
+  }
+
+  /**
+   * Every counted element and every string byte takes at least one byte of input, so a negative value or one larger
+   * than what is left in a stream can only come from corrupt data. Rejecting it here turns a damaged file into an
+   * {@link IOException} instead of a huge allocation.
+   */
+  private final static int checkLength(DataInput in, int n) throws IOException {
+    if (n < 0 || in instanceof InputStream && n > ((InputStream) in).available())
+      throw new IOException("Corrupt length " + n);
+    return n;
+  }
+}
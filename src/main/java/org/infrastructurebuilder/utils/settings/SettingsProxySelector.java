@@ -0,0 +1,117 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableMap;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ProxySelector} backed by the {@code <proxies>} of a settings snapshot.
+ *
+ * As in Maven, the first active proxy for a protocol wins. An {@code https} URI with no {@code https} proxy uses the
+ * {@code http} one. Everything is resolved when the selector is built, so {@link #select(URI)} does no allocation for
+ * lower-case schemes: it returns one of a few precomputed, immutable lists.
+ */
+public final class SettingsProxySelector extends ProxySelector {
+  public final static Logger log = LoggerFactory.getLogger(SettingsProxySelector.class);
+  public final static List<Proxy> DIRECT = singletonList(Proxy.NO_PROXY);
+
+  private final Map<String, Route> routes;
+
+  public final static SettingsProxySelector of(List<ProxyProxy> proxies) {
+    return new SettingsProxySelector(Objects.requireNonNull(proxies));
+  }
+
+  private SettingsProxySelector(List<ProxyProxy> proxies) {
+    Map<String, Route> m = new HashMap<>();
+    for (ProxyProxy p : proxies)
+      if (p.isActive())
+        m.putIfAbsent(p.getProtocol().toLowerCase(Locale.ROOT), new Route(p));
+    if (!m.containsKey("https") && m.containsKey("http"))
+      m.put("https", m.get("http"));
+    this.routes = unmodifiableMap(m);
+  }
+
+  /**
+   * @param protocol URI scheme
+   * @return the settings proxy that applies to the protocol, if any
+   */
+  public Optional<ProxyProxy> getProxyFor(String protocol) {
+    return Optional.ofNullable(route(protocol)).map(r -> r.source);
+  }
+
+  /**
+   * @param uri target
+   * @return the settings proxy to use for the target, or empty if it should be reached directly
+   */
+  public Optional<ProxyProxy> proxyFor(URI uri) {
+    Route r = route(Objects.requireNonNull(uri).getScheme());
+    return r == null || r.bypass.matches(uri.getHost()) ? Optional.empty() : Optional.of(r.source);
+  }
+
+  @Override
+  public List<Proxy> select(URI uri) {
+    if (uri == null)
+      throw new IllegalArgumentException("uri");
+    Route r = route(uri.getScheme());
+    if (r == null || r.bypass.matches(uri.getHost()))
+      return DIRECT;
+    return r.proxies;
+  }
+
+  @Override
+  public void connectFailed(URI uri, SocketAddress sa, IOException ioe) {
+    log.debug("Proxy " + sa + " failed for " + uri, ioe);
+  }
+
+  private Route route(String scheme) {
+    if (scheme == null)
+      return null;
+    Route r = routes.get(scheme);
+    return r != null ? r : routes.get(scheme.toLowerCase(Locale.ROOT));
+  }
+
+  private final static class Route {
+    private final ProxyProxy source;
+    private final List<Proxy> proxies;
+    private final NonProxyHostsMatcher bypass;
+
+    private Route(ProxyProxy p) {
+      this.source = p;
+      Proxy.Type type = p.getProtocol().toLowerCase(Locale.ROOT).startsWith("socks") ? Proxy.Type.SOCKS
+          : Proxy.Type.HTTP;
+      this.proxies = singletonList(new Proxy(type, InetSocketAddress.createUnresolved(p.getHost(), p.getPort())));
+      this.bypass = NonProxyHostsMatcher.compile(p.getNonProxyHosts());
+    }
+  }
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.getEffectiveSettingsForRequest;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.requestFor;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.snapshotOf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared source of settings snapshots for many (user file, global file, properties) combinations in one JVM.
+ *
+ * Concurrent requests for the same key wait for a single build. Finished snapshots are kept in an LRU whose total
+ * weight, the combined size in bytes of each entry's two settings files, is bounded by {@link #getMaxWeight()}. An
+ * entry is rebuilt when the modification time or size of either file differs from what it was built from. Those file
+ * attributes are read at most once per {@link #getCheckInterval()} for each entry, so a lookup in between costs no
+ * system call; a change becomes visible within that interval, or at once after {@link #invalidate(Key)}. All methods
+ * are safe to call from any thread.
+ */
+@Named("registry")
+public class SettingsRegistry {
+  public final static Logger log = LoggerFactory.getLogger(SettingsRegistry.class);
+  public final static long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+  public final static Duration DEFAULT_CHECK_INTERVAL = Duration.ofSeconds(1);
+  public final static String CACHE_NAME = "settings-registry";
+
+  private final SettingsBuilder settingsBuilder;
+  private final long maxWeight;
+  private final Duration checkInterval;
+  private final long checkIntervalNanos;
+  private final Map<Key, CompletableFuture<Entry>> inflight = new ConcurrentHashMap<>();
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long weight;
+
+  @Inject
+  public SettingsRegistry(SettingsBuilder settingsBuilder) {
+    this(settingsBuilder, DEFAULT_MAX_WEIGHT);
+  }
+
+  public SettingsRegistry(SettingsBuilder settingsBuilder, long maxWeight) {
+    this(settingsBuilder, maxWeight, DEFAULT_CHECK_INTERVAL);
+  }
+
+  /**
+   * @param settingsBuilder builder
+   * @param maxWeight       bound on the combined size of the cached entries' settings files
+   * @param checkInterval   how long a snapshot is served before its files are checked again; zero checks on every
+   *                        lookup
+   */
+  public SettingsRegistry(SettingsBuilder settingsBuilder, long maxWeight, Duration checkInterval) {
+    this.settingsBuilder = Objects.requireNonNull(settingsBuilder);
+    if (maxWeight < 1)
+      throw new IllegalArgumentException("maxWeight must be positive");
+    this.maxWeight = maxWeight;
+    if (Objects.requireNonNull(checkInterval).isNegative())
+      throw new IllegalArgumentException("checkInterval must not be negative");
+    this.checkInterval = checkInterval;
+    this.checkIntervalNanos = checkInterval.toNanos();
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public Duration getCheckInterval() {
+    return checkInterval;
+  }
+
+  public SettingsProxy get(Path userSettings, Path globalSettings, Properties systemProperties) {
+    return getSnapshot(Key.of(userSettings, globalSettings, systemProperties)).getSettings();
+  }
+
+  public SettingsSnapshot getSnapshot(Path userSettings, Path globalSettings, Properties systemProperties) {
+    return getSnapshot(Key.of(userSettings, globalSettings, systemProperties));
+  }
+
+  /**
+   * @param key settings files and properties
+   * @return a current snapshot for the key, built at most once however many threads ask at the same time
+   * @throws RuntimeException if the build fails; every waiting caller sees the same failure and nothing is cached
+   */
+  public SettingsSnapshot getSnapshot(Key key) {
+    Entry e = current(key);
+    if (e != null) {
+      SettingsMetrics.cacheHit(CACHE_NAME);
+      return e.snapshot;
+    }
+    CompletableFuture<Entry> mine = new CompletableFuture<>();
+    CompletableFuture<Entry> theirs = inflight.putIfAbsent(key, mine);
+    if (theirs != null)
+      return join(theirs).snapshot;
+    try {
+      e = current(key); // A build may have finished since the first look
+      if (e == null) {
+        SettingsMetrics.cacheMiss(CACHE_NAME);
+        e = build(key);
+        put(key, e);
+      }
+      mine.complete(e);
+      return e.snapshot;
+    } catch (RuntimeException ex) {
+      mine.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inflight.remove(key, mine);
+    }
+  }
+
+  public void invalidate(Key key) {
+    synchronized (entries) {
+      Entry e = entries.remove(key);
+      if (e != null)
+        weight -= e.weight;
+    }
+  }
+
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+      weight = 0;
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getWeight() {
+    synchronized (entries) {
+      return weight;
+    }
+  }
+
+  private Entry current(Key key) {
+    Entry e;
+    synchronized (entries) {
+      e = entries.get(key);
+    }
+    return e != null && e.isCurrent(checkIntervalNanos) ? e : null;
+  }
+
+  private Entry build(Key key) {
+    long checkedAt = System.nanoTime();
+    long[] stamps = stamps(key); // Taken first, so a change during the build is seen on the next check
+    SettingsSnapshot s = snapshotOf(getEffectiveSettingsForRequest.apply(settingsBuilder,
+        requestFor(key.userSettings, key.globalSettings, key.toProperties())));
+    return new Entry(key, s, stamps, checkedAt);
+  }
+
+  private void put(Key key, Entry e) {
+    synchronized (entries) {
+      Entry old = entries.put(key, e);
+      weight += e.weight - (old == null ? 0 : old.weight);
+      Iterator<Entry> i = entries.values().iterator();
+      while (weight > maxWeight && entries.size() > 1 && i.hasNext()) {
+        Entry eldest = i.next();
+        if (eldest == e)
+          continue;
+        i.remove();
+        weight -= eldest.weight;
+        log.debug("Evicted settings for " + eldest.key);
+      }
+    }
+  }
+
+  private final static Entry join(CompletableFuture<Entry> f) {
+    try {
+      return f.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw e;
+    }
+  }
+
+  private final static long[] stamps(Key key) {
+    return new long[] { mtime(key.userSettings), size(key.userSettings), mtime(key.globalSettings),
+        size(key.globalSettings) };
+  }
+
+  private final static long mtime(Path p) {
+    try {
+      return Files.getLastModifiedTime(p).toMillis();
+    } catch (IOException e) {
+      return -1L;
+    }
+  }
+
+  private final static long size(Path p) {
+    try {
+      return Files.size(p);
+    } catch (IOException e) {
+      return -1L;
+    }
+  }
+
+  private final static class Entry {
+    private final Key key;
+    private final SettingsSnapshot snapshot;
+    private final long[] stamps;
+    private final long weight;
+    private volatile long checkedAt;
+
+    private Entry(Key key, SettingsSnapshot snapshot, long[] stamps, long checkedAt) {
+      this.key = key;
+      this.snapshot = snapshot;
+      this.stamps = stamps;
+      this.weight = Math.max(1L, Math.max(0L, stamps[1]) + Math.max(0L, stamps[3]));
+      this.checkedAt = checkedAt;
+    }
+
+    /**
+     * Racing threads may both check once the interval has passed; either answer is correct.
+     */
+    private boolean isCurrent(long intervalNanos) {
+      long now = System.nanoTime();
+      if (now - checkedAt < intervalNanos)
+        return true;
+      if (!Arrays.equals(stamps, stamps(key)))
+        return false;
+      checkedAt = now;
+      return true;
+    }
+  }
+
+  /**
+   * Identity of one settings build: both files, by absolute path, and the system properties by value.
+   */
+  public final static class Key {
+    private final Path userSettings;
+    private final Path globalSettings;
+    private final SortedMap<String, String> properties;
+    private final int hash;
+
+    public final static Key of(Path userSettings, Path globalSettings, Properties systemProperties) {
+      return new Key(userSettings, globalSettings, systemProperties);
+    }
+
+    private Key(Path userSettings, Path globalSettings, Properties systemProperties) {
+      this.userSettings = Objects.requireNonNull(userSettings).toAbsolutePath().normalize();
+      this.globalSettings = Objects.requireNonNull(globalSettings).toAbsolutePath().normalize();
+      TreeMap<String, String> m = new TreeMap<>();
+      for (String k : Objects.requireNonNull(systemProperties).stringPropertyNames())
+        m.put(k, systemProperties.getProperty(k));
+      this.properties = m;
+      this.hash = Objects.hash(this.userSettings, this.globalSettings, m);
+    }
+
+    public Path getUserSettings() {
+      return userSettings;
+    }
+
+    public Path getGlobalSettings() {
+      return globalSettings;
+    }
+
+    private Properties toProperties() {
+      Properties p = new Properties();
+      p.putAll(properties);
+      return p;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof Key))
+        return false;
+      Key o = (Key) obj;
+      return hash == o.hash && userSettings.equals(o.userSettings) && globalSettings.equals(o.globalSettings)
+          && properties.equals(o.properties);
+    }
+
+    @Override
+    public String toString() {
+      return userSettings + " + " + globalSettings + " " + properties.keySet();
+    }
+  }
+}
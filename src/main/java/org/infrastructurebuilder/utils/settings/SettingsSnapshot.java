@@ -0,0 +1,130 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.infrastructurebuilder.util.SettingsProxy;
+
+/**
+ * One immutable {@link SettingsProxy} together with the lookup structures derived from it.
+ *
+ * Derived views are computed on first use and then shared by every reader of the snapshot. A new snapshot, for
+ * example after a reload, starts with none of them built.
+ */
+public final class SettingsSnapshot {
+  private final SettingsProxy settings;
+  private final Lazy<SettingsIndex> index;
+  private final Lazy<SettingsProxySelector> proxySelector;
+  private final Lazy<MirrorRouter> mirrorRouter;
+  private final Lazy<CredentialsResolver> credentialsResolver;
+  private final Lazy<SettingsFingerprint> fingerprint;
+  private final Lazy<ActivationEnvironment> environment;
+  private final Lazy<EffectiveProfiles> effectiveProfiles;
+  private final Map<String, Optional<ServerConfiguration>> configurations = new ConcurrentHashMap<>();
+
+  public final static SettingsSnapshot of(SettingsProxy settings) {
+    return new SettingsSnapshot(settings);
+  }
+
+  private SettingsSnapshot(SettingsProxy settings) {
+    this.settings = Objects.requireNonNull(settings);
+    this.index = new Lazy<>(() -> SettingsIndex.of(settings));
+    this.proxySelector = new Lazy<>(() -> SettingsProxySelector.of(settings.getProxies()));
+    this.mirrorRouter = new Lazy<>(() -> MirrorRouter.of(settings.getMirrors()));
+    this.credentialsResolver = new Lazy<>(() -> CredentialsResolver.of(this));
+    this.fingerprint = new Lazy<>(() -> SettingsFingerprint.of(settings));
+    this.environment = new Lazy<>(ActivationEnvironment::current);
+    this.effectiveProfiles = new Lazy<>(() -> ProfileActivator.evaluate(settings.getProfiles(), getEnvironment()));
+  }
+
+  public SettingsProxy getSettings() {
+    return settings;
+  }
+
+  /**
+   * @return id-keyed index of servers, mirrors, profiles and proxies
+   */
+  public SettingsIndex getIndex() {
+    return index.get();
+  }
+
+  /**
+   * @return proxy selector for the active proxies, with compiled {@code nonProxyHosts}
+   */
+  public SettingsProxySelector getProxySelector() {
+    return proxySelector.get();
+  }
+
+  /**
+   * @return mirror routing table compiled from the {@code mirrorOf} patterns
+   */
+  public MirrorRouter getMirrorRouter() {
+    return mirrorRouter.get();
+  }
+
+  /**
+   * @return URI to location, credentials and proxy resolver for the profiles active in {@link #getEnvironment()}
+   */
+  public CredentialsResolver getCredentialsResolver() {
+    return credentialsResolver.get();
+  }
+
+  /**
+   * @return SHA-256 fingerprints of the settings and of each server, mirror, proxy and profile
+   */
+  public SettingsFingerprint getFingerprint() {
+    return fingerprint.get();
+  }
+
+  /**
+   * @param serverId server id
+   * @return the server's {@code <configuration>} as a tree, parsed at most once per snapshot
+   */
+  public Optional<ServerConfiguration> getServerConfiguration(String serverId) {
+    return configurations.computeIfAbsent(serverId, id -> getIndex().getServer(id)
+        .flatMap(s -> s.getConfiguration()).map(ServerConfiguration::parse));
+  }
+
+  /**
+   * @return this JVM's properties and file-existence answers, captured on first use and kept for this snapshot only
+   */
+  public ActivationEnvironment getEnvironment() {
+    return environment.get();
+  }
+
+  /**
+   * @return profiles active in {@link #getEnvironment()}, evaluated at most once per snapshot
+   */
+  public EffectiveProfiles getEffectiveProfiles() {
+    return effectiveProfiles.get();
+  }
+
+  /**
+   * Only {@link #getEnvironment()} is memoized. Other environments are evaluated on every call, since each one
+   * freezes its own view of the file system and remembering them would grow the snapshot without bound.
+   *
+   * @param env environment to evaluate activation against
+   * @return active profiles and merged properties and repositories
+   */
+  public EffectiveProfiles getEffectiveProfiles(ActivationEnvironment env) {
+    return env == getEnvironment() ? getEffectiveProfiles()
+        : ProfileActivator.evaluate(settings.getProfiles(), env);
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of finished {@link SettingsProxy} snapshots, keyed by a SHA-256 of every input that can change the
+ * effective settings: the content of both settings files, their locations, the system properties and the
+ * environment variables the files reference as {@code ${env.NAME}}. The rest of the environment is left out, because
+ * entries such as {@code PWD} or {@code SHLVL} change between invocations without affecting the settings.
+ *
+ * An entry is the checksummed header shared with {@link MappedSettingsSnapshot} (magic "IBSS") followed by the key
+ * and the {@link SettingsProxyCodec} encoding of the settings. It is only decoded once the length and checksum match,
+ * so a truncated or damaged entry is discarded and the settings are built normally. Entries are written atomically
+ * with owner-only permissions where the file system supports them.
+ */
+public final class SettingsSnapshotCache {
+  public final static Logger log = LoggerFactory.getLogger(SettingsSnapshotCache.class);
+  public final static String SUFFIX = ".ibsettings";
+  public final static int DEFAULT_MAX_ENTRIES = 8;
+
+  private final static int MAGIC = 0x49425353; // "IBSS"
+  /** Bump whenever the entry body changes; older entries are then discarded and rebuilt */
+  private final static int LAYOUT_VERSION = 3;
+
+  private final Path directory;
+  private final int maxEntries;
+
+  public SettingsSnapshotCache(Path directory) {
+    this(directory, DEFAULT_MAX_ENTRIES);
+  }
+
+  public SettingsSnapshotCache(Path directory, int maxEntries) {
+    this.directory = Objects.requireNonNull(directory).toAbsolutePath();
+    if (maxEntries < 1)
+      throw new IllegalArgumentException("maxEntries must be positive");
+    this.maxEntries = maxEntries;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Compute the cache key for a build.
+   *
+   * @param userSettings     user settings file
+   * @param globalSettings   global settings file
+   * @param systemProperties properties handed to the settings builder
+   * @param environment      environment visible to interpolation; only the names the files reference are used
+   * @return hex SHA-256 of all inputs
+   */
+  public final static String keyFor(Path userSettings, Path globalSettings, Properties systemProperties,
+      Map<String, String> environment) {
+    return SettingsCacheFiles.keyFor(userSettings, globalSettings, systemProperties, environment);
+  }
+
+  /**
+   * @param key value from {@link #keyFor(Path, Path, Properties, Map)}
+   * @return the cached snapshot, or empty on a miss or an unreadable entry (which is then removed)
+   */
+  public Optional<SettingsProxy> read(String key) {
+    Path p = entry(key);
+    if (!Files.isRegularFile(p))
+      return Optional.empty();
+    try {
+      ByteBuffer body = SettingsCacheFiles.unframe(ByteBuffer.wrap(Files.readAllBytes(p)), MAGIC, LAYOUT_VERSION);
+      DataInputStream in = new DataInputStream(SettingsCacheFiles.input(body));
+      if (!key.equals(SettingsProxyCodec.readString(in)))
+        throw new IOException("Cache entry is for different settings");
+      SettingsProxy s = SettingsProxyCodec.readSettings(in);
+      if (in.available() != 0)
+        throw new IOException("Trailing data in cache entry");
+      return Optional.of(s);
+    } catch (IOException | RuntimeException e) {
+      log.debug("Discarding settings cache entry " + p, e);
+      IBException.cet.withTranslation(() -> Files.deleteIfExists(p));
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Store a snapshot. Failures are logged and otherwise ignored; the cache is only an optimization.
+   *
+   * @param key value from {@link #keyFor(Path, Path, Properties, Map)}
+   * @param s   snapshot to store
+   */
+  public void write(String key, SettingsProxy s) {
+    Path target = entry(key);
+    byte[] body = IBException.cet.withReturningTranslation(() -> {
+      ByteArrayOutputStream b = new ByteArrayOutputStream(4096);
+      DataOutputStream out = new DataOutputStream(b);
+      SettingsProxyCodec.writeString(out, key);
+      SettingsProxyCodec.writeSettings(out, s);
+      out.flush();
+      return b.toByteArray();
+    });
+    if (SettingsCacheFiles.write(target, SettingsCacheFiles.frame(MAGIC, LAYOUT_VERSION, body)))
+      try {
+        prune(target);
+      } catch (IOException | RuntimeException e) {
+        log.warn("Unable to prune settings cache " + directory, e);
+      }
+  }
+
+  private Path entry(String key) {
+    return directory.resolve(key + SUFFIX);
+  }
+
+  private void prune(Path keep) throws IOException {
+    List<Path> entries;
+    try (Stream<Path> s = Files.list(directory)) {
+      entries = s.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).filter(p -> !p.equals(keep))
+          .sorted(Comparator.comparing((Path p) -> p.toFile().lastModified()).reversed()).collect(Collectors.toList());
+    }
+    for (Path p : entries.subList(Math.min(entries.size(), maxEntries - 1), entries.size()))
+      Files.deleteIfExists(p);
+  }
+}
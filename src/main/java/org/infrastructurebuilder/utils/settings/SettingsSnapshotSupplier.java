@@ -0,0 +1,37 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.SettingsSupplier;
+
+/**
+ * {@link SettingsSupplier} that hands out the whole {@link SettingsSnapshot}, including the views derived from it,
+ * rather than only the {@link SettingsProxy}.
+ */
+public interface SettingsSnapshotSupplier extends SettingsSupplier {
+
+  /**
+   * @return current snapshot
+   */
+  SettingsSnapshot getSnapshot();
+
+  @Override
+  default SettingsProxy get() {
+    SettingsMetrics.access();
+    return getSnapshot().getSettings();
+  }
+}
@@ -0,0 +1,390 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Optional.ofNullable;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.apache.maven.settings.Activation;
+import org.apache.maven.settings.Mirror;
+import org.apache.maven.settings.Profile;
+import org.apache.maven.settings.Proxy;
+import org.apache.maven.settings.Repository;
+import org.apache.maven.settings.RepositoryPolicy;
+import org.apache.maven.settings.Server;
+import org.apache.maven.settings.Settings;
+import org.apache.maven.settings.TrackableBase;
+import org.apache.maven.settings.building.SettingsProblem.Severity;
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.SettingsParseException;
+import org.apache.maven.settings.io.SettingsReader;
+import org.apache.maven.settings.merge.MavenSettingsMerger;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.apache.maven.settings.validation.SettingsValidator;
+import org.codehaus.plexus.interpolation.EnvarBasedValueSource;
+import org.codehaus.plexus.interpolation.InterpolationException;
+import org.codehaus.plexus.interpolation.RegexBasedInterpolator;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.infrastructurebuilder.util.ProfileProxy;
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.utils.settings.SettingsMetrics.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * User and global settings read, validated and merged once, then interpolated any number of times with different
+ * properties.
+ *
+ * {@code DefaultSettingsBuilder} merges before it interpolates, so the merged but uninterpolated model is an exact
+ * template. When the template is built, every server, mirror, proxy and profile is checked for {@code ${...}}
+ * expressions. The entities without any are converted to proxies once and the same instances appear in every
+ * {@link SettingsProxy} this template produces; only the entities that contain expressions are copied, interpolated
+ * and converted again for each property set. A template with no expressions at all returns one shared
+ * {@link SettingsProxy}.
+ *
+ * Values are interpolated from the user properties, then the system properties, then the environment captured when
+ * the template was built, exactly as {@link StreamingSettingsReader} does it.
+ */
+public final class SettingsTemplate {
+  public final static Logger log = LoggerFactory.getLogger(SettingsTemplate.class);
+
+  private final EnvarBasedValueSource env;
+  private final String localRepository;
+  private final boolean offline;
+  private final Charset modelEncoding;
+  private final List<String> activeProfiles;
+  private final List<String> pluginGroups;
+  private final boolean dynamicSettings;
+  private final List<Entry<Server, ServerProxy>> servers;
+  private final List<Entry<Mirror, MirrorProxy>> mirrors;
+  private final List<Entry<Proxy, ProxyProxy>> proxies;
+  private final List<Entry<Profile, ProfileProxy>> profiles;
+  private final Lazy<SettingsProxy> shared;
+  private final int dynamicEntities;
+
+  /**
+   * @param userSettings   user settings file, dominant in the merge
+   * @param globalSettings global settings file
+   * @return template; a file that does not exist contributes nothing
+   * @throws RuntimeException if a file cannot be read or fails validation
+   */
+  public final static SettingsTemplate of(Path userSettings, Path globalSettings) {
+    return of(new DefaultSettingsReader(), new DefaultSettingsValidator(), userSettings, globalSettings);
+  }
+
+  public final static SettingsTemplate of(SettingsReader reader, SettingsValidator validator, Path userSettings,
+      Path globalSettings) {
+    long start = SettingsMetrics.start();
+    List<String> errors = new ArrayList<>();
+    Settings global = read(reader, validator, Objects.requireNonNull(globalSettings), errors);
+    Settings user = read(reader, validator, Objects.requireNonNull(userSettings), errors);
+    SettingsMetrics.phase(Phase.READ, start);
+    if (!errors.isEmpty())
+      throw new RuntimeException("Invalid settings: " + String.join(", ", errors));
+    new MavenSettingsMerger().merge(user, global, TrackableBase.GLOBAL_LEVEL);
+    return new SettingsTemplate(user);
+  }
+
+  private final static Settings read(SettingsReader reader, SettingsValidator validator, Path p,
+      List<String> errors) {
+    if (!Files.exists(p))
+      return new Settings();
+    Settings s;
+    try {
+      s = reader.read(p.toFile(), Collections.singletonMap(SettingsReader.IS_STRICT, Boolean.TRUE));
+    } catch (SettingsParseException e) {
+      log.warn("Non-parseable settings " + p + ": " + e.getMessage());
+      s = IBException.cet.withReturningTranslation(
+          () -> reader.read(p.toFile(), Collections.singletonMap(SettingsReader.IS_STRICT, Boolean.FALSE)));
+    } catch (Exception e) {
+      throw new RuntimeException("Unable to read settings " + p, e);
+    }
+    int before = errors.size();
+    validator.validate(s, (severity, message, line, column, cause) -> {
+      if (severity == Severity.WARNING)
+        log.warn("Problem: " + message + " @ " + p);
+      else
+        errors.add(message + " @ " + p);
+    });
+    SettingsMetrics.problems(errors.size() - before);
+    return s;
+  }
+
+  private SettingsTemplate(Settings s) {
+    this.env = IBException.cet.withReturningTranslation(() -> new EnvarBasedValueSource());
+    this.localRepository = s.getLocalRepository();
+    this.offline = s.isOffline();
+    this.modelEncoding = ofNullable(s.getModelEncoding()).map(Charset::forName)
+        .orElse(StandardCharsets.UTF_8);
+    this.activeProfiles = unmodifiableList(new ArrayList<>(s.getActiveProfiles()));
+    this.pluginGroups = unmodifiableList(new ArrayList<>(s.getPluginGroups()));
+    this.dynamicSettings = hasExpression(localRepository)
+        || activeProfiles.stream().anyMatch(SettingsTemplate::hasExpression)
+        || pluginGroups.stream().anyMatch(SettingsTemplate::hasExpression);
+    Set<String> active = dynamicSettings ? null : new HashSet<>(activeProfiles);
+    this.servers = entries(s.getServers(), SettingsTemplate::interpolateServer,
+        DefaultSettingsSupplier.proxyFromServer);
+    this.mirrors = entries(s.getMirrors(), SettingsTemplate::interpolateMirror,
+        DefaultSettingsSupplier.proxyFromMirror);
+    this.proxies = entries(s.getProxies(), SettingsTemplate::interpolateProxy,
+        DefaultSettingsSupplier.proxyFromProxy);
+    // Whether a profile is active depends on <activeProfiles>, so static profiles are only shared when those are static
+    this.profiles = entries(s.getProfiles(), SettingsTemplate::interpolateProfile,
+        active == null ? null : p -> DefaultSettingsSupplier.proxyFromProfile.apply(active.contains(p.getId()), p));
+    int d = 0;
+    for (List<? extends Entry<?, ?>> l : Arrays.asList(servers, mirrors, proxies, profiles))
+      for (Entry<?, ?> e : l)
+        if (e.shared == null)
+          ++d;
+    this.dynamicEntities = d;
+    this.shared = new Lazy<>(() -> build(v -> v));
+  }
+
+  /**
+   * @return true if nothing in the settings contains an expression, so every property set yields the same settings
+   */
+  public boolean isStatic() {
+    return dynamicEntities == 0 && !dynamicSettings;
+  }
+
+  /**
+   * @return number of servers, mirrors, proxies and profiles rebuilt for each property set
+   */
+  public int getDynamicEntityCount() {
+    return dynamicEntities;
+  }
+
+  /**
+   * @param systemProperties system properties
+   * @return settings interpolated with {@code systemProperties} and no user properties, as
+   *         {@link DefaultSettingsSupplier} builds them
+   */
+  public SettingsProxy apply(Properties systemProperties) {
+    return apply(systemProperties, new Properties());
+  }
+
+  /**
+   * @param systemProperties system properties
+   * @param userProperties   user properties, taking precedence over the system properties
+   * @return interpolated settings sharing every entity that contains no expression
+   */
+  public SettingsProxy apply(Properties systemProperties, Properties userProperties) {
+    if (isStatic())
+      return shared.get();
+    long start = SettingsMetrics.start();
+    RegexBasedInterpolator interpolator = StreamingSettingsReader.interpolator(
+        Objects.requireNonNull(systemProperties), Objects.requireNonNull(userProperties), env);
+    SettingsProxy s = build(v -> {
+      try {
+        return StreamingSettingsReader.interpolate(interpolator, v);
+      } catch (InterpolationException e) {
+        log.warn("Failed to interpolate settings value " + v + ": " + e.getMessage());
+        return v;
+      }
+    });
+    SettingsMetrics.phase(Phase.INTERPOLATE, start);
+    return s;
+  }
+
+  /**
+   * @param systemProperties system properties
+   * @param userProperties   user properties, taking precedence over the system properties
+   * @return new snapshot of {@link #apply(Properties, Properties)}
+   */
+  public SettingsSnapshot snapshot(Properties systemProperties, Properties userProperties) {
+    return SettingsSnapshot.of(apply(systemProperties, userProperties));
+  }
+
+  private SettingsProxy build(UnaryOperator<String> f) {
+    Set<String> active = new HashSet<>();
+    for (String a : activeProfiles)
+      active.add(f.apply(a));
+    List<String> groups = new ArrayList<>(pluginGroups.size());
+    for (String g : pluginGroups)
+      groups.add(f.apply(g));
+    return new SettingsProxy(offline, StreamingSettingsReader.localRepository(ofNullable(localRepository)
+        .map(f).orElse(null)), modelEncoding,
+        resolve(servers, f, DefaultSettingsSupplier.proxyFromServer),
+        resolve(profiles, f, p -> DefaultSettingsSupplier.proxyFromProfile.apply(active.contains(p.getId()), p)),
+        resolve(mirrors, f, DefaultSettingsSupplier.proxyFromMirror), groups,
+        resolve(proxies, f, DefaultSettingsSupplier.proxyFromProxy));
+  }
+
+  private final static <M, P> List<P> resolve(List<Entry<M, P>> entries, UnaryOperator<String> f,
+      Function<M, P> convert) {
+    List<P> l = new ArrayList<>(entries.size());
+    for (Entry<M, P> e : entries)
+      l.add(e.shared != null ? e.shared : convert.apply(e.interpolate.apply(copy(e.raw), f)));
+    return l;
+  }
+
+  @FunctionalInterface
+  private interface Interpolation<M> {
+    /** Replace every string of {@code m} in place with {@code f} applied to it, and return {@code m} */
+    M apply(M m, UnaryOperator<String> f);
+  }
+
+  private final static class Entry<M, P> {
+    private final M raw;
+    private final Interpolation<M> interpolate;
+    /** Converted once if {@link #raw} has no expressions, else null */
+    private final P shared;
+
+    private Entry(M raw, Interpolation<M> interpolate, P shared) {
+      this.raw = raw;
+      this.interpolate = interpolate;
+      this.shared = shared;
+    }
+  }
+
+  private final static <M, P> List<Entry<M, P>> entries(List<M> raw, Interpolation<M> interpolate,
+      Function<M, P> convert) {
+    List<Entry<M, P>> l = new ArrayList<>(raw.size());
+    for (M m : raw) {
+      boolean[] dynamic = new boolean[1];
+      interpolate.apply(m, v -> { // in place with the identity, only to look for expressions
+        dynamic[0] |= hasExpression(v);
+        return v;
+      });
+      l.add(new Entry<>(m, interpolate, dynamic[0] || convert == null ? null : convert.apply(m)));
+    }
+    return unmodifiableList(l);
+  }
+
+  @SuppressWarnings("unchecked")
+  private final static <M> M copy(M m) {
+    if (m instanceof Server)
+      return (M) ((Server) m).clone();
+    if (m instanceof Mirror)
+      return (M) ((Mirror) m).clone();
+    if (m instanceof Proxy)
+      return (M) ((Proxy) m).clone();
+    return (M) ((Profile) m).clone();
+  }
+
+  private final static boolean hasExpression(String v) {
+    return v != null && v.indexOf("${") >= 0;
+  }
+
+  private final static String map(UnaryOperator<String> f, String v) {
+    return v == null ? null : f.apply(v);
+  }
+
+  private final static Server interpolateServer(Server s, UnaryOperator<String> f) {
+    s.setId(map(f, s.getId()));
+    s.setUsername(map(f, s.getUsername()));
+    s.setPassword(map(f, s.getPassword()));
+    s.setPassphrase(map(f, s.getPassphrase()));
+    s.setPrivateKey(map(f, s.getPrivateKey()));
+    s.setFilePermissions(map(f, s.getFilePermissions()));
+    s.setDirectoryPermissions(map(f, s.getDirectoryPermissions()));
+    if (s.getConfiguration() instanceof Xpp3Dom)
+      interpolateDom((Xpp3Dom) s.getConfiguration(), f);
+    return s;
+  }
+
+  private final static void interpolateDom(Xpp3Dom d, UnaryOperator<String> f) {
+    for (String a : d.getAttributeNames())
+      d.setAttribute(a, map(f, d.getAttribute(a)));
+    if (d.getChildCount() == 0)
+      d.setValue(map(f, d.getValue()));
+    for (Xpp3Dom c : d.getChildren())
+      interpolateDom(c, f);
+  }
+
+  private final static Mirror interpolateMirror(Mirror m, UnaryOperator<String> f) {
+    m.setId(map(f, m.getId()));
+    m.setMirrorOf(map(f, m.getMirrorOf()));
+    m.setUrl(map(f, m.getUrl()));
+    m.setLayout(map(f, m.getLayout()));
+    m.setMirrorOfLayouts(map(f, m.getMirrorOfLayouts()));
+    m.setName(map(f, m.getName()));
+    return m;
+  }
+
+  private final static Proxy interpolateProxy(Proxy p, UnaryOperator<String> f) {
+    p.setId(map(f, p.getId()));
+    p.setHost(map(f, p.getHost()));
+    p.setNonProxyHosts(map(f, p.getNonProxyHosts()));
+    p.setProtocol(map(f, p.getProtocol()));
+    p.setUsername(map(f, p.getUsername()));
+    p.setPassword(map(f, p.getPassword()));
+    return p;
+  }
+
+  private final static Profile interpolateProfile(Profile p, UnaryOperator<String> f) {
+    p.setId(map(f, p.getId()));
+    Activation a = p.getActivation();
+    if (a != null) {
+      a.setJdk(map(f, a.getJdk()));
+      if (a.getOs() != null) {
+        a.getOs().setName(map(f, a.getOs().getName()));
+        a.getOs().setFamily(map(f, a.getOs().getFamily()));
+        a.getOs().setArch(map(f, a.getOs().getArch()));
+        a.getOs().setVersion(map(f, a.getOs().getVersion()));
+      }
+      if (a.getProperty() != null) {
+        a.getProperty().setName(map(f, a.getProperty().getName()));
+        a.getProperty().setValue(map(f, a.getProperty().getValue()));
+      }
+      if (a.getFile() != null) {
+        a.getFile().setExists(map(f, a.getFile().getExists()));
+        a.getFile().setMissing(map(f, a.getFile().getMissing()));
+      }
+    }
+    Properties props = p.getProperties();
+    for (Map.Entry<Object, Object> e : props.entrySet())
+      if (e.getValue() instanceof String)
+        e.setValue(map(f, (String) e.getValue()));
+    for (Repository r : p.getRepositories())
+      interpolateRepository(r, f);
+    for (Repository r : p.getPluginRepositories())
+      interpolateRepository(r, f);
+    return p;
+  }
+
+  private final static void interpolateRepository(Repository r, UnaryOperator<String> f) {
+    r.setId(map(f, r.getId()));
+    r.setName(map(f, r.getName()));
+    r.setUrl(map(f, r.getUrl()));
+    r.setLayout(map(f, r.getLayout()));
+    for (RepositoryPolicy rp : Arrays.asList(r.getReleases(), r.getSnapshots()))
+      if (rp != null) {
+        rp.setUpdatePolicy(map(f, rp.getUpdatePolicy()));
+        rp.setChecksumPolicy(map(f, rp.getChecksumPolicy()));
+      }
+  }
+}
@@ -0,0 +1,777 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Optional.ofNullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.apache.maven.settings.Activation;
+import org.apache.maven.settings.ActivationFile;
+import org.apache.maven.settings.ActivationOS;
+import org.apache.maven.settings.ActivationProperty;
+import org.apache.maven.settings.Mirror;
+import org.apache.maven.settings.Profile;
+import org.apache.maven.settings.Proxy;
+import org.apache.maven.settings.Repository;
+import org.apache.maven.settings.RepositoryPolicy;
+import org.codehaus.plexus.interpolation.EnvarBasedValueSource;
+import org.codehaus.plexus.interpolation.InterpolationException;
+import org.codehaus.plexus.interpolation.PropertiesBasedValueSource;
+import org.codehaus.plexus.interpolation.RegexBasedInterpolator;
+import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
+import org.codehaus.plexus.util.xml.XmlStreamReader;
+import org.codehaus.plexus.util.xml.pull.EntityReplacementMap;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.infrastructurebuilder.util.ProfileProxy;
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds a {@link SettingsProxy} from a user and a global settings file in one pull-parsing pass per file, without
+ * materializing the Maven {@code Settings} model, the {@code Xpp3Dom} of any server {@code <configuration>}, or the
+ * serialized copy of the merged settings that {@code DefaultSettingsBuilder} interpolates.
+ *
+ * The result matches {@link DefaultSettingsSupplier} over {@link MyDefaultSettingsBuilder}:
+ * <ul>
+ * <li>text is read with the same parser, entity table and trimming as Maven's own settings reader</li>
+ * <li>the checks of {@code DefaultSettingsValidator} are applied to each file before interpolation</li>
+ * <li>the user file dominates the global file by id, as in {@code MavenSettingsMerger}</li>
+ * <li>every string value is interpolated with {@code ${...}} from the user properties, then the system properties, then
+ * {@code env.*}; as in Maven, a value reached through a nested expression keeps one level of XML escaping per level of
+ * nesting</li>
+ * <li>server configurations are streamed straight into the text {@code Xpp3DomWriter} would have produced</li>
+ * </ul>
+ * Servers, mirrors and proxies become proxies while their element is being read. Profiles are kept until the active
+ * profile ids of both files are known.
+ */
+public final class StreamingSettingsReader {
+  public final static Logger log = LoggerFactory.getLogger(StreamingSettingsReader.class);
+
+  private final static Pattern GROUP_ID = Pattern.compile("[\\w.-]+");
+  private final static String ILLEGAL_REPO_ID_CHARS = "\\/:\"<>|?*";
+
+  private final Properties systemProperties;
+  private final Properties userProperties;
+
+  public StreamingSettingsReader(Properties systemProperties) {
+    this(systemProperties, new Properties());
+  }
+
+  public StreamingSettingsReader(Properties systemProperties, Properties userProperties) {
+    this.systemProperties = Objects.requireNonNull(systemProperties);
+    this.userProperties = Objects.requireNonNull(userProperties);
+  }
+
+  /**
+   * @param userSettings   user settings file, dominant in the merge
+   * @param globalSettings global settings file, ignored if it does not exist
+   * @return effective settings, with the local repository defaulted and created as {@link DefaultSettingsSupplier}
+   *         does
+   * @throws RuntimeException if either file cannot be parsed or fails validation
+   */
+  public SettingsProxy read(Path userSettings, Path globalSettings) {
+    RegexBasedInterpolator interpolator = interpolator(systemProperties, userProperties,
+        IBException.cet.withReturningTranslation(() -> new EnvarBasedValueSource()));
+    List<String> errors = new ArrayList<>();
+    Parsed global = new Parser(interpolator, errors).parse(globalSettings);
+    Parsed user = new Parser(interpolator, errors).parse(userSettings);
+    SettingsMetrics.problems(errors.size());
+    if (!errors.isEmpty())
+      throw new RuntimeException("Invalid settings: " + String.join(", ", errors));
+    return merge(user, global);
+  }
+
+  /**
+   * {@code MavenSettingsMerger} applied to proxies: dominant ids win, recessive-only entries are appended in order.
+   */
+  private final static SettingsProxy merge(Parsed d, Parsed r) {
+    for (String a : r.activeProfiles)
+      if (!d.activeProfiles.contains(a))
+        d.activeProfiles.add(a);
+    for (String g : r.pluginGroups)
+      if (!d.pluginGroups.contains(g))
+        d.pluginGroups.add(g);
+    if (d.localRepositoryRaw == null || d.localRepositoryRaw.isEmpty())
+      d.localRepository = r.localRepository;
+    mergeById(d.servers, r.servers, ServerProxy::getId);
+    mergeById(d.mirrors, r.mirrors, MirrorProxy::getId);
+    mergeById(d.proxies, r.proxies, ProxyProxy::getId);
+    mergeById(d.profiles, r.profiles, Profile::getId);
+
+    Path lp = localRepository(d.localRepository);
+    List<ProfileProxy> profiles = new ArrayList<>(d.profiles.size());
+    for (Profile p : d.profiles)
+      profiles.add(DefaultSettingsSupplier.proxyFromProfile.apply(d.activeProfiles.contains(p.getId()), p));
+    return new SettingsProxy(d.offline, lp,
+        ofNullable(d.modelEncoding).map(Charset::forName).orElse(UTF_8), d.servers,
+        profiles, d.mirrors, d.pluginGroups, d.proxies);
+  }
+
+  /**
+   * The local repository as {@code DefaultSettingsBuilder} and {@link DefaultSettingsSupplier} leave it: a
+   * drive-relative path made absolute, a blank one defaulted, and the directory created.
+   */
+  final static Path localRepository(String localRepository) {
+    if (localRepository != null && !localRepository.isEmpty()) {
+      File f = new File(localRepository);
+      if (!f.isAbsolute() && f.getPath().startsWith(File.separator))
+        localRepository = f.getAbsolutePath();
+    }
+    if (localRepository == null || localRepository.trim().isEmpty())
+      localRepository = DefaultSettingsSupplier.DEFAULT_MAVEN_LOCAL_REPO.toAbsolutePath().toString();
+    Path lp = Paths.get(localRepository);
+    if (!Files.exists(lp))
+      IBException.cet.withTranslation(() -> Files.createDirectories(lp));
+    return lp;
+  }
+
+  /**
+   * @param systemProperties system properties
+   * @param userProperties   user properties, taking precedence
+   * @param env              environment value source, taking the lowest precedence
+   * @return interpolator configured as {@code DefaultSettingsBuilder} configures it
+   */
+  final static RegexBasedInterpolator interpolator(Properties systemProperties, Properties userProperties,
+      EnvarBasedValueSource env) {
+    RegexBasedInterpolator interpolator = new RegexBasedInterpolator();
+    interpolator.addValueSource(new PropertiesBasedValueSource(userProperties));
+    interpolator.addValueSource(new PropertiesBasedValueSource(systemProperties));
+    interpolator.addValueSource(env);
+    // The same post-processor DefaultSettingsBuilder uses, since it interpolates serialized XML
+    interpolator.addPostProcessor((expression, value) -> value == null ? null : escape(value.toString()));
+    return interpolator;
+  }
+
+  /**
+   * Interpolate one value as it would be interpolated inside the serialized settings.
+   *
+   * @throws InterpolationException if the interpolator fails
+   */
+  final static String interpolate(RegexBasedInterpolator interpolator, String v) throws InterpolationException {
+    if (v == null || v.indexOf("${") < 0)
+      return v;
+    return unescape(interpolator.interpolate(escape(v), "settings"));
+  }
+
+  private final static String escape(String v) {
+    return v.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+  }
+
+  /**
+   * Decode one level of the predefined XML entities, as reading the interpolated XML back in does.
+   */
+  private final static String unescape(String v) {
+    int amp = v.indexOf('&');
+    if (amp < 0)
+      return v;
+    StringBuilder sb = new StringBuilder(v.length()).append(v, 0, amp);
+    for (int i = amp; i < v.length(); ++i) {
+      char c = v.charAt(i);
+      if (c == '&') {
+        int end = v.indexOf(';', i);
+        String entity = end < 0 ? null : v.substring(i + 1, end);
+        String decoded = entity == null ? null
+            : "amp".equals(entity) ? "&"
+                : "lt".equals(entity) ? "<"
+                    : "gt".equals(entity) ? ">"
+                        : "quot".equals(entity) ? "\"" : "apos".equals(entity) ? "'" : null;
+        if (decoded != null) {
+          sb.append(decoded);
+          i = end;
+          continue;
+        }
+      }
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  private final static <T> void mergeById(List<T> dominant, List<T> recessive, Function<T, String> id) {
+    Set<String> ids = new HashSet<>();
+    for (T t : dominant)
+      ids.add(id.apply(t));
+    for (T t : recessive)
+      if (!ids.contains(id.apply(t)))
+        dominant.add(t);
+  }
+
+  private final static class Parsed {
+    private String modelEncoding;
+    private String localRepositoryRaw;
+    private String localRepository;
+    private boolean offline;
+    private final List<ServerProxy> servers = new ArrayList<>();
+    private final List<MirrorProxy> mirrors = new ArrayList<>();
+    private final List<ProxyProxy> proxies = new ArrayList<>();
+    private final List<Profile> profiles = new ArrayList<>();
+    private final List<String> activeProfiles = new ArrayList<>();
+    private final List<String> pluginGroups = new ArrayList<>();
+  }
+
+  /**
+   * One pass over one file. Validation uses the raw text; everything stored is interpolated.
+   */
+  private final static class Parser {
+    private final RegexBasedInterpolator interpolator;
+    private final List<String> errors;
+    private final Parsed p = new Parsed();
+    private XmlPullParser x;
+    private String source;
+
+    private Parser(RegexBasedInterpolator interpolator, List<String> errors) {
+      this.interpolator = interpolator;
+      this.errors = errors;
+    }
+
+    private Parsed parse(Path file) {
+      if (file == null || !Files.exists(file))
+        return p;
+      source = file.toString();
+      try (InputStream in = Files.newInputStream(file); XmlStreamReader reader = new XmlStreamReader(in)) {
+        x = new MXParser(EntityReplacementMap.defaultEntityReplacementMap);
+        x.setInput(reader);
+        int e = x.getEventType();
+        while (e != XmlPullParser.START_TAG && e != XmlPullParser.END_DOCUMENT)
+          e = x.next();
+        if (e == XmlPullParser.START_TAG) {
+          p.modelEncoding = x.getInputEncoding();
+          settings();
+        }
+      } catch (IOException | XmlPullParserException e) {
+        errors.add("Non-parseable settings " + source + ": " + e.getMessage());
+      }
+      return p;
+    }
+
+    private void settings() throws IOException, XmlPullParserException {
+      while (nextChild()) {
+        switch (x.getName()) {
+        case "localRepository":
+          p.localRepositoryRaw = raw();
+          p.localRepository = interpolate(p.localRepositoryRaw);
+          break;
+        case "offline":
+          p.offline = bool(raw(), false);
+          break;
+        case "proxies":
+          int i = 0;
+          Set<String> proxyIds = new HashSet<>();
+          while (nextChild())
+            if ("proxy".equals(x.getName()))
+              p.proxies.add(proxy(i++, proxyIds));
+            else
+              skip();
+          break;
+        case "servers":
+          i = 0;
+          Set<String> serverIds = new HashSet<>();
+          while (nextChild())
+            if ("server".equals(x.getName()))
+              p.servers.add(server(i++, serverIds));
+            else
+              skip();
+          break;
+        case "mirrors":
+          while (nextChild())
+            if ("mirror".equals(x.getName()))
+              p.mirrors.add(mirror());
+            else
+              skip();
+          break;
+        case "profiles":
+          Set<String> profileIds = new HashSet<>();
+          while (nextChild())
+            if ("profile".equals(x.getName()))
+              p.profiles.add(profile(profileIds));
+            else
+              skip();
+          break;
+        case "activeProfiles":
+          while (nextChild())
+            if ("activeProfile".equals(x.getName()))
+              p.activeProfiles.add(text());
+            else
+              skip();
+          break;
+        case "pluginGroups":
+          i = 0;
+          while (nextChild())
+            if ("pluginGroup".equals(x.getName())) {
+              String raw = raw();
+              if (empty(raw))
+                error("pluginGroups.pluginGroup[" + i + "] must not be empty");
+              else if (!GROUP_ID.matcher(raw).matches())
+                error("pluginGroups.pluginGroup[" + i + "] must denote a valid group id and match the pattern "
+                    + GROUP_ID.pattern());
+              p.pluginGroups.add(interpolate(raw));
+              ++i;
+            } else
+              skip();
+          break;
+        default:
+          skip();
+        }
+      }
+    }
+
+    private ServerProxy server(int index, Set<String> ids) throws IOException, XmlPullParserException {
+      String id = "default", username = null, password = null, passphrase = null, privateKey = null;
+      String filePermissions = null, directoryPermissions = null, configuration = null;
+      String rawId = id;
+      while (nextChild()) {
+        switch (x.getName()) {
+        case "id":
+          id = interpolate(rawId = raw());
+          break;
+        case "username":
+          username = text();
+          break;
+        case "password":
+          password = text();
+          break;
+        case "passphrase":
+          passphrase = text();
+          break;
+        case "privateKey":
+          privateKey = text();
+          break;
+        case "filePermissions":
+          filePermissions = text();
+          break;
+        case "directoryPermissions":
+          directoryPermissions = text();
+          break;
+        case "configuration":
+          configuration = configuration();
+          break;
+        default:
+          skip();
+        }
+      }
+      if (empty(rawId))
+        error("servers.server[" + index + "].id must not be empty");
+      else if (!ids.add(rawId))
+        warn("servers.server.id must be unique but found duplicate server with id " + rawId);
+      return new ServerProxy(id, ofNullable(username), ofNullable(password), ofNullable(passphrase),
+          ofNullable(privateKey).map(Paths::get), ofNullable(filePermissions), ofNullable(directoryPermissions),
+          ofNullable(configuration));
+    }
+
+    private MirrorProxy mirror() throws IOException, XmlPullParserException {
+      Mirror m = new Mirror();
+      String rawId = m.getId(), rawUrl = null, rawMirrorOf = null;
+      while (nextChild()) {
+        switch (x.getName()) {
+        case "id":
+          m.setId(interpolate(rawId = raw()));
+          break;
+        case "mirrorOf":
+          m.setMirrorOf(interpolate(rawMirrorOf = raw()));
+          break;
+        case "name":
+          m.setName(text());
+          break;
+        case "url":
+          m.setUrl(interpolate(rawUrl = raw()));
+          break;
+        case "layout":
+          m.setLayout(text());
+          break;
+        case "mirrorOfLayouts":
+          m.setMirrorOfLayouts(text());
+          break;
+        case "blocked":
+          m.setBlocked(bool(raw(), false));
+          break;
+        default:
+          skip();
+        }
+      }
+      if (empty(rawId))
+        error("mirrors.mirror.id must not be empty");
+      else {
+        bannedCharacters("mirrors.mirror.id", rawId);
+        if ("local".equals(rawId))
+          warn("mirrors.mirror.id must not be 'local', this identifier is reserved for the local repository");
+      }
+      if (empty(rawUrl))
+        error("mirrors.mirror.url for " + rawId + " must not be empty");
+      if (empty(rawMirrorOf))
+        error("mirrors.mirror.mirrorOf for " + rawId + " must not be empty");
+      return DefaultSettingsSupplier.proxyFromMirror.apply(m);
+    }
+
+    private ProxyProxy proxy(int index, Set<String> ids) throws IOException, XmlPullParserException {
+      Proxy px = new Proxy();
+      String rawId = px.getId(), rawHost = null;
+      while (nextChild()) {
+        switch (x.getName()) {
+        case "id":
+          px.setId(interpolate(rawId = raw()));
+          break;
+        case "active":
+          px.setActive(bool(raw(), true));
+          break;
+        case "protocol":
+          px.setProtocol(text());
+          break;
+        case "username":
+          px.setUsername(text());
+          break;
+        case "password":
+          px.setPassword(text());
+          break;
+        case "port":
+          px.setPort(integer("port", raw()));
+          break;
+        case "host":
+          px.setHost(interpolate(rawHost = raw()));
+          break;
+        case "nonProxyHosts":
+          px.setNonProxyHosts(text());
+          break;
+        default:
+          skip();
+        }
+      }
+      if (!ids.add(rawId))
+        warn("proxies.proxy.id must be unique but found duplicate proxy with id " + rawId);
+      if (empty(rawHost))
+        error("proxies.proxy.host for " + rawId + " must not be empty");
+      return DefaultSettingsSupplier.proxyFromProxy.apply(px);
+    }
+
+    private Profile profile(Set<String> ids) throws IOException, XmlPullParserException {
+      Profile pr = new Profile();
+      String rawId = pr.getId();
+      Set<String> repoIds = new HashSet<>(), pluginRepoIds = new HashSet<>();
+      while (nextChild()) {
+        switch (x.getName()) {
+        case "id":
+          pr.setId(interpolate(rawId = raw()));
+          break;
+        case "activation":
+          pr.setActivation(activation());
+          break;
+        case "properties":
+          while (nextChild())
+            pr.addProperty(x.getName(), text());
+          break;
+        case "repositories":
+          while (nextChild())
+            if ("repository".equals(x.getName()))
+              pr.addRepository(repository("profiles.profile[" + rawId + "].repositories.repository", repoIds));
+            else
+              skip();
+          break;
+        case "pluginRepositories":
+          while (nextChild())
+            if ("pluginRepository".equals(x.getName()))
+              pr.addPluginRepository(
+                  repository("profiles.profile[" + rawId + "].pluginRepositories.pluginRepository", pluginRepoIds));
+            else
+              skip();
+          break;
+        default:
+          skip();
+        }
+      }
+      if (!ids.add(rawId))
+        warn("profiles.profile.id must be unique but found duplicate profile with id " + rawId);
+      return pr;
+    }
+
+    private Activation activation() throws IOException, XmlPullParserException {
+      Activation a = new Activation();
+      while (nextChild()) {
+        switch (x.getName()) {
+        case "activeByDefault":
+          a.setActiveByDefault(bool(raw(), false));
+          break;
+        case "jdk":
+          a.setJdk(text());
+          break;
+        case "os":
+          ActivationOS os = new ActivationOS();
+          while (nextChild()) {
+            switch (x.getName()) {
+            case "name":
+              os.setName(text());
+              break;
+            case "family":
+              os.setFamily(text());
+              break;
+            case "arch":
+              os.setArch(text());
+              break;
+            case "version":
+              os.setVersion(text());
+              break;
+            default:
+              skip();
+            }
+          }
+          a.setOs(os);
+          break;
+        case "property":
+          ActivationProperty ap = new ActivationProperty();
+          while (nextChild()) {
+            switch (x.getName()) {
+            case "name":
+              ap.setName(text());
+              break;
+            case "value":
+              ap.setValue(text());
+              break;
+            default:
+              skip();
+            }
+          }
+          a.setProperty(ap);
+          break;
+        case "file":
+          ActivationFile af = new ActivationFile();
+          while (nextChild()) {
+            switch (x.getName()) {
+            case "missing":
+              af.setMissing(text());
+              break;
+            case "exists":
+              af.setExists(text());
+              break;
+            default:
+              skip();
+            }
+          }
+          a.setFile(af);
+          break;
+        default:
+          skip();
+        }
+      }
+      return a;
+    }
+
+    private Repository repository(String prefix, Set<String> ids) throws IOException, XmlPullParserException {
+      Repository r = new Repository();
+      String rawId = null, rawUrl = null;
+      while (nextChild()) {
+        switch (x.getName()) {
+        case "id":
+          r.setId(interpolate(rawId = raw()));
+          break;
+        case "url":
+          r.setUrl(interpolate(rawUrl = raw()));
+          break;
+        case "name":
+          r.setName(text());
+          break;
+        case "layout":
+          r.setLayout(text());
+          break;
+        case "releases":
+          r.setReleases(policy());
+          break;
+        case "snapshots":
+          r.setSnapshots(policy());
+          break;
+        default:
+          skip();
+        }
+      }
+      if (empty(rawId))
+        error(prefix + ".id must not be empty");
+      else {
+        if (bannedCharacters(prefix + ".id", rawId) && "local".equals(rawId))
+          warn(prefix + ".id must not be 'local', this identifier is reserved for the local repository");
+        if (!ids.add(rawId))
+          warn(prefix + ".id must be unique but found duplicate repository with id " + rawId);
+      }
+      if (empty(rawUrl))
+        error(prefix + ".url for " + rawId + " must not be empty");
+      if ("legacy".equals(r.getLayout()))
+        warn(prefix + ".layout for " + rawId + " uses the unsupported value 'legacy', artifact resolution might fail.");
+      return r;
+    }
+
+    private RepositoryPolicy policy() throws IOException, XmlPullParserException {
+      RepositoryPolicy rp = new RepositoryPolicy();
+      while (nextChild()) {
+        switch (x.getName()) {
+        case "enabled":
+          rp.setEnabled(bool(raw(), true));
+          break;
+        case "updatePolicy":
+          rp.setUpdatePolicy(text());
+          break;
+        case "checksumPolicy":
+          rp.setChecksumPolicy(text());
+          break;
+        default:
+          skip();
+        }
+      }
+      return rp;
+    }
+
+    /**
+     * Advance to the next child of the current element.
+     *
+     * @return true at the child's start tag, false at the parent's end tag
+     */
+    private boolean nextChild() throws IOException, XmlPullParserException {
+      int e;
+      while ((e = x.next()) != XmlPullParser.END_DOCUMENT) {
+        if (e == XmlPullParser.START_TAG)
+          return true;
+        if (e == XmlPullParser.END_TAG)
+          return false;
+      }
+      return false;
+    }
+
+    private void skip() throws IOException, XmlPullParserException {
+      log.debug("Ignoring unrecognised settings element " + x.getName() + " in " + source);
+      for (int depth = 1; depth > 0;) {
+        int e = x.next();
+        if (e == XmlPullParser.START_TAG)
+          ++depth;
+        else if (e == XmlPullParser.END_TAG)
+          --depth;
+        else if (e == XmlPullParser.END_DOCUMENT)
+          return;
+      }
+    }
+
+    /**
+     * @return trimmed text of a simple element, uninterpolated
+     */
+    private String raw() throws IOException, XmlPullParserException {
+      return x.nextText().trim();
+    }
+
+    private String text() throws IOException, XmlPullParserException {
+      return interpolate(raw());
+    }
+
+    private String interpolate(String v) {
+      try {
+        return StreamingSettingsReader.interpolate(interpolator, v);
+      } catch (InterpolationException e) {
+        warn("Failed to interpolate settings value " + v + ": " + e.getMessage());
+        return v;
+      }
+    }
+
+    private boolean bool(String v, boolean defaultValue) {
+      return empty(v) ? defaultValue : Boolean.valueOf(v);
+    }
+
+    private int integer(String element, String v) {
+      try {
+        return Integer.valueOf(v);
+      } catch (NumberFormatException e) {
+        warn("Unable to parse element '" + element + "', must be an integer");
+        return 0;
+      }
+    }
+
+    /**
+     * Stream the current element and its subtree as {@code Xpp3DomWriter} writes the {@code Xpp3Dom} that
+     * {@code Xpp3DomBuilder} would have built from it: trimmed text, text only on leaves, attributes in
+     * {@link HashMap} order and {@code <a/>} kept distinct from {@code <a></a>}.
+     */
+    private String configuration() throws IOException, XmlPullParserException {
+      StringWriter w = new StringWriter();
+      element(new PrettyPrintXMLWriter(w));
+      return w.toString();
+    }
+
+    private void element(PrettyPrintXMLWriter w) throws IOException, XmlPullParserException {
+      w.startElement(x.getName());
+      boolean empty = x.isEmptyElementTag();
+      if (x.getAttributeCount() > 0) {
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < x.getAttributeCount(); ++i)
+          attributes.put(x.getAttributeName(i), x.getAttributeValue(i));
+        for (Map.Entry<String, String> a : attributes.entrySet())
+          w.addAttribute(a.getKey(), interpolate(a.getValue()));
+      }
+      StringBuilder value = empty ? null : new StringBuilder();
+      boolean children = false;
+      for (int e = x.next(); e != XmlPullParser.END_TAG; e = x.next()) {
+        if (e == XmlPullParser.START_TAG) {
+          children = true;
+          element(w);
+        } else if (e == XmlPullParser.TEXT && value != null)
+          value.append(x.getText().trim());
+        else if (e == XmlPullParser.END_DOCUMENT)
+          throw new XmlPullParserException("Unexpected end of document in configuration", x, null);
+      }
+      if (!children && value != null)
+        w.writeText(interpolate(value.toString()));
+      w.endElement();
+    }
+
+    private boolean bannedCharacters(String field, String v) {
+      for (int i = 0; i < ILLEGAL_REPO_ID_CHARS.length(); ++i)
+        if (v.indexOf(ILLEGAL_REPO_ID_CHARS.charAt(i)) >= 0) {
+          warn(field + " must not contain any of these characters " + ILLEGAL_REPO_ID_CHARS + " but found "
+              + ILLEGAL_REPO_ID_CHARS.charAt(i));
+          return false;
+        }
+      return true;
+    }
+
+    private final static boolean empty(String v) {
+      return v == null || v.isEmpty();
+    }
+
+    private void error(String message) {
+      errors.add(message + " @ " + source);
+    }
+
+    private void warn(String message) {
+      log.warn("Problem: " + message + " @ " + source);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.globalSettingsFileFromEnv;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.userSettingsFileFromEnv;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.infrastructurebuilder.util.EnvSupplier;
+import org.infrastructurebuilder.util.PropertiesSupplier;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.utils.settings.SettingsMetrics.Phase;
+
+/**
+ * {@link SettingsSnapshotSupplier} that locates the settings files like {@link DefaultSettingsSupplier} and builds them
+ * with a {@link StreamingSettingsReader} instead of a {@code SettingsBuilder}.
+ */
+@Named("streaming")
+public class StreamingSettingsSupplier implements SettingsSnapshotSupplier {
+  private final SettingsSnapshot snapshot;
+
+  @Inject
+  public StreamingSettingsSupplier(EnvSupplier envSupplier, @Named("default") PropertiesSupplier propSupplier) {
+    Map<String, String> env = Objects.requireNonNull(envSupplier).get();
+    long start = SettingsMetrics.start();
+    Path user = userSettingsFileFromEnv.apply(env);
+    Path global = globalSettingsFileFromEnv.apply(env);
+    SettingsMetrics.phase(Phase.DISCOVERY, start);
+    start = SettingsMetrics.start();
+    SettingsProxy s = new StreamingSettingsReader(Objects.requireNonNull(propSupplier).get()).read(user, global);
+    SettingsMetrics.phase(Phase.READ, start);
+    this.snapshot = SettingsSnapshot.of(s);
+    SettingsMetrics.snapshot(s);
+  }
+
+  @Override
+  public SettingsSnapshot getSnapshot() {
+    return snapshot;
+  }
+}
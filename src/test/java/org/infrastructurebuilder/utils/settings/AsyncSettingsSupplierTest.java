@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.infrastructurebuilder.util.HandCraftedEnvSupplier;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncSettingsSupplierTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private Path user;
+  private Map<String, String> env;
+  private SettingsBuilder builder;
+  private AtomicInteger builds;
+  private CountDownLatch gate;
+
+  @Before
+  public void setUp() throws Exception {
+    Path dir = wps.get();
+    user = dir.resolve("user.xml");
+    Path global = dir.resolve("global.xml");
+    Files.write(user, ReloadingSettingsSupplierTest.settingsWithServers(dir.resolve("repo"), "a")
+        .getBytes(StandardCharsets.UTF_8));
+    Files.write(global, "<settings/>".getBytes(StandardCharsets.UTF_8));
+    env = new HashMap<>();
+    env.put(USER_SETTINGS_FILE, user.toString());
+    env.put(GLOBAL_SETTINGS_FILE, global.toString());
+    builds = new AtomicInteger();
+    gate = new CountDownLatch(1);
+    SettingsBuilder real = new MyDefaultSettingsBuilder(new DefaultSettingsReader(), new DefaultSettingsWriter(),
+        new DefaultSettingsValidator());
+    builder = (request) -> {
+      builds.incrementAndGet();
+      try {
+        gate.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return real.build(request);
+    };
+  }
+
+  @Test
+  public void testGetAsyncDoesNotBlock() throws Exception {
+    try (AsyncSettingsSupplier a = new AsyncSettingsSupplier(
+        new LazySettingsSupplier(new HandCraftedEnvSupplier(env), () -> new Properties(), builder))) {
+      CompletableFuture<SettingsProxy> f1 = a.getAsync();
+      CompletableFuture<SettingsProxy> f2 = a.getAsync();
+      BlockingQueue<SettingsSnapshot> seen = new LinkedBlockingQueue<>();
+      a.subscribe(seen::add);
+      assertTrue(!f1.isDone() && !f2.isDone());
+      gate.countDown();
+      SettingsProxy s = f1.get(20, TimeUnit.SECONDS);
+      assertTrue(s == f2.get(20, TimeUnit.SECONDS));
+      assertTrue(a.getAsync().isDone());
+      assertTrue(s == seen.poll(20, TimeUnit.SECONDS).getSettings());
+      assertEquals(1, builds.get());
+    }
+  }
+
+  @Test
+  public void testSubscriptionReceivesReloads() throws Exception {
+    gate.countDown();
+    try (ReloadingSettingsSupplier r = new ReloadingSettingsSupplier(new HandCraftedEnvSupplier(env),
+        () -> new Properties(), builder, Duration.ofMillis(50));
+        AsyncSettingsSupplier a = new AsyncSettingsSupplier(r)) {
+      BlockingQueue<SettingsSnapshot> seen = new LinkedBlockingQueue<>();
+      AsyncSettingsSupplier.Subscription sub = a.subscribe(seen::add);
+      assertEquals(1, seen.poll(20, TimeUnit.SECONDS).getSettings().getServers().size());
+      Files.write(user, ReloadingSettingsSupplierTest.settingsWithServers(user.getParent().resolve("repo"), "a", "b")
+          .getBytes(StandardCharsets.UTF_8));
+      r.reload();
+      assertEquals(2, seen.poll(20, TimeUnit.SECONDS).getSettings().getServers().size());
+      sub.close();
+      Files.write(user, ReloadingSettingsSupplierTest.settingsWithServers(user.getParent().resolve("repo"), "c")
+          .getBytes(StandardCharsets.UTF_8));
+      r.reload();
+      Thread.sleep(200);
+      assertTrue(seen.isEmpty());
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.infrastructurebuilder.util.EnvSupplier;
+import org.infrastructurebuilder.util.HandCraftedEnvSupplier;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingSettingsSupplierTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private Path user;
+  private EnvSupplier env;
+  private SettingsBuilder builder;
+  private SettingsSnapshotCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    Path dir = wps.get();
+    user = dir.resolve("settings.xml");
+    Path global = dir.resolve("global.xml");
+    Files.copy(wps.getRoot().resolve("test-classes").resolve("settings-with-local.xml"), user);
+    Files.write(global, "<settings/>".getBytes(StandardCharsets.UTF_8));
+    Map<String, String> m = new HashMap<>();
+    m.put(USER_SETTINGS_FILE, user.toString());
+    m.put(GLOBAL_SETTINGS_FILE, global.toString());
+    env = new HandCraftedEnvSupplier(m);
+    builder = new MyDefaultSettingsBuilder(new DefaultSettingsReader(), new DefaultSettingsWriter(),
+        new DefaultSettingsValidator());
+    cache = new SettingsSnapshotCache(dir.resolve("cache"));
+  }
+
+  @Test
+  public void testHitMatchesBuild() {
+    CachingSettingsSupplier first = new CachingSettingsSupplier(env, () -> new Properties(), builder, cache);
+    assertFalse(first.isCacheHit());
+    CachingSettingsSupplier second = new CachingSettingsSupplier(env, () -> new Properties(), builder, cache);
+    assertTrue(second.isCacheHit());
+    assertTrue(Arrays.equals(SettingsProxyCodec.toBytes(first.get()), SettingsProxyCodec.toBytes(second.get())));
+  }
+
+  @Test
+  public void testInvalidation() throws Exception {
+    new CachingSettingsSupplier(env, () -> new Properties(), builder, cache);
+    Properties p = new Properties();
+    p.setProperty("x", "y");
+    assertFalse(new CachingSettingsSupplier(env, () -> p, builder, cache).isCacheHit());
+    Files.write(user, "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    assertFalse(new CachingSettingsSupplier(env, () -> new Properties(), builder, cache).isCacheHit());
+    assertTrue(new CachingSettingsSupplier(env, () -> new Properties(), builder, cache).isCacheHit());
+  }
+
+  @Test
+  public void testKeyUsesOnlyReferencedEnvironment() throws Exception {
+    Path dir = wps.get();
+    Path u = dir.resolve("env-settings.xml");
+    Path g = dir.resolve("env-global.xml");
+    Files.write(u, "<settings><localRepository>${env.REPO_HOME}/r</localRepository></settings>"
+        .getBytes(StandardCharsets.UTF_8));
+    Files.write(g, "<settings/>".getBytes(StandardCharsets.UTF_8));
+    Map<String, String> e = new HashMap<>();
+    e.put("PWD", "/a");
+    e.put("SHLVL", "1");
+    String key = SettingsSnapshotCache.keyFor(u, g, new Properties(), e);
+    e.put("PWD", "/b");
+    e.put("SHLVL", "2");
+    assertEquals(key, SettingsSnapshotCache.keyFor(u, g, new Properties(), e));
+    e.put("REPO_HOME", "");
+    String set = SettingsSnapshotCache.keyFor(u, g, new Properties(), e);
+    assertNotEquals(key, set);
+    e.put("REPO_HOME", "/home");
+    assertNotEquals(set, SettingsSnapshotCache.keyFor(u, g, new Properties(), e));
+  }
+
+  private Path onlyEntry() throws Exception {
+    try (Stream<Path> s = Files.list(cache.getDirectory())) {
+      List<Path> l = s.filter(p -> p.toString().endsWith(SettingsSnapshotCache.SUFFIX)).collect(Collectors.toList());
+      assertEquals(1, l.size());
+      return l.get(0);
+    }
+  }
+
+  @Test
+  public void testDamagedEntryFallsBackToBuild() throws Exception {
+    byte[] built = SettingsProxyCodec.toBytes(new CachingSettingsSupplier(env, () -> new Properties(), builder, cache)
+        .get());
+    Path entry = onlyEntry();
+    byte[] good = Files.readAllBytes(entry);
+    // truncated
+    Files.write(entry, Arrays.copyOf(good, good.length / 2));
+    CachingSettingsSupplier c = new CachingSettingsSupplier(env, () -> new Properties(), builder, cache);
+    assertFalse(c.isCacheHit());
+    assertTrue(Arrays.equals(built, SettingsProxyCodec.toBytes(c.get())));
+    // one flipped byte in the body
+    byte[] bad = Files.readAllBytes(onlyEntry());
+    bad[bad.length - 3] ^= 0x5a;
+    Files.write(entry, bad);
+    c = new CachingSettingsSupplier(env, () -> new Properties(), builder, cache);
+    assertFalse(c.isCacheHit());
+    assertTrue(Arrays.equals(built, SettingsProxyCodec.toBytes(c.get())));
+    assertTrue(new CachingSettingsSupplier(env, () -> new Properties(), builder, cache).isCacheHit());
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorruptLengthIsRejected() throws Exception {
+    SettingsProxyCodec.readString(new DataInputStream(new ByteArrayInputStream(new byte[] { 0x7f, -1, -1, -1, 0 })));
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Properties;
+
+import org.infrastructurebuilder.util.Layout;
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.infrastructurebuilder.util.ProfileProxy;
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.infrastructurebuilder.util.RepositoryProxy;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CredentialsResolverTest {
+  private CredentialsResolver resolver;
+
+  private final static ServerProxy server(String id) {
+    return new ServerProxy(id, Optional.of(id + "-user"), Optional.of("pw"), Optional.empty(), Optional.empty(),
+        Optional.empty(), Optional.empty(), Optional.empty());
+  }
+
+  private final static RepositoryProxy repo(String id, String url) throws Exception {
+    return new RepositoryProxy(id, Layout.DEFAULT, Optional.empty(), new URL(url), Optional.empty(),
+        Optional.empty());
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    MirrorProxy mirror = new MirrorProxy("corp", Layout.DEFAULT, Arrays.asList("central"),
+        Arrays.asList(Layout.DEFAULT), Optional.empty(), new URL("https://nexus.corp.example/repository/central/"));
+    ProfileProxy p = new ProfileProxy("p", true, Optional.empty(), Collections.emptyList(), new Properties(),
+        Arrays.asList(repo("central", "https://repo.maven.apache.org/maven2"),
+            repo("releases", "https://nexus.corp.example/repository/releases"),
+            repo("releases-special", "https://nexus.corp.example/repository/releases/special/")));
+    ProxyProxy proxy = new ProxyProxy("px", "proxy.corp.example", Arrays.asList("*.corp.example"), Optional.empty(),
+        3128, "https", Optional.empty(), true);
+    SettingsProxy s = new SettingsProxy(false, Paths.get("target"), StandardCharsets.UTF_8,
+        Arrays.asList(server("corp"), server("releases"), server("releases-special")), Arrays.asList(p),
+        Arrays.asList(mirror), Collections.emptyList(), Arrays.asList(proxy));
+    resolver = SettingsSnapshot.of(s).getCredentialsResolver();
+  }
+
+  @Test
+  public void testMirroredRepository() {
+    URI u = URI.create("https://repo.maven.apache.org/maven2/org/x/x/1/x-1.jar");
+    CredentialsResolver.Resolution r = resolver.resolve(u);
+    assertEquals("corp", r.getLocation().get().getId());
+    assertTrue(r.isMirrored());
+    assertEquals("corp-user", r.getServer().get().getUsername().get());
+    assertFalse(r.getProxy().isPresent()); // the mirror host is excluded from the proxy
+    assertEquals(URI.create("https://nexus.corp.example/repository/central/org/x/x/1/x-1.jar"), r.rewrite(u));
+  }
+
+  @Test
+  public void testLongestPrefixWins() {
+    assertEquals("releases-special",
+        resolver.getServer(URI.create("https://nexus.corp.example/repository/releases/special/a.jar")).get().getId());
+    assertEquals("releases",
+        resolver.getServer(URI.create("https://NEXUS.corp.example:443/repository/releases/speciality.jar")).get()
+            .getId());
+    assertEquals("corp",
+        resolver.getServer(URI.create("https://nexus.corp.example/repository/central/b.jar")).get().getId());
+    CredentialsResolver.Resolution r = resolver
+        .resolve(URI.create("https://nexus.corp.example/repository/releases/a.jar"));
+    assertTrue(r == resolver.resolve(URI.create("https://nexus.corp.example/repository/releases/b.jar")));
+    assertFalse(r.isMirrored());
+  }
+
+  @Test
+  public void testUnknownTargetStillGetsProxy() {
+    CredentialsResolver.Resolution r = resolver.resolve(URI.create("https://elsewhere.example.org/x"));
+    assertFalse(r.getLocation().isPresent());
+    assertFalse(r.getServer().isPresent());
+    assertEquals("px", r.getProxy().get().getId());
+    assertFalse(resolver.resolve(URI.create("http://nexus.corp.example/repository/releases/a.jar")).getServer()
+        .isPresent());
+  }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.settings.Proxy;
+import org.apache.maven.settings.Server;
+import org.apache.maven.settings.building.SettingsProblem;
+import org.apache.maven.settings.crypto.SettingsDecrypter;
+import org.apache.maven.settings.crypto.SettingsDecryptionRequest;
+import org.apache.maven.settings.crypto.SettingsDecryptionResult;
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.infrastructurebuilder.util.HandCraftedEnvSupplier;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DecryptingSettingsSupplierTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private Path user;
+  private AtomicInteger decrypted;
+  private ReloadingSettingsSupplier delegate;
+  private DecryptingSettingsSupplier s;
+
+  private void write(String... idAndPassword) throws Exception {
+    StringBuilder sb = new StringBuilder("<settings><localRepository>")
+        .append(user.getParent().resolve("repo").toString()).append("</localRepository><servers>");
+    for (int i = 0; i < idAndPassword.length; i += 2)
+      sb.append("<server><id>").append(idAndPassword[i]).append("</id><password>enc-").append(idAndPassword[i + 1])
+          .append("</password></server>");
+    Files.write(user, sb.append("</servers></settings>").toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Strips {@code enc-} from server passwords and counts the servers it was asked to decrypt */
+  private SettingsDecrypter countingDecrypter() {
+    return (SettingsDecryptionRequest request) -> {
+      List<Server> servers = request.getServers();
+      for (Server sv : servers) {
+        decrypted.incrementAndGet();
+        if (sv.getPassword() != null)
+          sv.setPassword(sv.getPassword().replaceFirst("^enc-", ""));
+      }
+      List<Proxy> proxies = request.getProxies();
+      return new SettingsDecryptionResult() {
+        @Override
+        public Server getServer() {
+          return servers.isEmpty() ? null : servers.get(0);
+        }
+
+        @Override
+        public List<Server> getServers() {
+          return servers;
+        }
+
+        @Override
+        public Proxy getProxy() {
+          return proxies.isEmpty() ? null : proxies.get(0);
+        }
+
+        @Override
+        public List<Proxy> getProxies() {
+          return proxies;
+        }
+
+        @Override
+        public List<SettingsProblem> getProblems() {
+          return Collections.emptyList();
+        }
+      };
+    };
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    Path dir = wps.get();
+    user = dir.resolve("user-settings.xml");
+    Path global = dir.resolve("global-settings.xml");
+    write("a", "pa", "b", "pb");
+    Files.write(global, "<settings/>".getBytes(StandardCharsets.UTF_8));
+    Map<String, String> env = new HashMap<>();
+    env.put(USER_SETTINGS_FILE, user.toString());
+    env.put(GLOBAL_SETTINGS_FILE, global.toString());
+    decrypted = new AtomicInteger();
+    delegate = new ReloadingSettingsSupplier(new HandCraftedEnvSupplier(env), () -> new Properties(),
+        new MyDefaultSettingsBuilder(new DefaultSettingsReader(), new DefaultSettingsWriter(),
+            new DefaultSettingsValidator()),
+        Duration.ofHours(1));
+    s = new DecryptingSettingsSupplier(delegate, countingDecrypter(), Runnable::run);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    delegate.close();
+  }
+
+  @Test
+  public void testGetServerDecryptsOnceOnFirstAccess() {
+    assertEquals(0, decrypted.get());
+    assertEquals(Optional.of("pa"), s.getServer("a").get().getPassword());
+    assertEquals(1, decrypted.get());
+    assertEquals(Optional.of("pa"), s.getServer("a").get().getPassword());
+    assertFalse(s.getServer("missing").isPresent());
+    assertEquals(1, decrypted.get());
+  }
+
+  @Test
+  public void testDecryptAllReusesServers() {
+    s.getServer("a");
+    SettingsSnapshot all = s.decryptAll();
+    assertEquals(2, decrypted.get());
+    assertEquals(Optional.of("pa"), all.getIndex().getServer("a").get().getPassword());
+    assertEquals(Optional.of("pb"), all.getIndex().getServer("b").get().getPassword());
+    s.decryptAll();
+    s.getServer("b");
+    assertEquals(2, decrypted.get());
+  }
+
+  @Test
+  public void testNewSnapshotDiscardsState() throws Exception {
+    s.getServer("a");
+    write("a", "changed", "b", "pb");
+    delegate.reload();
+    assertEquals(Optional.of("changed"), s.getServer("a").get().getPassword());
+    assertEquals(2, decrypted.get());
+    assertEquals(Optional.of("changed"), s.get().getServers().get(0).getPassword());
+    assertEquals(3, decrypted.get());
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.infrastructurebuilder.util.HandCraftedEnvSupplier;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LazySettingsSupplierTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private Map<String, String> env;
+  private AtomicInteger builds;
+  private SettingsBuilder builder;
+
+  @Before
+  public void setUp() {
+    Path resources = wps.getRoot().resolve("test-classes");
+    env = new HashMap<>();
+    env.put(USER_SETTINGS_FILE, resources.resolve("settings-with-local.xml").toString());
+    env.put(GLOBAL_SETTINGS_FILE, resources.resolve("settings-no-local.xml").toString());
+    builds = new AtomicInteger();
+    SettingsBuilder real = new MyDefaultSettingsBuilder(new DefaultSettingsReader(), new DefaultSettingsWriter(),
+        new DefaultSettingsValidator());
+    builder = (request) -> {
+      builds.incrementAndGet();
+      return real.build(request);
+    };
+  }
+
+  @Test
+  public void testConstructorDoesNoIO() {
+    env.put(USER_SETTINGS_FILE, wps.getRoot().resolve("no-such-settings.xml").toString());
+    new LazySettingsSupplier(new HandCraftedEnvSupplier(env), () -> new Properties(), builder);
+    assertEquals(0, builds.get());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testFailureSurfacesOnGet() {
+    env.put(USER_SETTINGS_FILE, wps.getRoot().resolve("no-such-settings.xml").toString());
+    new LazySettingsSupplier(new HandCraftedEnvSupplier(env), () -> new Properties(), builder).get();
+  }
+
+  @Test
+  public void testSingleBuildUnderContention() throws Exception {
+    LazySettingsSupplier l = new LazySettingsSupplier(new HandCraftedEnvSupplier(env), () -> new Properties(),
+        builder);
+    int threads = 16;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService ex = Executors.newFixedThreadPool(threads);
+    List<Future<SettingsProxy>> results = new ArrayList<>();
+    for (int i = 0; i < threads; ++i)
+      results.add(ex.submit(() -> {
+        start.await();
+        return l.get();
+      }));
+    start.countDown();
+    SettingsProxy first = results.get(0).get();
+    for (Future<SettingsProxy> f : results)
+      assertTrue(first == f.get());
+    ex.shutdown();
+    assertEquals(1, builds.get());
+    assertTrue(first == l.warmUp().get());
+  }
+
+  @Test
+  public void testWarmUpStartsOneBuild() throws Exception {
+    LazySettingsSupplier l = new LazySettingsSupplier(new HandCraftedEnvSupplier(env), () -> new Properties(),
+        builder);
+    CompletableFuture<SettingsProxy> f = l.warmUp();
+    assertTrue(f == l.warmUp());
+    assertTrue(l.get() == f.get());
+    assertTrue(f == l.warmUp());
+    assertEquals(1, builds.get());
+    LazySettingsSupplier built = new LazySettingsSupplier(new HandCraftedEnvSupplier(env), () -> new Properties(),
+        builder);
+    SettingsProxy s = built.get();
+    CompletableFuture<SettingsProxy> done = built.warmUp();
+    assertTrue(done.isDone());
+    assertTrue(s == done.get());
+    assertTrue(done == built.warmUp());
+    assertEquals(2, builds.get());
+  }
+
+  @Test
+  public void testFailedWarmUpIsRetried() throws Exception {
+    env.put(USER_SETTINGS_FILE, wps.getRoot().resolve("no-such-settings.xml").toString());
+    LazySettingsSupplier l = new LazySettingsSupplier(new HandCraftedEnvSupplier(env), () -> new Properties(),
+        builder);
+    CompletableFuture<SettingsProxy> f = l.warmUp();
+    try {
+      f.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RuntimeException);
+    }
+    assertFalse(f == l.warmUp());
+  }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalRepositoryIndexTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private Path repo;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = wps.get().resolve("repository");
+    artifact("org/example/foo/1.0", "foo-1.0.jar", "foo-1.0.pom", "foo-1.0-sources.jar");
+    artifact("com/acme/bar/2.0-SNAPSHOT", "bar-2.0-20200101.120000-1.jar", "maven-metadata-local.xml");
+    artifact("com/acme/bar", "maven-metadata-local.xml");
+    artifact("not/an/artifact", "readme.txt");
+  }
+
+  private void artifact(String dir, String... files) throws Exception {
+    Path d = Files.createDirectories(repo.resolve(dir));
+    for (String f : files)
+      Files.write(d.resolve(f), new byte[] { 1 });
+  }
+
+  @Test
+  public void testBuildAndLookup() {
+    LocalRepositoryIndex idx = LocalRepositoryIndex.build(repo);
+    assertTrue(Files.isRegularFile(LocalRepositoryIndex.indexFileFor(repo)));
+    assertEquals(2, idx.size());
+    assertTrue(idx.contains("org.example", "foo", "1.0"));
+    assertTrue(idx.contains("com.acme", "bar", "2.0-SNAPSHOT"));
+    assertFalse(idx.contains("org.example", "foo", "1.1"));
+    assertFalse(idx.contains("not", "an", "artifact"));
+    assertFalse(idx.contains("com", "acme", "bar"));
+    assertTrue(idx.contains("org.example", "foo", "1.0", null, "pom"));
+    assertTrue(idx.contains("org.example", "foo", "1.0", "sources", "jar"));
+    assertFalse(idx.contains("org.example", "foo", "1.0", "javadoc", "jar"));
+    assertEquals(Arrays.asList("foo-1.0-sources.jar", "foo-1.0.jar", "foo-1.0.pom"),
+        idx.getFiles("org.example", "foo", "1.0"));
+    assertEquals(Arrays.asList("com.acme:bar:2.0-SNAPSHOT", "org.example:foo:1.0"), idx.getCoordinates());
+  }
+
+  @Test
+  public void testOpenAndRefresh() throws Exception {
+    LocalRepositoryIndex.build(repo);
+    LocalRepositoryIndex opened = LocalRepositoryIndex.open(repo).get();
+    assertTrue(opened.contains("org.example", "foo", "1.0"));
+    assertFalse(LocalRepositoryIndex.open(wps.get().resolve("repository")).isPresent());
+
+    artifact("org/example/foo/1.1", "foo-1.1.jar");
+    Files.delete(repo.resolve("com/acme/bar/2.0-SNAPSHOT/bar-2.0-20200101.120000-1.jar"));
+    Files.delete(repo.resolve("com/acme/bar/2.0-SNAPSHOT/maven-metadata-local.xml"));
+    Files.delete(repo.resolve("com/acme/bar/2.0-SNAPSHOT"));
+    LocalRepositoryIndex refreshed = LocalRepositoryIndex.load(repo);
+    assertTrue(refreshed.contains("org.example", "foo", "1.1"));
+    assertFalse(refreshed.contains("com.acme", "bar", "2.0-SNAPSHOT"));
+    assertEquals(2, refreshed.size());
+  }
+
+  @Test
+  public void testUnchangedDirectoriesAreNotListedAgain() throws Exception {
+    Path dir = repo.resolve("org/example/foo/1.0");
+    FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+    Files.setLastModifiedTime(dir, old);
+    LocalRepositoryIndex idx = LocalRepositoryIndex.build(repo);
+    // a new file without a visible mtime change is only found by a full build
+    Files.write(dir.resolve("foo-1.0-javadoc.jar"), new byte[] { 1 });
+    Files.setLastModifiedTime(dir, old);
+    assertFalse(idx.refresh().contains("org.example", "foo", "1.0", "javadoc", "jar"));
+    assertTrue(LocalRepositoryIndex.build(repo).contains("org.example", "foo", "1.0", "javadoc", "jar"));
+  }
+
+  @Test
+  public void testRefreshWithoutChangesKeepsInstance() throws Exception {
+    FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+    try (Stream<Path> s = Files.walk(repo)) {
+      for (Path p : s.filter(Files::isDirectory).collect(Collectors.toList()))
+        Files.setLastModifiedTime(p, old);
+    }
+    LocalRepositoryIndex idx = LocalRepositoryIndex.build(repo);
+    assertTrue(idx == idx.refresh());
+  }
+
+  @Test
+  public void testBookkeepingFilesAreIgnored() throws Exception {
+    artifact("org/example/baz/1.0", "baz-1.0.jar.lastUpdated", "baz-1.0.pom.lastUpdated", "_remote.repositories",
+        "resolver-status.properties");
+    artifact("org/example/foo/1.0", "_remote.repositories", "foo-1.0-javadoc.jar.lastUpdated");
+    LocalRepositoryIndex idx = LocalRepositoryIndex.build(repo);
+    assertFalse(idx.contains("org.example", "baz", "1.0"));
+    assertEquals(Arrays.asList("foo-1.0-sources.jar", "foo-1.0.jar", "foo-1.0.pom"),
+        idx.getFiles("org.example", "foo", "1.0"));
+    assertEquals(2, idx.size());
+  }
+
+  @Test
+  public void testSymbolicLinks() throws Exception {
+    // a loop back to the top of the tree must not be walked
+    Files.createSymbolicLink(repo.resolve("org/example/loop"), repo.resolve("org"));
+    Path qux = Files.createDirectories(repo.resolve("org/example/qux/1.0"));
+    Files.createSymbolicLink(qux.resolve("qux-1.0.jar"), repo.resolve("org/example/foo/1.0/foo-1.0.jar"));
+    LocalRepositoryIndex idx = LocalRepositoryIndex.build(repo);
+    assertTrue(idx.contains("org.example", "qux", "1.0", null, "jar"));
+    assertEquals(3, idx.size());
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.infrastructurebuilder.util.EnvSupplier;
+import org.infrastructurebuilder.util.HandCraftedEnvSupplier;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedSettingsSupplierTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private Path dir;
+  private EnvSupplier env;
+  private SettingsBuilder builder;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = wps.get();
+    Path resources = wps.getRoot().resolve("test-classes");
+    Path user = dir.resolve("settings.xml");
+    Files.copy(resources.resolve("streaming-user.xml"), user);
+    Map<String, String> m = new HashMap<>();
+    m.put(USER_SETTINGS_FILE, user.toString());
+    m.put(GLOBAL_SETTINGS_FILE, resources.resolve("streaming-global.xml").toString());
+    env = new HandCraftedEnvSupplier(m);
+    builder = new MyDefaultSettingsBuilder(new DefaultSettingsReader(), new DefaultSettingsWriter(),
+        new DefaultSettingsValidator());
+  }
+
+  private Properties props() {
+    Properties p = new Properties();
+    p.setProperty("streaming.repo", dir.toString());
+    return p;
+  }
+
+  private MappedSettingsSupplier supplier() {
+    return new MappedSettingsSupplier(env, this::props, builder, dir.resolve("cache"));
+  }
+
+  private List<Path> snapshots() throws Exception {
+    try (Stream<Path> s = Files.list(dir.resolve("cache"))) {
+      return s.filter(p -> p.toString().endsWith(MappedSettingsSnapshot.SUFFIX)).collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void testMappedMatchesBuild() throws Exception {
+    MappedSettingsSupplier first = supplier();
+    assertFalse(first.isMapped());
+    MappedSettingsSupplier second = supplier();
+    assertTrue(second.isMapped());
+    assertArrayEquals(SettingsProxyCodec.toBytes(first.get()), SettingsProxyCodec.toBytes(second.get()));
+  }
+
+  @Test
+  public void testCorruptionFallsBack() throws Exception {
+    supplier();
+    Path file = snapshots().get(0);
+    byte[] b = Files.readAllBytes(file);
+    b[b.length - 3] ^= 0x55;
+    Files.write(file, b);
+    assertFalse(supplier().isMapped());
+    assertTrue(supplier().isMapped());
+    Files.write(file, new byte[] { 1, 2, 3 });
+    assertFalse(supplier().isMapped());
+  }
+
+  @Test
+  public void testDecodeIsLazyAndKeyed() throws Exception {
+    SettingsProxy s = supplier().get();
+    byte[] b = MappedSettingsSnapshot.toBytes("k", s);
+    SettingsProxy d = MappedSettingsSnapshot.decode(ByteBuffer.wrap(b), "k");
+    assertTrue(d.getServers().get(0) == d.getServers().get(0));
+    assertArrayEquals(SettingsProxyCodec.toBytes(s), SettingsProxyCodec.toBytes(d));
+    Path f = dir.resolve("other" + MappedSettingsSnapshot.SUFFIX);
+    Files.write(f, b);
+    assertFalse(MappedSettingsSnapshot.open(f, "not-k").isPresent());
+    assertTrue(MappedSettingsSnapshot.open(f, "k").isPresent());
+    Files.write(dir.resolve("settings.xml"), "\n".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+    assertFalse(supplier().isMapped());
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.infrastructurebuilder.util.Layout;
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MirrorRouterTest {
+  private MirrorRouter router;
+  private URL external;
+  private URL externalHttps;
+  private URL local;
+
+  private final static MirrorProxy mirror(String id, String mirrorOf) throws Exception {
+    return mirror(id, mirrorOf, Layout.DEFAULT);
+  }
+
+  private final static MirrorProxy mirror(String id, String mirrorOf, Layout layout) throws Exception {
+    return new MirrorProxy(id, Layout.DEFAULT, Arrays.asList(mirrorOf.split(",")), Arrays.asList(layout),
+        Optional.empty(), new URL("https://" + id + ".example.com/"));
+  }
+
+  private final static String routed(Optional<MirrorProxy> m) {
+    return m.map(MirrorProxy::getId).orElse(null);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    router = MirrorRouter.of(Arrays.asList(mirror("http-only", "external:http:*,!insecure"),
+        mirror("some", "repo1, repo2,!repo3"), mirror("central-mirror", "central"), mirror("ext", "external:*"),
+        mirror("all", "*,!repo3")));
+    external = new URL("http://repo.example.net/maven2");
+    externalHttps = new URL("https://repo.example.net/maven2");
+    local = new URL("http://localhost:8081/repo");
+  }
+
+  @Test
+  public void testExactBeatsPattern() {
+    assertEquals("central-mirror", routed(router.route("central", externalHttps)));
+    assertEquals("central-mirror", routed(router.route("central", external)));
+    assertEquals("http-only", routed(router.route("other", external)));
+    assertEquals("central-mirror", routed(router.route("central", local)));
+  }
+
+  @Test
+  public void testEveryExactMirrorBeatsPattern() throws Exception {
+    MirrorRouter r = MirrorRouter.of(Arrays.asList(mirror("central-default", "central"), mirror("all", "*", Layout.LEGACY),
+        mirror("central-legacy", "central", Layout.LEGACY)));
+    assertEquals("central-default", routed(r.route("central", externalHttps, Layout.DEFAULT)));
+    assertEquals("central-legacy", routed(r.route("central", externalHttps, Layout.LEGACY)));
+    assertEquals("all", routed(r.route("other", externalHttps, Layout.LEGACY)));
+    assertFalse(r.route("other", externalHttps, Layout.DEFAULT).isPresent());
+  }
+
+  @Test
+  public void testPatterns() {
+    assertEquals("some", routed(router.route("repo2", externalHttps)));
+    assertEquals("ext", routed(router.route("other", externalHttps)));
+    assertEquals("all", routed(router.route("other", local)));
+    assertEquals("ext", routed(router.route("insecure", external)));
+    assertFalse(router.route("repo3", local).isPresent());
+    assertEquals("ext", routed(router.route("repo3", externalHttps)));
+    assertFalse(router.route("other", local, Layout.LEGACY).isPresent());
+  }
+
+  @Test
+  public void testClassificationAndMemo() throws Exception {
+    assertEquals(0, MirrorRouter.classify(new URL("file:///tmp/repo")));
+    assertEquals(0, MirrorRouter.classify(new URL("https://127.0.0.1/repo")));
+    assertEquals(2, MirrorRouter.classify(external));
+    assertEquals(1, MirrorRouter.classify(externalHttps));
+    assertTrue(router.route("repo1", external) == router.route("repo1", new URL("http://elsewhere.org/")));
+    assertFalse(MirrorRouter.of(Arrays.asList()).route("x", external).isPresent());
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.plexus.components.cipher.PlexusCipher;
+import org.sonatype.plexus.components.cipher.PlexusCipherException;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+public class MyCachingSecDispatcherTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private MyDefaultPlexusCipher real;
+  private AtomicInteger decrypts;
+  private AtomicInteger masterLoads;
+  private PlexusCipher counting;
+  private Path security;
+
+  /** Counts value decryptions and master password loads separately */
+  private final class CountingCipher implements PlexusCipher {
+    @Override
+    public String encrypt(String str, String passPhrase) throws PlexusCipherException {
+      return real.encrypt(str, passPhrase);
+    }
+
+    @Override
+    public String encryptAndDecorate(String str, String passPhrase) throws PlexusCipherException {
+      return real.encryptAndDecorate(str, passPhrase);
+    }
+
+    @Override
+    public String decrypt(String str, String passPhrase) throws PlexusCipherException {
+      decrypts.incrementAndGet();
+      return real.decrypt(str, passPhrase);
+    }
+
+    @Override
+    public String decryptDecorated(String str, String passPhrase) throws PlexusCipherException {
+      masterLoads.incrementAndGet();
+      return real.decryptDecorated(str, passPhrase);
+    }
+
+    @Override
+    public boolean isEncryptedString(String str) {
+      return real.isEncryptedString(str);
+    }
+
+    @Override
+    public String unDecorate(String str) throws PlexusCipherException {
+      return real.unDecorate(str);
+    }
+
+    @Override
+    public String decorate(String str) {
+      return real.decorate(str);
+    }
+  }
+
+  private void writeMaster(String master) throws Exception {
+    Files.write(security, ("<settingsSecurity><master>" + real.encryptAndDecorate(master, "settings.security")
+        + "</master></settingsSecurity>").getBytes(StandardCharsets.UTF_8));
+  }
+
+  private MyCachingSecDispatcher dispatcher(int maxEntries, Duration ttl) {
+    MyCachingSecDispatcher d = new MyCachingSecDispatcher(counting, Collections.emptyMap(), maxEntries, ttl);
+    d.setConfigurationFile(security.toString());
+    return d;
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    real = new MyDefaultPlexusCipher();
+    decrypts = new AtomicInteger();
+    masterLoads = new AtomicInteger();
+    counting = new CountingCipher();
+    security = wps.get().resolve("settings-security.xml");
+    writeMaster("first-master");
+  }
+
+  @Test
+  public void testMemoizes() throws Exception {
+    MyCachingSecDispatcher d = dispatcher(16, Duration.ofHours(1));
+    String enc = real.encryptAndDecorate("secret", "first-master");
+    assertEquals("secret", d.decrypt(enc));
+    assertEquals("secret", d.decrypt(enc));
+    assertEquals(1, decrypts.get());
+    assertEquals(1, masterLoads.get());
+    d.invalidate();
+    assertEquals("secret", d.decrypt(enc));
+    assertEquals(2, decrypts.get());
+    assertEquals(2, masterLoads.get());
+  }
+
+  @Test
+  public void testReloadsMasterWhenSecurityFileChanges() throws Exception {
+    MyCachingSecDispatcher d = dispatcher(16, Duration.ofHours(1));
+    String old = real.encryptAndDecorate("old-secret", "first-master");
+    assertEquals("old-secret", d.decrypt(old));
+    FileTime before = Files.getLastModifiedTime(security);
+    writeMaster("the-second-master");
+    Files.setLastModifiedTime(security, FileTime.fromMillis(before.toMillis() + 10000));
+    assertEquals("new-secret", d.decrypt(real.encryptAndDecorate("new-secret", "the-second-master")));
+    assertEquals(2, masterLoads.get());
+    // the value memoized under the old master is not served any more
+    try {
+      d.decrypt(old);
+    } catch (SecDispatcherException e) {
+      // expected with the wrong master
+    }
+    assertEquals(3, decrypts.get());
+    assertEquals(2, masterLoads.get());
+  }
+
+  @Test
+  public void testEntriesExpire() throws Exception {
+    MyCachingSecDispatcher d = dispatcher(16, Duration.ofNanos(1));
+    String enc = real.encryptAndDecorate("secret", "first-master");
+    assertEquals("secret", d.decrypt(enc));
+    assertEquals("secret", d.decrypt(enc));
+    assertEquals(2, decrypts.get());
+    assertEquals(2, masterLoads.get());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() throws Exception {
+    MyCachingSecDispatcher d = dispatcher(2, Duration.ofHours(1));
+    String e1 = real.encryptAndDecorate("s1", "first-master");
+    String e2 = real.encryptAndDecorate("s2", "first-master");
+    String e3 = real.encryptAndDecorate("s3", "first-master");
+    d.decrypt(e1);
+    d.decrypt(e2);
+    d.decrypt(e3);
+    assertEquals(3, decrypts.get());
+    assertEquals("s3", d.decrypt(e3));
+    assertEquals(3, decrypts.get());
+    assertEquals("s1", d.decrypt(e1));
+    assertEquals(4, decrypts.get());
+    assertEquals("s3", d.decrypt(e3));
+    assertEquals(4, decrypts.get());
+    assertEquals(1, masterLoads.get());
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.plexus.components.sec.dispatcher.PasswordDecryptor;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+public class MySecDispatcherTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+  private final static String MASTER = "master-password";
+
+  private MyDefaultPlexusCipher cipher;
+  private Path security;
+  private Map<String, PasswordDecryptor> decryptors;
+
+  @Before
+  public void setUp() throws Exception {
+    cipher = new MyDefaultPlexusCipher();
+    security = wps.get().resolve("settings-security.xml");
+    Files.write(security, ("<settingsSecurity><master>" + cipher.encryptAndDecorate(MASTER, "settings.security")
+        + "</master></settingsSecurity>").getBytes(StandardCharsets.UTF_8));
+    decryptors = new HashMap<>();
+    decryptors.put("upper", (str, attributes, config) -> str.toUpperCase() + attributes.get("x"));
+  }
+
+  private <T extends MyAbstractSecDispatcher> T configured(T d) {
+    d.setConfigurationFile(security.toString());
+    return d;
+  }
+
+  private void check(SecDispatcher d) throws Exception {
+    assertEquals("plain", d.decrypt("plain"));
+    assertEquals("secret", d.decrypt(cipher.encryptAndDecorate("secret", MASTER)));
+    assertEquals("ABC1", d.decrypt("{[type=upper, x=1]abc}"));
+  }
+
+  @Test
+  public void testDefault() throws Exception {
+    MyDefaultSecDispatcher d = configured(new MyDefaultSecDispatcher(cipher, decryptors));
+    decryptors.clear(); // the dispatcher keeps its own copy
+    check(d);
+    assertEquals(security.toString(), d.getConfigurationFile());
+  }
+
+  @Test
+  public void testCaching() throws Exception {
+    check(configured(new MyCachingSecDispatcher(cipher, decryptors)));
+  }
+
+  @Test(expected = SecDispatcherException.class)
+  public void testUnknownType() throws Exception {
+    configured(new MyDefaultSecDispatcher(cipher, Collections.emptyMap())).decrypt("{[type=nope]abc}");
+  }
+
+  @Test
+  public void testConcurrentDecryption() throws Exception {
+    List<String> encrypted = new ArrayList<>();
+    for (int i = 0; i < 32; ++i)
+      encrypted.add(cipher.encryptAndDecorate("secret-" + i, MASTER));
+    for (SecDispatcher d : new SecDispatcher[] { configured(new MyDefaultSecDispatcher(cipher, decryptors)),
+        configured(new MyCachingSecDispatcher(cipher, decryptors)) }) {
+      ExecutorService ex = Executors.newFixedThreadPool(8);
+      List<Callable<Boolean>> tasks = new ArrayList<>();
+      for (int t = 0; t < 64; ++t) {
+        int i = t % encrypted.size();
+        tasks.add(() -> ("secret-" + i).equals(d.decrypt(encrypted.get(i))));
+      }
+      for (Future<Boolean> f : ex.invokeAll(tasks))
+        assertTrue(f.get());
+      ex.shutdown();
+    }
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+import org.infrastructurebuilder.util.ActivationFileProxy;
+import org.infrastructurebuilder.util.ActivationOSProxy;
+import org.infrastructurebuilder.util.ActivationPropertyProxy;
+import org.infrastructurebuilder.util.ActivationProxy;
+import org.infrastructurebuilder.util.ProfileProxy;
+import org.infrastructurebuilder.util.RepositoryProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProfileActivatorTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private ActivationEnvironment linux;
+  private ActivationEnvironment windows;
+
+  private final static ActivationEnvironment env(String osName, String pathSeparator, String javaVersion,
+      String... kv) {
+    Properties p = new Properties();
+    p.setProperty("os.name", osName);
+    p.setProperty("os.arch", "amd64");
+    p.setProperty("os.version", "5.15");
+    p.setProperty("path.separator", pathSeparator);
+    p.setProperty("java.version", javaVersion);
+    for (int i = 0; i < kv.length; i += 2)
+      p.setProperty(kv[i], kv[i + 1]);
+    return ActivationEnvironment.of(p);
+  }
+
+  private final static ActivationProxy activation(boolean byDefault, Optional<ActivationFileProxy> file,
+      String jdk, Optional<ActivationOSProxy> os, Optional<ActivationPropertyProxy> property) {
+    return new ActivationProxy(byDefault, file, Optional.ofNullable(jdk), os, property);
+  }
+
+  private final static ProfileProxy profile(String id, boolean active, ActivationProxy a, List<RepositoryProxy> repos,
+      String... kv) throws Exception {
+    Properties p = new Properties();
+    for (int i = 0; i < kv.length; i += 2)
+      p.setProperty(kv[i], kv[i + 1]);
+    return new ProfileProxy(id, active, Optional.ofNullable(a), Collections.emptyList(), p, repos);
+  }
+
+  private final static RepositoryProxy repo(String id, String url) throws Exception {
+    return new RepositoryProxy(id, null, Optional.empty(), new URL(url), Optional.empty(), Optional.empty());
+  }
+
+  private final static Optional<ActivationOSProxy> os(String family, String name) {
+    return Optional.of(new ActivationOSProxy(Optional.empty(), Optional.ofNullable(family), Optional.ofNullable(name),
+        Optional.empty()));
+  }
+
+  @Before
+  public void setUp() {
+    linux = env("Linux", ":", "11.0.2", "env", "ci");
+    windows = env("Windows 10", ";", "1.8.0_292");
+  }
+
+  @Test
+  public void testOsFamily() {
+    assertTrue(linux.isOsFamily("unix"));
+    assertFalse(linux.isOsFamily("windows"));
+    assertFalse(linux.isOsFamily("mac"));
+    assertTrue(windows.isOsFamily("windows"));
+    assertTrue(windows.isOsFamily("dos"));
+    assertFalse(windows.isOsFamily("unix"));
+    assertTrue(env("Mac OS X", ":", "17").isOsFamily("unix"));
+    assertTrue(env("Mac OS X", ":", "17").isOsFamily("mac"));
+    assertTrue(ProfileActivator.isActive(Optional.of(activation(false, Optional.empty(), null, os("!windows", null),
+        Optional.empty())), linux));
+    assertFalse(ProfileActivator.isActive(Optional.of(activation(false, Optional.empty(), null, os("unix", "Solaris"),
+        Optional.empty())), linux));
+  }
+
+  @Test
+  public void testJdk() {
+    assertTrue(linux.isJdk("11"));
+    assertFalse(linux.isJdk("1.8"));
+    assertTrue(linux.isJdk("!1.8"));
+    assertTrue(linux.isJdk("[1.8,)"));
+    assertTrue(linux.isJdk("[11,17)"));
+    assertFalse(linux.isJdk("[1.8,11)"));
+    assertTrue(linux.isJdk("(,1.8],[11,)"));
+    assertTrue(windows.isJdk("[1.8,11)"));
+    assertTrue(windows.isJdk("(,1.8]"));
+    assertFalse(windows.isJdk("(1.8,)"));
+  }
+
+  @Test
+  public void testPropertyAndFile() throws Exception {
+    Path exists = wps.getRoot();
+    Path missing = exists.resolve("no-such-file");
+    assertTrue(ProfileActivator.isActive(Optional.of(activation(false, Optional.empty(), null, Optional.empty(),
+        Optional.of(new ActivationPropertyProxy("env", Optional.of("ci"))))), linux));
+    assertFalse(ProfileActivator.isActive(Optional.of(activation(false, Optional.empty(), null, Optional.empty(),
+        Optional.of(new ActivationPropertyProxy("env", Optional.of("!ci"))))), linux));
+    assertTrue(ProfileActivator.isActive(Optional.of(activation(false, Optional.empty(), null, Optional.empty(),
+        Optional.of(new ActivationPropertyProxy("!env", Optional.empty())))), windows));
+    assertTrue(ProfileActivator.isActive(Optional.of(activation(false,
+        Optional.of(new ActivationFileProxy(Optional.of(exists), Optional.empty())), null, Optional.empty(),
+        Optional.empty())), linux));
+    assertTrue(ProfileActivator.isActive(Optional.of(activation(false,
+        Optional.of(new ActivationFileProxy(Optional.empty(), Optional.of(missing))), null, Optional.empty(),
+        Optional.empty())), linux));
+    // every present condition must hold
+    assertFalse(ProfileActivator.isActive(Optional.of(activation(false,
+        Optional.of(new ActivationFileProxy(Optional.of(missing), Optional.empty())), "11", Optional.empty(),
+        Optional.empty())), linux));
+    assertFalse(ProfileActivator.isActive(Optional.of(activation(true, Optional.empty(), null, Optional.empty(),
+        Optional.empty())), linux));
+  }
+
+  @Test
+  public void testEvaluate() throws Exception {
+    ProfileProxy byDefault = profile("default", false,
+        activation(true, Optional.empty(), null, Optional.empty(), Optional.empty()), Collections.emptyList(), "a",
+        "0");
+    ProfileProxy explicit = profile("explicit", true, null,
+        Arrays.asList(repo("central", "https://one.example.com/"), repo("a", "https://a.example.com/")), "a", "1",
+        "b", "1");
+    ProfileProxy ci = profile("ci", false,
+        activation(false, Optional.empty(), null, Optional.empty(),
+            Optional.of(new ActivationPropertyProxy("env", Optional.of("ci")))),
+        Arrays.asList(repo("central", "https://two.example.com/")), "b", "2");
+
+    EffectiveProfiles e = ProfileActivator.evaluate(Arrays.asList(byDefault, explicit, ci), linux);
+    assertEquals(Arrays.asList("explicit", "ci"), e.getActiveProfileIds());
+    assertFalse(e.isActive("default"));
+    assertEquals("1", e.getProperties().get("a"));
+    assertEquals("2", e.getProperties().get("b"));
+    assertEquals(2, e.getRepositories().size());
+    assertEquals("https://two.example.com/", e.getRepositories().get(0).getUrl().toExternalForm());
+    assertEquals("a", e.getRepositories().get(1).getId());
+
+    EffectiveProfiles d = ProfileActivator.evaluate(Arrays.asList(byDefault, ci), windows);
+    assertEquals(Arrays.asList("default"), d.getActiveProfileIds());
+    assertEquals("0", d.getProperties().get("a"));
+  }
+
+  @Test
+  public void testSnapshotMemoizesOnlyItsOwnEnvironment() throws Exception {
+    ProfileProxy ci = profile("ci", false,
+        activation(false, Optional.empty(), null, Optional.empty(),
+            Optional.of(new ActivationPropertyProxy("env", Optional.of("ci")))),
+        Collections.emptyList());
+    SettingsSnapshot s = SettingsSnapshot.of(new SettingsProxy(false, Paths.get("/r"), StandardCharsets.UTF_8,
+        Collections.emptyList(), Arrays.asList(ci), Collections.emptyList(), Collections.emptyList(),
+        Collections.emptyList()));
+    assertTrue(s.getEffectiveProfiles() == s.getEffectiveProfiles());
+    assertTrue(s.getEffectiveProfiles() == s.getEffectiveProfiles(s.getEnvironment()));
+    assertFalse(s.getEffectiveProfiles() == s.getEffectiveProfiles(ActivationEnvironment.current()));
+    EffectiveProfiles first = s.getEffectiveProfiles(linux);
+    assertEquals(Arrays.asList("ci"), first.getActiveProfileIds());
+    assertFalse(first == s.getEffectiveProfiles(linux));
+    assertTrue(s.getEffectiveProfiles(windows).getActiveProfileIds().isEmpty());
+  }
+
+  @Test
+  public void testEachSnapshotCapturesItsOwnEnvironment() throws Exception {
+    String key = "profile.activator.test." + System.nanoTime();
+    Path marker = wps.getRoot().resolve(key);
+    List<ProfileProxy> profiles = Arrays.asList(
+        profile("byProperty", false,
+            activation(false, Optional.empty(), null, Optional.empty(),
+                Optional.of(new ActivationPropertyProxy(key, Optional.empty()))),
+            Collections.emptyList()),
+        profile("byFile", false,
+            activation(false, Optional.of(new ActivationFileProxy(Optional.of(marker), Optional.empty())), null,
+                Optional.empty(), Optional.empty()),
+            Collections.emptyList()));
+    SettingsProxy settings = new SettingsProxy(false, Paths.get("/r"), StandardCharsets.UTF_8,
+        Collections.emptyList(), profiles, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+    try {
+      SettingsSnapshot before = SettingsSnapshot.of(settings);
+      assertTrue(before.getEffectiveProfiles().getActiveProfileIds().isEmpty());
+      System.setProperty(key, "on");
+      Files.createFile(marker);
+      // the first snapshot keeps the answers it captured
+      assertTrue(before.getEffectiveProfiles().getActiveProfileIds().isEmpty());
+      SettingsSnapshot after = SettingsSnapshot.of(settings);
+      assertEquals(Arrays.asList("byProperty", "byFile"), after.getEffectiveProfiles().getActiveProfileIds());
+      assertTrue(after.getEnvironment() != before.getEnvironment());
+    } finally {
+      System.clearProperty(key);
+      Files.deleteIfExists(marker);
+    }
+  }
+}
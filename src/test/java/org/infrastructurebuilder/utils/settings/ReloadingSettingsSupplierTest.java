@@ -0,0 +1,153 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.infrastructurebuilder.util.HandCraftedEnvSupplier;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReloadingSettingsSupplierTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private Path user;
+  private ReloadingSettingsSupplier s;
+
+  static String settingsWithServers(Path localRepo, String... ids) {
+    StringBuilder sb = new StringBuilder("<settings><localRepository>").append(localRepo.toString())
+        .append("</localRepository><servers>");
+    for (String id : ids)
+      sb.append("<server><id>").append(id).append("</id><username>u</username></server>");
+    return sb.append("</servers></settings>").toString();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    Path dir = wps.get();
+    user = dir.resolve("user-settings.xml");
+    Path global = dir.resolve("global-settings.xml");
+    Files.write(user, settingsWithServers(dir.resolve("repo"), "a").getBytes(StandardCharsets.UTF_8));
+    Files.write(global, "<settings/>".getBytes(StandardCharsets.UTF_8));
+    Map<String, String> env = new HashMap<>();
+    env.put(USER_SETTINGS_FILE, user.toString());
+    env.put(GLOBAL_SETTINGS_FILE, global.toString());
+    s = new ReloadingSettingsSupplier(new HandCraftedEnvSupplier(env), () -> new Properties(),
+        new MyDefaultSettingsBuilder(new DefaultSettingsReader(), new DefaultSettingsWriter(),
+            new DefaultSettingsValidator()),
+        Duration.ofMillis(50));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    s.close();
+  }
+
+  @Test
+  public void testReloadOnChange() throws Exception {
+    SettingsProxy first = s.get();
+    assertEquals(1, first.getServers().size());
+    Files.write(user, settingsWithServers(user.getParent().resolve("repo"), "a", "b").getBytes(StandardCharsets.UTF_8));
+    long deadline = System.currentTimeMillis() + 20000;
+    while (s.get() == first && System.currentTimeMillis() < deadline)
+      Thread.sleep(50);
+    assertEquals(2, s.get().getServers().size());
+    assertTrue(s.getReloadCount() > 0);
+  }
+
+  @Test
+  public void testFailedReloadKeepsLastGood() throws Exception {
+    SettingsProxy first = s.get();
+    Files.write(user, "<settings><servers>".getBytes(StandardCharsets.UTF_8));
+    assertFalse(s.reload());
+    assertTrue(first == s.get());
+  }
+
+  @Test
+  public void testChangeListener() throws Exception {
+    List<String> events = new CopyOnWriteArrayList<>();
+    s.addChangeListener(new SettingsChangeListener() {
+      @Override
+      public void added(SettingsChange<?> change) {
+        events.add("+" + change.getId());
+      }
+
+      @Override
+      public void removed(SettingsChange<?> change) {
+        events.add("-" + change.getId());
+      }
+    });
+    assertTrue(s.reload());
+    assertTrue(events.isEmpty());
+    Files.write(user, settingsWithServers(user.getParent().resolve("repo"), "b").getBytes(StandardCharsets.UTF_8));
+    s.reload(); // races the watcher; whichever publishes first reports the change, the other sees no diff
+    long deadline = System.currentTimeMillis() + 20000;
+    while (events.size() < 2 && System.currentTimeMillis() < deadline)
+      Thread.sleep(50);
+    assertEquals("[-a, +b]", events.toString());
+  }
+
+  @Test
+  public void testConcurrentReloadsReportEachChangeOnce() throws Exception {
+    List<String> events = new CopyOnWriteArrayList<>();
+    s.addChangeListener(new SettingsChangeListener() {
+      @Override
+      public void added(SettingsChange<?> change) {
+        events.add("+" + change.getId());
+      }
+
+      @Override
+      public void removed(SettingsChange<?> change) {
+        events.add("-" + change.getId());
+      }
+    });
+    Files.write(user, settingsWithServers(user.getParent().resolve("repo"), "b").getBytes(StandardCharsets.UTF_8));
+    ExecutorService ex = Executors.newFixedThreadPool(8);
+    List<Callable<Boolean>> reloads = new ArrayList<>();
+    for (int i = 0; i < 8; ++i)
+      reloads.add(s::reload);
+    for (Future<Boolean> f : ex.invokeAll(reloads))
+      assertTrue(f.get());
+    ex.shutdown();
+    assertEquals("[-a, +b]", events.toString());
+    assertEquals("b", s.get().getServers().get(0).getId());
+  }
+}
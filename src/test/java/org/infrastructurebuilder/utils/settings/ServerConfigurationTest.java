@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.maven.settings.Server;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.junit.Test;
+
+public class ServerConfigurationTest {
+  private final static String XML = "<configuration>\n" //
+      + "  <httpHeaders>\n" //
+      + "    <property><name>X-A</name><value> 1 </value></property>\n" //
+      + "    <property><name>X-B</name><value>2</value></property>\n" //
+      + "  </httpHeaders>\n" //
+      + "  <timeout unit=\"ms\" scale=\"2\" z=\"&quot;\">1000</timeout>\n" //
+      + "  <empty/>\n" //
+      + "  <emptyPair></emptyPair>\n" //
+      + "  <escaped>a &lt; b &amp; c</escaped>\n" //
+      + "  <mixed>text<child>inner</child>tail</mixed>\n" //
+      + "</configuration>";
+
+  @Test
+  public void testLookup() {
+    ServerConfiguration c = ServerConfiguration.parse(XML);
+    assertEquals("configuration", c.getName());
+    assertEquals("X-A", c.get("httpHeaders/property/name").get());
+    assertEquals(Arrays.asList("1", "2"), c.getAll("httpHeaders/property/value"));
+    assertEquals(Integer.valueOf(1000), c.getInt("timeout").get());
+    assertEquals("ms", c.get("timeout/@unit").get());
+    assertEquals("a < b & c", c.get("escaped").get());
+    assertFalse(c.get("empty").isPresent());
+    assertEquals("", c.get("emptyPair").get());
+    assertFalse(c.get("mixed").isPresent());
+    assertEquals("inner", c.get("mixed/child").get());
+    assertFalse(c.find("nope/none").isPresent());
+    assertEquals(2, c.findAll("httpHeaders/property").size());
+  }
+
+  @Test
+  public void testRendersLikeXpp3DomWriter() throws Exception {
+    String expected = DefaultSettingsSupplier.proxyFromServer.apply(server()).getConfiguration().get();
+    assertEquals(expected, ServerConfiguration.parse(XML).toString());
+    assertEquals(expected, ServerConfiguration.of(Xpp3DomBuilder.build(new StringReader(XML))).toString());
+    assertEquals(expected, ServerConfiguration.parse(expected).toString());
+  }
+
+  @Test
+  public void testSnapshotParsesOnce() throws Exception {
+    ServerProxy sp = DefaultSettingsSupplier.proxyFromServer.apply(server());
+    SettingsSnapshot s = SettingsSnapshot.of(new SettingsProxy(false, Paths.get("target"), StandardCharsets.UTF_8,
+        Arrays.asList(sp), Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+        Collections.emptyList()));
+    ServerConfiguration c = s.getServerConfiguration("srv").get();
+    assertTrue(c == s.getServerConfiguration("srv").get());
+    assertFalse(s.getServerConfiguration("other").isPresent());
+  }
+
+  private final static Server server() throws Exception {
+    Server s = new Server();
+    s.setId("srv");
+    s.setConfiguration(Xpp3DomBuilder.build(new StringReader(XML)));
+    return s;
+  }
+}
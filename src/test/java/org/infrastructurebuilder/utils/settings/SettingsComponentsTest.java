@@ -0,0 +1,135 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+import org.codehaus.plexus.DefaultContainerConfiguration;
+import org.codehaus.plexus.DefaultPlexusContainer;
+import org.codehaus.plexus.PlexusConstants;
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.eclipse.sisu.space.SpaceModule;
+import org.eclipse.sisu.space.URLClassSpace;
+import org.eclipse.sisu.wire.WireModule;
+import org.infrastructurebuilder.util.EnvSupplier;
+import org.infrastructurebuilder.util.HandCraftedEnvSupplier;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.SettingsSupplier;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.plexus.components.sec.dispatcher.DefaultSecDispatcher;
+
+public class SettingsComponentsTest {
+  private final static String TESTING = "testing";
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private EnvSupplier env;
+
+  @Before
+  public void setUp() {
+    Path resources = wps.getRoot().resolve("test-classes");
+    Map<String, String> m = new HashMap<>();
+    m.put(USER_SETTINGS_FILE, resources.resolve("settings-with-local.xml").toString());
+    m.put(GLOBAL_SETTINGS_FILE, resources.resolve("settings-no-local.xml").toString());
+    env = new HandCraftedEnvSupplier(m);
+  }
+
+  /**
+   * The factory must produce what the container injects. Both sides read the real process environment and system
+   * properties, as the injected suppliers do.
+   */
+  @Test
+  public void testSameResultAsContainer() throws Exception {
+    ClassWorld kw = new ClassWorld(TESTING, getClass().getClassLoader());
+    DefaultPlexusContainer pc = new DefaultPlexusContainer(
+        new DefaultContainerConfiguration().setClassWorld(kw).setClassPathScanning(PlexusConstants.SCANNING_INDEX)
+            .setName(TESTING),
+        new WireModule(new SpaceModule(new URLClassSpace(kw.getClassRealm(TESTING)))));
+    try {
+      SettingsComponents c = SettingsComponents.create();
+      DefaultSettingsSupplier plain = c.newSettingsSupplier();
+      assertTrue(Arrays.equals(SettingsProxyCodec.toBytes(pc.lookup(SettingsSupplier.class, "default").get()),
+          SettingsProxyCodec.toBytes(plain.get())));
+      assertTrue(Arrays.equals(SettingsProxyCodec.toBytes(pc.lookup(SettingsSupplier.class, "lazy").get()),
+          SettingsProxyCodec.toBytes(c.newLazySettingsSupplier(() -> System.getenv(), () -> System.getProperties())
+              .get())));
+      SettingsProxy injected = pc.lookup(SettingsSupplier.class, "decrypting").get();
+      SettingsProxy built = c.newDecryptingSettingsSupplier(plain).get();
+      assertEquals(injected.getServers().size(), built.getServers().size());
+      for (int i = 0; i < built.getServers().size(); ++i) {
+        assertEquals(injected.getServers().get(i).getPassword(), built.getServers().get(i).getPassword());
+        assertEquals(injected.getServers().get(i).getPassphrase(), built.getServers().get(i).getPassphrase());
+      }
+      assertTrue(Arrays.equals(SettingsProxyCodec.toBytes(injected), SettingsProxyCodec.toBytes(built)));
+    } finally {
+      pc.dispose();
+    }
+  }
+
+  @Test
+  public void testGraph() throws Exception {
+    SettingsComponents c = SettingsComponents.create();
+    assertTrue(c.getSecDispatcher() instanceof MyDefaultSecDispatcher);
+    assertTrue(SettingsComponents.create(Collections.emptyMap(), true)
+        .getSecDispatcher() instanceof MyCachingSecDispatcher);
+    assertEquals("secret", c.getCipher().decryptDecorated(c.getCipher().encryptAndDecorate("secret", "m"), "m"));
+    SettingsProxy plain = c.newSettingsSupplier(env, () -> new Properties()).get();
+    SettingsProxy decrypted = c.newDecryptingSettingsSupplier(() -> plain).get();
+    assertEquals(plain.getServers().size(), decrypted.getServers().size());
+  }
+
+  @Test
+  public void testDecryptsServers() throws Exception {
+    SettingsComponents c = SettingsComponents.create();
+    Path dir = wps.get();
+    Path security = dir.resolve("settings-security.xml");
+    Files.write(security, ("<settingsSecurity><master>" + c.getCipher().encryptAndDecorate("m", "settings.security")
+        + "</master></settingsSecurity>").getBytes(StandardCharsets.UTF_8));
+    Path user = dir.resolve("settings.xml");
+    Files.write(user, ("<settings><localRepository>" + dir.resolve("repo") + "</localRepository><servers><server>"
+        + "<id>s</id><username>u</username><password>" + c.getCipher().encryptAndDecorate("secret", "m")
+        + "</password></server></servers></settings>").getBytes(StandardCharsets.UTF_8));
+    Map<String, String> m = new HashMap<>(env.get());
+    m.put(USER_SETTINGS_FILE, user.toString());
+    String previous = System.setProperty(DefaultSecDispatcher.SYSTEM_PROPERTY_SEC_LOCATION, security.toString());
+    try {
+      ServerProxy s = c.newDecryptingSettingsSupplier(c.newSettingsSupplier(new HandCraftedEnvSupplier(m),
+          () -> new Properties())).getServer("s").get();
+      assertEquals(Optional.of("u"), s.getUsername());
+      assertEquals(Optional.of("secret"), s.getPassword());
+    } finally {
+      if (previous == null)
+        System.clearProperty(DefaultSecDispatcher.SYSTEM_PROPERTY_SEC_LOCATION);
+      else
+        System.setProperty(DefaultSecDispatcher.SYSTEM_PROPERTY_SEC_LOCATION, previous);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.utils.settings.SettingsChange.Entity;
+import org.infrastructurebuilder.utils.settings.SettingsChange.Type;
+import org.junit.Test;
+
+public class SettingsDiffTest {
+
+  private final static ServerProxy server(String id, String user) {
+    return new ServerProxy(id, Optional.of(user), Optional.empty(), Optional.empty(), Optional.empty(),
+        Optional.empty(), Optional.empty(), Optional.empty());
+  }
+
+  private final static ProxyProxy proxy(String id, int port) {
+    return new ProxyProxy(id, "proxy.example.com", Collections.emptyList(), Optional.empty(), port, "http",
+        Optional.empty(), true);
+  }
+
+  private final static SettingsProxy settings(String repo, List<ServerProxy> servers, List<ProxyProxy> proxies,
+      String... groups) {
+    return new SettingsProxy(false, Paths.get(repo), UTF_8, servers, Collections.emptyList(),
+        Collections.emptyList(), Arrays.asList(groups), proxies);
+  }
+
+  @Test
+  public void testEntityChanges() {
+    ServerProxy same = server("same", "u");
+    SettingsProxy before = settings("/r", Arrays.asList(same, server("gone", "u"), server("edited", "u")),
+        Arrays.asList(proxy("p", 8080)), "org.a", "org.b");
+    SettingsProxy after = settings("/r", Arrays.asList(server("edited", "v"), same, server("new", "u")),
+        Arrays.asList(proxy("p", 8080)), "org.b", "org.c");
+    SettingsDiff d = SettingsDiff.between(before, after);
+    assertEquals("[REMOVED SERVER gone, ADDED SERVER new, CHANGED SERVER edited, REMOVED PLUGIN_GROUP org.a, "
+        + "ADDED PLUGIN_GROUP org.c]", d.toString());
+    SettingsChange<?> c = d.getChanges(Entity.SERVER).get(2);
+    assertEquals(Type.CHANGED, c.getType());
+    assertEquals(Optional.of("u"), ((ServerProxy) c.getBefore().get()).getUsername());
+    assertEquals(Optional.of("v"), ((ServerProxy) c.getAfter().get()).getUsername());
+    assertTrue(d.getChanges(Entity.PROXY).isEmpty());
+    assertFalse(d.isLocalRepositoryChanged());
+  }
+
+  @Test
+  public void testNoChange() {
+    SettingsProxy a = settings("/r", Arrays.asList(server("s", "u")), Arrays.asList(proxy("p", 8080)));
+    SettingsProxy b = settings("/r", Arrays.asList(server("s", "u")), Arrays.asList(proxy("p", 8080)));
+    assertTrue(SettingsDiff.between(a, b).isEmpty());
+    assertTrue(SettingsDiff.between(a, a).isEmpty());
+    SettingsDiff d = SettingsDiff.between(a, settings("/other", Arrays.asList(server("s", "u")),
+        Arrays.asList(proxy("p", 3128))));
+    assertTrue(d.isLocalRepositoryChanged());
+    assertEquals("[CHANGED PROXY p]", d.toString());
+  }
+}
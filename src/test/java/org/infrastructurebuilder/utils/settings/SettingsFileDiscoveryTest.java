@@ -0,0 +1,96 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SettingsFileDiscoveryTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private Path present;
+  private Path absent;
+  private Map<String, String> env;
+
+  @Before
+  public void setUp() throws Exception {
+    Path dir = wps.get();
+    present = dir.resolve("present.xml");
+    absent = dir.resolve("absent.xml");
+    Files.write(present, "<settings/>".getBytes(StandardCharsets.UTF_8));
+    env = new HashMap<>();
+  }
+
+  private final static SettingsFileSource lenient(String name, Path p) {
+    return new SettingsFileSource(name, e -> Optional.of(p), false);
+  }
+
+  @Test
+  public void testFirstUsableWins() {
+    SettingsFileDiscovery d = new SettingsFileDiscovery(
+        Arrays.asList(SettingsFileSource.environment("X"), lenient("a", absent), lenient("b", present),
+            SettingsFileSource.explicit(absent)),
+        Collections.emptyList(), Duration.ofMinutes(1));
+    SettingsFileDiscovery.Discovered r = d.user(env);
+    assertEquals(present.toAbsolutePath(), r.getPath());
+    assertEquals("b", r.getSource());
+    env.put("X", present.toString());
+    assertEquals("env:X", d.user(env).getSource());
+  }
+
+  @Test
+  public void testAuthoritativeFailureDoesNotFallThrough() {
+    SettingsFileDiscovery d = new SettingsFileDiscovery(Collections.emptyList(),
+        Arrays.asList(SettingsFileSource.explicit(absent), lenient("b", present)), Duration.ofMinutes(1));
+    try {
+      d.global(env);
+      fail();
+    } catch (RuntimeException e) {
+      assertEquals("Global Settings file " + absent.toAbsolutePath() + " is not a readable, regular file",
+          e.getMessage());
+    }
+  }
+
+  @Test
+  public void testNegativeCachingAndInvalidation() throws Exception {
+    SettingsFileDiscovery d = new SettingsFileDiscovery(Arrays.asList(lenient("a", absent), lenient("b", present)),
+        Collections.emptyList(), Duration.ofMinutes(1));
+    assertEquals("b", d.user(env).getSource());
+    Files.write(absent, "<settings/>".getBytes(StandardCharsets.UTF_8));
+    assertEquals("b", d.user(env).getSource());
+    d.invalidate(absent);
+    assertEquals("a", d.user(env).getSource());
+    Files.delete(absent);
+    assertEquals("a", d.user(env).getSource());
+    SettingsFileDiscovery uncached = new SettingsFileDiscovery(Arrays.asList(lenient("a", absent),
+        lenient("b", present)), Collections.emptyList(), Duration.ZERO);
+    assertEquals("b", uncached.user(env).getSource());
+  }
+}
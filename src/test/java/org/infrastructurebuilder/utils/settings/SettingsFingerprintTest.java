@@ -0,0 +1,91 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.utils.settings.SettingsChange.Entity;
+import org.junit.Test;
+
+public class SettingsFingerprintTest {
+
+  private final static ServerProxy server(String id, String user) {
+    return new ServerProxy(id, Optional.of(user), Optional.empty(), Optional.empty(), Optional.empty(),
+        Optional.empty(), Optional.empty(), Optional.empty());
+  }
+
+  private final static ProxyProxy proxy(String id, int port) {
+    return new ProxyProxy(id, "proxy.example.com", Collections.emptyList(), Optional.empty(), port, "http",
+        Optional.empty(), true);
+  }
+
+  private final static SettingsProxy settings(String repo, List<ServerProxy> servers, List<ProxyProxy> proxies,
+      String... groups) {
+    return new SettingsProxy(false, Paths.get(repo), UTF_8, servers, Collections.emptyList(),
+        Collections.emptyList(), Arrays.asList(groups), proxies);
+  }
+
+  @Test
+  public void testStableAndOrderNormalized() {
+    SettingsFingerprint a = SettingsFingerprint.of(settings("/r", Arrays.asList(server("a", "u"), server("b", "u")),
+        Arrays.asList(proxy("p", 8080)), "org.a", "org.b"));
+    SettingsFingerprint b = SettingsFingerprint.of(settings("/r", Arrays.asList(server("b", "u"), server("a", "u")),
+        Arrays.asList(proxy("p", 8080)), "org.b", "org.a", "org.a"));
+    assertEquals(a, b);
+    assertEquals(64, a.getFingerprint().length());
+    assertEquals(a.getFingerprints(Entity.SERVER), b.getFingerprints(Entity.SERVER));
+    assertTrue(a.getFingerprints(Entity.PLUGIN_GROUP).isEmpty());
+  }
+
+  @Test
+  public void testChanges() {
+    SettingsProxy base = settings("/r", Arrays.asList(server("a", "u"), server("b", "u")),
+        Arrays.asList(proxy("p", 8080), proxy("q", 8080)));
+    SettingsFingerprint f = SettingsFingerprint.of(base);
+    SettingsFingerprint edited = SettingsFingerprint.of(settings("/r", Arrays.asList(server("a", "v"),
+        server("b", "u")), Arrays.asList(proxy("p", 8080), proxy("q", 8080))));
+    assertNotEquals(f, edited);
+    assertNotEquals(f.getFingerprint(Entity.SERVER, "a"), edited.getFingerprint(Entity.SERVER, "a"));
+    assertEquals(f.getFingerprint(Entity.SERVER, "b"), edited.getFingerprint(Entity.SERVER, "b"));
+    assertFalse(f.getFingerprint(Entity.SERVER, "c").isPresent());
+    // the first active proxy wins, so proxy order counts
+    assertNotEquals(f, SettingsFingerprint.of(settings("/r", Arrays.asList(server("a", "u"), server("b", "u")),
+        Arrays.asList(proxy("q", 8080), proxy("p", 8080)))));
+    assertNotEquals(f, SettingsFingerprint.of(settings("/other", Arrays.asList(server("a", "u"), server("b", "u")),
+        Arrays.asList(proxy("p", 8080), proxy("q", 8080)))));
+  }
+
+  @Test
+  public void testSnapshot() {
+    SettingsSnapshot s = SettingsSnapshot.of(settings("/r", Arrays.asList(server("a", "u")), Collections.emptyList()));
+    assertTrue(s.getFingerprint() == s.getFingerprint());
+    assertEquals(s.getFingerprint(),
+        SettingsSnapshot.of(settings("/r", Arrays.asList(server("a", "u")), Collections.emptyList())).getFingerprint());
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Properties;
+
+import org.infrastructurebuilder.util.Layout;
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.infrastructurebuilder.util.ProfileProxy;
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.infrastructurebuilder.util.ServerProxy;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.junit.Test;
+
+public class SettingsIndexTest {
+
+  private final static ServerProxy server(String id, String user) {
+    return new ServerProxy(id, Optional.of(user), Optional.empty(), Optional.empty(), Optional.empty(),
+        Optional.empty(), Optional.empty(), Optional.empty());
+  }
+
+  private final static MirrorProxy mirror(String id, String host) throws Exception {
+    return new MirrorProxy(id, Layout.DEFAULT, Arrays.asList("central"), Arrays.asList(Layout.DEFAULT),
+        Optional.empty(), new URL("https://" + host + "/"));
+  }
+
+  private final static ProfileProxy profile(String id, boolean active) {
+    return new ProfileProxy(id, active, Optional.empty(), Collections.emptyList(), new Properties(),
+        Collections.emptyList());
+  }
+
+  private final static ProxyProxy proxy(String id, int port) {
+    return new ProxyProxy(id, "proxy.example.com", Collections.emptyList(), Optional.empty(), port, "http",
+        Optional.empty(), true);
+  }
+
+  @Test
+  public void testLookups() throws Exception {
+    SettingsIndex i = SettingsIndex.of(new SettingsProxy(false, Paths.get("/r"), UTF_8,
+        Arrays.asList(server("a", "u"), server("b", "v")), Arrays.asList(profile("p", true)),
+        Arrays.asList(mirror("m", "m.example.com")), Collections.emptyList(), Arrays.asList(proxy("x", 8080))));
+    assertEquals(Optional.of("v"), i.getServer("b").get().getUsername());
+    assertFalse(i.getServer("c").isPresent());
+    assertEquals("m", i.getMirror("m").get().getId());
+    assertTrue(i.getProfile("p").get().isActive());
+    assertEquals(8080, i.getProxy("x").get().getPort());
+    assertEquals(2, i.getServers().size());
+    assertTrue(i.getDuplicates().isEmpty());
+  }
+
+  @Test
+  public void testFirstDefinitionWinsAndDuplicatesAreReported() throws Exception {
+    SettingsIndex i = SettingsIndex.of(new SettingsProxy(false, Paths.get("/r"), UTF_8,
+        Arrays.asList(server("s", "first"), server("s", "second"), server("t", "u")),
+        Arrays.asList(profile("p", true), profile("p", false)),
+        Arrays.asList(mirror("m", "first.example.com"), mirror("m", "second.example.com")), Collections.emptyList(),
+        Arrays.asList(proxy("x", 8080), proxy("x", 3128))));
+    assertEquals(Optional.of("first"), i.getServer("s").get().getUsername());
+    assertTrue(i.getProfile("p").get().isActive());
+    assertEquals("first.example.com", i.getMirror("m").get().getUrl().getHost());
+    assertEquals(8080, i.getProxy("x").get().getPort());
+    assertEquals(2, i.getServers().size());
+    assertEquals(Arrays.asList("Duplicate server id 's'", "Duplicate mirror id 'm'", "Duplicate profile id 'p'",
+        "Duplicate proxy id 'x'"), i.getDuplicates());
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.infrastructurebuilder.util.Layout;
+import org.infrastructurebuilder.util.MirrorProxy;
+import org.infrastructurebuilder.util.RepositoryProxy;
+import org.junit.Test;
+
+public class SettingsInternerTest {
+
+  @Test
+  public void testSameInstances() {
+    String spec = new String("https://repo.example.com/maven2");
+    assertTrue(SettingsInterner.url(spec) == SettingsInterner.url(new String(spec)));
+    assertTrue(SettingsInterner.uri(spec) == SettingsInterner.uri(new String(spec)));
+    assertTrue(SettingsInterner.string(spec) == SettingsInterner.string(new String(spec)));
+    assertTrue(SettingsInterner.mirrorOf("central,!x") == SettingsInterner.mirrorOf(new String("central,!x")));
+    assertEquals(Arrays.asList("central", "!x"), SettingsInterner.mirrorOf("central,!x"));
+    assertTrue(SettingsInterner.layouts(Layout.DEFAULT) == SettingsInterner.layouts(Layout.DEFAULT));
+    assertEquals(Arrays.asList("a", "b"), SettingsInterner.strings(Arrays.asList("a", "b")));
+    assertFalse(SettingsInterner.strings(Arrays.asList("a,b")) == SettingsInterner.strings(Arrays.asList("a", "b")));
+  }
+
+  @Test
+  public void testLenientUri() {
+    URI u = SettingsInterner.uri("file:///tmp/my repo");
+    assertEquals("/tmp/my repo", u.getPath());
+  }
+
+  @Test
+  public void testLocations() throws Exception {
+    URL url = new URL("http://repo.example.com/maven2");
+    RepositoryProxy r = new RepositoryProxy("central", Layout.DEFAULT, Optional.empty(), url, Optional.empty(),
+        Optional.empty());
+    RepositoryLocation a = RepositoryLocation.of(r);
+    RepositoryLocation b = RepositoryLocation.of("central", URI.create("http://repo.example.com/maven2"), null);
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    MirrorProxy m = new MirrorProxy("m", Layout.DEFAULT, Collections.singletonList("external:http:*"),
+        Collections.singletonList(Layout.DEFAULT), Optional.empty(), new URL("https://mirror.example.com/"));
+    MirrorRouter router = MirrorRouter.of(Collections.singletonList(m));
+    assertEquals("m", router.route(a).get().getId());
+    assertEquals(router.route(r), router.route(a));
+    assertFalse(router.route(RepositoryLocation.of("x", URI.create("file:/tmp/repo"), Layout.DEFAULT)).isPresent());
+    assertEquals("mirror.example.com", RepositoryLocation.of(m).getUri().getHost());
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.infrastructurebuilder.util.HandCraftedEnvSupplier;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.infrastructurebuilder.utils.settings.SettingsMetrics.Phase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SettingsMetricsTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private final Map<Phase, Integer> phases = new EnumMap<>(Phase.class);
+  private final AtomicInteger accesses = new AtomicInteger();
+  private final AtomicInteger servers = new AtomicInteger(-1);
+  private HandCraftedEnvSupplier env;
+  private SettingsMetricsListener listener;
+
+  @Before
+  public void setUp() {
+    Path resources = wps.getRoot().resolve("test-classes");
+    Map<String, String> m = new HashMap<>();
+    m.put(USER_SETTINGS_FILE, resources.resolve("settings-with-local.xml").toString());
+    m.put(GLOBAL_SETTINGS_FILE, resources.resolve("settings-no-local.xml").toString());
+    env = new HandCraftedEnvSupplier(m);
+    listener = new SettingsMetricsListener() {
+      @Override
+      public synchronized void phase(Phase phase, long nanos) {
+        assertTrue(nanos >= 0);
+        phases.merge(phase, 1, Integer::sum);
+      }
+
+      @Override
+      public void snapshot(int s, int profiles, int mirrors, int proxies) {
+        servers.set(s);
+      }
+
+      @Override
+      public void access() {
+        accesses.incrementAndGet();
+      }
+    };
+    SettingsMetrics.addListener(listener);
+  }
+
+  @After
+  public void tearDown() {
+    SettingsMetrics.removeListener(listener);
+    SettingsMetrics.unregisterMBean();
+  }
+
+  private DefaultSettingsSupplier supplier() {
+    return new DefaultSettingsSupplier(env, () -> new Properties(), new MyDefaultSettingsBuilder(
+        new DefaultSettingsReader(), new DefaultSettingsWriter(), new DefaultSettingsValidator()));
+  }
+
+  @Test
+  public void testPhasesAndAccess() {
+    DefaultSettingsSupplier s = supplier();
+    s.get();
+    s.get();
+    for (Phase p : new Phase[] { Phase.DISCOVERY, Phase.READ, Phase.VALIDATE, Phase.INTERPOLATE, Phase.CONVERSION })
+      assertEquals(p.name(), Integer.valueOf(1), phases.get(p));
+    assertEquals(2, accesses.get());
+    assertEquals(s.get().getServers().size(), servers.get());
+  }
+
+  @Test
+  public void testDerivedSnapshotsDoNotMoveGauges() {
+    DefaultSettingsSupplier s = supplier();
+    int published = s.get().getServers().size();
+    assertTrue(published > 0);
+    assertEquals(published, servers.get());
+    SettingsProxy p = s.get();
+    SettingsSnapshot.of(new SettingsProxy(p.isOffline(), p.getLocalRepository(), p.getModelEncoding(),
+        Collections.emptyList(), p.getProfiles(), p.getMirrors(), p.getPluginGroups(), p.getProxies()));
+    assertEquals(published, servers.get());
+  }
+
+  @Test
+  public void testRemovedListenerHearsNothing() {
+    SettingsMetrics.removeListener(listener);
+    supplier().get();
+    assertTrue(phases.isEmpty());
+    assertEquals(0, accesses.get());
+  }
+
+  @Test
+  public void testMBean() throws Exception {
+    SettingsMetricsMXBean m = SettingsMetrics.registerMBean();
+    assertTrue(m == SettingsMetrics.registerMBean());
+    supplier().get();
+    ObjectName name = new ObjectName(SettingsMetrics.OBJECT_NAME);
+    assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Builds"));
+    assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Accesses"));
+    assertTrue(m.getReadNanos() > 0);
+    m.reset();
+    assertEquals(0L, m.getBuilds());
+  }
+}
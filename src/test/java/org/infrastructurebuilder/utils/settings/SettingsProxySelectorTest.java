@@ -0,0 +1,83 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.infrastructurebuilder.util.ProxyProxy;
+import org.junit.Test;
+
+public class SettingsProxySelectorTest {
+
+  private final static ProxyProxy proxy(String protocol, boolean active, List<String> nonProxyHosts) {
+    return new ProxyProxy(protocol + "-proxy", "proxy.host.net", nonProxyHosts, Optional.empty(), 8080, protocol,
+        Optional.empty(), active);
+  }
+
+  @Test
+  public void testMatcher() {
+    NonProxyHostsMatcher m = NonProxyHostsMatcher
+        .compile(Arrays.asList("localhost", "*.example.com", "192.168.*", "build-*.corp", " "));
+    assertTrue(m.matches("localhost"));
+    assertTrue(m.matches("LocalHost"));
+    assertFalse(m.matches("localhost2"));
+    assertTrue(m.matches("repo.example.com"));
+    assertTrue(m.matches("a.b.EXAMPLE.com"));
+    assertFalse(m.matches("example.com"));
+    assertFalse(m.matches("badexample.com"));
+    assertTrue(m.matches("192.168.1.1"));
+    assertFalse(m.matches("10.192.168.1"));
+    assertTrue(m.matches("build-7.corp"));
+    assertFalse(m.matches("build-7.corp.net"));
+    assertFalse(m.matches(null));
+    assertTrue(NonProxyHostsMatcher.compile(Arrays.asList("*")).matches("anything"));
+    assertFalse(NonProxyHostsMatcher.compile(Collections.emptyList()).matches("anything"));
+  }
+
+  @Test
+  public void testNonProxyHostsSplit() {
+    org.apache.maven.settings.Proxy p = new org.apache.maven.settings.Proxy();
+    p.setHost("proxy.host.net");
+    p.setNonProxyHosts("local.net| some.host.com");
+    assertEquals(Arrays.asList("local.net", "some.host.com"),
+        DefaultSettingsSupplier.proxyFromProxy.apply(p).getNonProxyHosts());
+  }
+
+  @Test
+  public void testSelect() {
+    SettingsProxySelector s = SettingsProxySelector.of(Arrays.asList(proxy("ftp", false, Collections.emptyList()),
+        proxy("http", true, Arrays.asList("*.internal")), proxy("http", true, Collections.emptyList())));
+    List<Proxy> l = s.select(URI.create("https://repo.maven.apache.org/maven2"));
+    assertEquals(1, l.size());
+    assertEquals(Proxy.Type.HTTP, l.get(0).type());
+    assertEquals(8080, ((InetSocketAddress) l.get(0).address()).getPort());
+    assertTrue(l == s.select(URI.create("http://other.org/")));
+    assertTrue(SettingsProxySelector.DIRECT == s.select(URI.create("http://nexus.internal/repo")));
+    assertTrue(SettingsProxySelector.DIRECT == s.select(URI.create("ftp://ftp.example.com/")));
+    assertEquals("http-proxy", s.getProxyFor("HTTPS").get().getId());
+    assertFalse(s.proxyFor(URI.create("http://nexus.internal/repo")).isPresent());
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SettingsRegistryTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private Path dir;
+  private Path global;
+  private AtomicInteger builds;
+  private SettingsBuilder builder;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = wps.get();
+    global = dir.resolve("global.xml");
+    Files.write(global, "<settings/>".getBytes(StandardCharsets.UTF_8));
+    builds = new AtomicInteger();
+    SettingsBuilder real = new MyDefaultSettingsBuilder(new DefaultSettingsReader(), new DefaultSettingsWriter(),
+        new DefaultSettingsValidator());
+    builder = (request) -> {
+      builds.incrementAndGet();
+      return real.build(request);
+    };
+  }
+
+  private Path tenant(String name) throws Exception {
+    return Files.write(dir.resolve(name + ".xml"), ReloadingSettingsSupplierTest
+        .settingsWithServers(dir.resolve("repo"), name).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testSingleFlight() throws Exception {
+    SettingsRegistry r = new SettingsRegistry(builder);
+    Path user = tenant("a");
+    int threads = 16;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService ex = Executors.newFixedThreadPool(threads);
+    List<Future<SettingsProxy>> results = new ArrayList<>();
+    for (int i = 0; i < threads; ++i)
+      results.add(ex.submit(() -> {
+        start.await();
+        return r.get(user, global, new Properties());
+      }));
+    start.countDown();
+    for (Future<SettingsProxy> f : results)
+      assertEquals("a", f.get().getServers().get(0).getId());
+    ex.shutdown();
+    assertEquals(1, builds.get());
+  }
+
+  @Test
+  public void testKeyedByFilesAndProperties() throws Exception {
+    SettingsRegistry r = new SettingsRegistry(builder);
+    Path a = tenant("a"), b = tenant("b");
+    Properties p = new Properties();
+    p.setProperty("x", "y");
+    assertEquals("a", r.get(a, global, new Properties()).getServers().get(0).getId());
+    assertEquals("b", r.get(b, global, new Properties()).getServers().get(0).getId());
+    r.get(a, global, p);
+    r.get(a, global, new Properties());
+    assertEquals(3, builds.get());
+    assertEquals(3, r.size());
+  }
+
+  @Test
+  public void testWeightBoundEvictsLeastRecentlyUsed() throws Exception {
+    Path a = tenant("a"), b = tenant("b"), c = tenant("c");
+    long each = Files.size(a) + Files.size(global);
+    SettingsRegistry r = new SettingsRegistry(builder, 2 * each);
+    r.get(a, global, new Properties());
+    r.get(b, global, new Properties());
+    r.get(a, global, new Properties());
+    r.get(c, global, new Properties()); // evicts b
+    assertEquals(2, r.size());
+    assertTrue(r.getWeight() <= r.getMaxWeight());
+    r.get(a, global, new Properties());
+    assertEquals(3, builds.get());
+    r.get(b, global, new Properties());
+    assertEquals(4, builds.get());
+  }
+
+  @Test
+  public void testRebuildWhenFileChanges() throws Exception {
+    SettingsRegistry r = new SettingsRegistry(builder, SettingsRegistry.DEFAULT_MAX_WEIGHT, Duration.ZERO);
+    Path a = tenant("a");
+    SettingsSnapshot first = r.getSnapshot(a, global, new Properties());
+    assertTrue(first == r.getSnapshot(a, global, new Properties()));
+    Files.write(a, "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    assertFalse(first == r.getSnapshot(a, global, new Properties()));
+    assertEquals(2, builds.get());
+  }
+
+  @Test
+  public void testFilesAreCheckedOncePerInterval() throws Exception {
+    SettingsRegistry r = new SettingsRegistry(builder, SettingsRegistry.DEFAULT_MAX_WEIGHT, Duration.ofHours(1));
+    Path a = tenant("a");
+    SettingsSnapshot first = r.getSnapshot(a, global, new Properties());
+    Files.write(a, "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    assertTrue(first == r.getSnapshot(a, global, new Properties()));
+    assertEquals(1, builds.get());
+    r.invalidate(SettingsRegistry.Key.of(a, global, new Properties()));
+    assertFalse(first == r.getSnapshot(a, global, new Properties()));
+    assertEquals(2, builds.get());
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.infrastructurebuilder.util.HandCraftedEnvSupplier;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SettingsTemplateTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private Path resources;
+  private Path dir;
+  private SettingsBuilder builder;
+
+  @Before
+  public void setUp() {
+    resources = wps.getRoot().resolve("test-classes");
+    dir = wps.get();
+    builder = new MyDefaultSettingsBuilder(new DefaultSettingsReader(), new DefaultSettingsWriter(),
+        new DefaultSettingsValidator());
+  }
+
+  private Properties props(String host, String token) {
+    Properties props = new Properties();
+    props.setProperty("streaming.repo", dir.toString());
+    props.setProperty("streaming.proxy.host", host);
+    props.setProperty("streaming.password", "p<&>w");
+    props.setProperty("streaming.token", token);
+    props.setProperty("streaming.scale", "2");
+    return props;
+  }
+
+  private SettingsProxy built(Path user, Path global, Properties props) {
+    Map<String, String> env = new HashMap<>();
+    env.put(USER_SETTINGS_FILE, user.toString());
+    env.put(GLOBAL_SETTINGS_FILE, global.toString());
+    return new DefaultSettingsSupplier(new HandCraftedEnvSupplier(env), () -> props, builder).get();
+  }
+
+  @Test
+  public void testVariantsMatchFullBuilds() {
+    Path user = resources.resolve("streaming-user.xml"), global = resources.resolve("streaming-global.xml");
+    SettingsTemplate t = SettingsTemplate.of(user, global);
+    assertFalse(t.isStatic());
+    Properties a = props("proxy.example.com", "${streaming.password}!"), b = props("other.example.com", "plain");
+    SettingsProxy sa = t.apply(a), sb = t.apply(b);
+    assertArrayEquals(SettingsProxyCodec.toBytes(built(user, global, a)), SettingsProxyCodec.toBytes(sa));
+    assertArrayEquals(SettingsProxyCodec.toBytes(built(user, global, b)), SettingsProxyCodec.toBytes(sb));
+    // entities without expressions are the same instances in every variant
+    int entities = sa.getServers().size() + sa.getMirrors().size() + sa.getProxies().size() + sa.getProfiles().size();
+    int shared = same(sa.getServers(), sb.getServers()) + same(sa.getMirrors(), sb.getMirrors())
+        + same(sa.getProxies(), sb.getProxies()) + same(sa.getProfiles(), sb.getProfiles());
+    assertTrue(t.getDynamicEntityCount() > 0);
+    assertEquals(entities - t.getDynamicEntityCount(), shared);
+  }
+
+  private final static int same(List<?> a, List<?> b) {
+    int n = 0;
+    for (int i = 0; i < a.size(); ++i)
+      n += a.get(i) == b.get(i) ? 1 : 0;
+    return n;
+  }
+
+  @Test
+  public void testStaticTemplate() throws Exception {
+    Path user = dir.resolve("static.xml"), global = resources.resolve("streaming-global.xml");
+    Files.write(user, ReloadingSettingsSupplierTest.settingsWithServers(dir.resolve("repo"), "a", "b")
+        .getBytes(StandardCharsets.UTF_8));
+    SettingsTemplate t = SettingsTemplate.of(user, global);
+    assertTrue(t.isStatic());
+    assertTrue(t.apply(new Properties()) == t.apply(props("x", "y")));
+    assertArrayEquals(SettingsProxyCodec.toBytes(built(user, global, new Properties())),
+        SettingsProxyCodec.toBytes(t.apply(new Properties())));
+  }
+}
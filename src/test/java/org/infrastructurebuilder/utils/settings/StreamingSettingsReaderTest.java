@@ -0,0 +1,101 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.io.DefaultSettingsReader;
+import org.apache.maven.settings.io.DefaultSettingsWriter;
+import org.apache.maven.settings.validation.DefaultSettingsValidator;
+import org.infrastructurebuilder.util.HandCraftedEnvSupplier;
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.infrastructurebuilder.util.config.WorkingPathSupplier;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingSettingsReaderTest {
+  private final static WorkingPathSupplier wps = new WorkingPathSupplier();
+
+  private Path resources;
+  private Path dir;
+  private Properties props;
+  private SettingsBuilder builder;
+
+  @Before
+  public void setUp() {
+    resources = wps.getRoot().resolve("test-classes");
+    dir = wps.get();
+    props = new Properties();
+    props.setProperty("streaming.repo", dir.toString());
+    props.setProperty("streaming.proxy.host", "proxy.example.com");
+    props.setProperty("streaming.password", "p<&>w");
+    props.setProperty("streaming.token", "${streaming.password}!");
+    props.setProperty("streaming.scale", "2");
+    builder = new MyDefaultSettingsBuilder(new DefaultSettingsReader(), new DefaultSettingsWriter(),
+        new DefaultSettingsValidator());
+  }
+
+  private void assertEquivalent(Path user, Path global) {
+    Map<String, String> env = new HashMap<>();
+    env.put(USER_SETTINGS_FILE, user.toString());
+    env.put(GLOBAL_SETTINGS_FILE, global.toString());
+    SettingsProxy expected = new DefaultSettingsSupplier(new HandCraftedEnvSupplier(env), () -> props, builder).get();
+    SettingsProxy actual = new StreamingSettingsSupplier(new HandCraftedEnvSupplier(env), () -> props).get();
+    assertEquals(expected.getServers().size(), actual.getServers().size());
+    assertArrayEquals(SettingsProxyCodec.toBytes(expected), SettingsProxyCodec.toBytes(actual));
+  }
+
+  @Test
+  public void testMergedAndInterpolated() {
+    assertEquivalent(resources.resolve("streaming-user.xml"), resources.resolve("streaming-global.xml"));
+  }
+
+  @Test
+  public void testExistingResources() {
+    assertEquivalent(resources.resolve("settings-with-local.xml"), resources.resolve("settings-no-local.xml"));
+    assertEquivalent(resources.resolve("settings-no-local.xml"), resources.resolve("settings-with-local.xml"));
+  }
+
+  @Test
+  public void testEncodingAndEmptyGlobal() throws Exception {
+    Path user = dir.resolve("latin1.xml");
+    Path global = dir.resolve("empty.xml");
+    Files.write(user, ("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<settings><servers><server><id>été"
+        + "</id></server></servers><localRepository>" + dir + "</localRepository></settings>")
+            .getBytes(StandardCharsets.ISO_8859_1));
+    Files.write(global, "<settings/>".getBytes(StandardCharsets.UTF_8));
+    assertEquivalent(user, global);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testValidationError() throws Exception {
+    Path user = dir.resolve("invalid.xml");
+    Files.write(user, "<settings><mirrors><mirror><id>m</id></mirror></mirrors></settings>"
+        .getBytes(StandardCharsets.UTF_8));
+    new StreamingSettingsReader(props).read(user, resources.resolve("settings-no-local.xml"));
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.StressFixture.ENCRYPTED_1;
+import static org.infrastructurebuilder.utils.settings.StressFixture.ENCRYPTED_2;
+import static org.infrastructurebuilder.utils.settings.StressFixture.SECRET_1;
+import static org.infrastructurebuilder.utils.settings.StressFixture.SECRET_2;
+
+import java.util.Collections;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+/**
+ * Two threads make the first calls on a fresh {@link MyCachingSecDispatcher}, racing to load the master password and
+ * to fill the memo. One decrypts a value twice, the other a different value. Results are whether each thread got the
+ * right plain text every time.
+ */
+@JCStressTest
+@Description("MyCachingSecDispatcher loads the master and memoizes concurrently")
+@Outcome(id = "true, true", expect = Expect.ACCEPTABLE, desc = "All values decrypted correctly")
+@Outcome(id = { "true, false", "false, true", "false, false" }, expect = Expect.FORBIDDEN,
+    desc = "Master or memo state was torn")
+@State
+public class CachingSecDispatcherStress {
+  private final MyCachingSecDispatcher dispatcher = StressFixture
+      .configured(new MyCachingSecDispatcher(StressFixture.cipher(), Collections.emptyMap()));
+
+  @Actor
+  public void actor1(ZZ_Result r) {
+    r.r1 = decrypts(ENCRYPTED_1, SECRET_1) && decrypts(ENCRYPTED_1, SECRET_1);
+  }
+
+  @Actor
+  public void actor2(ZZ_Result r) {
+    r.r2 = decrypts(ENCRYPTED_2, SECRET_2);
+  }
+
+  private boolean decrypts(String encrypted, String expected) {
+    try {
+      return expected.equals(dispatcher.decrypt(encrypted));
+    } catch (SecDispatcherException | RuntimeException e) {
+      return false;
+    }
+  }
+}
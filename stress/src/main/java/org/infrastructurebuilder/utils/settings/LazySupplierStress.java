@@ -0,0 +1,60 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.infrastructurebuilder.util.SettingsProxy;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+
+/**
+ * Two threads race on the first {@link LazySettingsSupplier#get()}. Results are the number of builds and whether
+ * both threads got the same {@link SettingsProxy}.
+ */
+@JCStressTest
+@Description("LazySettingsSupplier builds once and publishes one snapshot")
+@Outcome(id = "1, 1", expect = Expect.ACCEPTABLE, desc = "One build, both threads see it")
+@Outcome(id = { "1, 0", "2, 0", "2, 1" }, expect = Expect.FORBIDDEN, desc = "Duplicate build or torn publication")
+@State
+public class LazySupplierStress {
+  private final AtomicInteger builds = new AtomicInteger();
+  private final LazySettingsSupplier supplier = StressFixture.lazySupplier(builds);
+  private SettingsProxy seen1;
+  private SettingsProxy seen2;
+
+  @Actor
+  public void actor1() {
+    seen1 = supplier.get();
+  }
+
+  @Actor
+  public void actor2() {
+    seen2 = supplier.get();
+  }
+
+  @Arbiter
+  public void arbiter(II_Result r) {
+    r.r1 = builds.get();
+    r.r2 = seen1 != null && seen1 == seen2 ? 1 : 0;
+  }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import java.util.Collections;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+
+/**
+ * One thread publishes a new {@link MyDefaultSecDispatcher} through a plain field, the other uses whatever it sees.
+ * Results are whether the reader saw the instance and whether it could decrypt with it.
+ *
+ * The cipher and decryptors are final fields of {@link MyAbstractSecDispatcher}, so an instance seen through a data
+ * race is still fully usable.
+ */
+@JCStressTest
+@Description("MyDefaultSecDispatcher is usable after racy publication")
+@Outcome(id = "false, false", expect = Expect.ACCEPTABLE, desc = "Reader ran before publication")
+@Outcome(id = "true, true", expect = Expect.ACCEPTABLE, desc = "Reader saw a usable dispatcher")
+@Outcome(id = "true, false", expect = Expect.FORBIDDEN, desc = "Reader saw a partially constructed dispatcher")
+@State
+public class SecDispatcherPublicationStress {
+  private MyDefaultSecDispatcher dispatcher;
+
+  @Actor
+  public void writer() {
+    dispatcher = StressFixture
+        .configured(new MyDefaultSecDispatcher(StressFixture.cipher(), Collections.emptyMap()));
+  }
+
+  @Actor
+  public void reader(ZZ_Result r) {
+    MyDefaultSecDispatcher d = dispatcher;
+    r.r1 = d != null;
+    if (d != null) {
+      try {
+        r.r2 = "plain".equals(d.decrypt("plain")) && d.decryptors != null;
+      } catch (SecDispatcherException | RuntimeException e) {
+        r.r2 = false;
+      }
+    }
+  }
+}
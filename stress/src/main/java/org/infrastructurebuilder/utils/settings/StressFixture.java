@@ -0,0 +1,113 @@
+/**
+ * Copyright © 2019 admin (admin@infrastructurebuilder.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.infrastructurebuilder.utils.settings;
+
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.GLOBAL_SETTINGS_FILE;
+import static org.infrastructurebuilder.utils.settings.DefaultSettingsSupplier.USER_SETTINGS_FILE;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.settings.Settings;
+import org.apache.maven.settings.building.SettingsBuilder;
+import org.apache.maven.settings.building.SettingsBuildingResult;
+import org.apache.maven.settings.building.SettingsProblem;
+import org.infrastructurebuilder.IBException;
+import org.infrastructurebuilder.util.HandCraftedEnvSupplier;
+
+/**
+ * Files and values shared by every stress test, created once per JVM in a temporary directory.
+ *
+ * Each test builds its own component instances on top of these, so the only shared state is read-only.
+ */
+final class StressFixture {
+  final static String MASTER = "stress-master";
+  final static String SECRET_1 = "secret-1";
+  final static String SECRET_2 = "secret-2";
+  final static Path ROOT;
+  final static Path SECURITY;
+  final static Map<String, String> ENV;
+  final static String ENCRYPTED_1;
+  final static String ENCRYPTED_2;
+
+  static {
+    ROOT = IBException.cet.withReturningTranslation(() -> Files.createTempDirectory("settings-stress"));
+    SECURITY = ROOT.resolve("settings-security.xml");
+    MyDefaultPlexusCipher c = cipher();
+    ENCRYPTED_1 = IBException.cet.withReturningTranslation(() -> c.encryptAndDecorate(SECRET_1, MASTER));
+    ENCRYPTED_2 = IBException.cet.withReturningTranslation(() -> c.encryptAndDecorate(SECRET_2, MASTER));
+    String master = IBException.cet.withReturningTranslation(() -> c.encryptAndDecorate(MASTER, "settings.security"));
+    Path user = ROOT.resolve("settings.xml");
+    Path global = ROOT.resolve("global-settings.xml");
+    IBException.cet.withTranslation(() -> {
+      Files.write(SECURITY, ("<settingsSecurity><master>" + master + "</master></settingsSecurity>")
+          .getBytes(StandardCharsets.UTF_8));
+      Files.write(user, "<settings/>".getBytes(StandardCharsets.UTF_8));
+      Files.write(global, "<settings/>".getBytes(StandardCharsets.UTF_8));
+      Files.createDirectories(ROOT.resolve("repository"));
+    });
+    Map<String, String> env = new HashMap<>();
+    env.put(USER_SETTINGS_FILE, user.toString());
+    env.put(GLOBAL_SETTINGS_FILE, global.toString());
+    ENV = Collections.unmodifiableMap(env);
+  }
+
+  private StressFixture() {
+  }
+
+  static MyDefaultPlexusCipher cipher() {
+    return IBException.cet.withReturningTranslation(() -> new MyDefaultPlexusCipher());
+  }
+
+  static <T extends MyAbstractSecDispatcher> T configured(T d) {
+    d.setConfigurationFile(SECURITY.toString());
+    return d;
+  }
+
+  static LazySettingsSupplier lazySupplier(AtomicInteger builds) {
+    return new LazySettingsSupplier(new HandCraftedEnvSupplier(ENV), () -> new Properties(), countingBuilder(builds));
+  }
+
+  /**
+   * @param builds incremented on every build
+   * @return builder that skips parsing and returns empty settings pointing at the fixture's local repository
+   */
+  static SettingsBuilder countingBuilder(AtomicInteger builds) {
+    return request -> {
+      builds.incrementAndGet();
+      Settings s = new Settings();
+      s.setLocalRepository(ROOT.resolve("repository").toString());
+      return new SettingsBuildingResult() {
+        @Override
+        public Settings getEffectiveSettings() {
+          return s;
+        }
+
+        @Override
+        public List<SettingsProblem> getProblems() {
+          return Collections.emptyList();
+        }
+      };
+    };
+  }
+}